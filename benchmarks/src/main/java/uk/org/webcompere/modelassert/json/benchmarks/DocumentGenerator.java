@@ -0,0 +1,175 @@
+package uk.org.webcompere.modelassert.json.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import uk.org.webcompere.modelassert.json.condition.tree.RuleSet;
+import uk.org.webcompere.modelassert.json.dsl.nodespecific.tree.WhereDsl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static uk.org.webcompere.modelassert.json.PathWildCard.ANY_SUBTREE;
+
+/**
+ * Generates synthetic JSON documents for the benchmarks. The same seed always produces the same documents,
+ * so results can be compared between runs and releases.
+ * <br>
+ * Each object has <code>width</code> scalar fields, named <code>field0</code> onwards, of mixed types. Until
+ * the <code>depth</code> is reached, it also has a <code>child</code> object and an <code>items</code> array of
+ * <code>arraySize</code> objects, each with an <code>id</code>.
+ */
+public class DocumentGenerator {
+    private static final JsonNodeFactory FACTORY = JsonNodeFactory.instance;
+
+    private Random random;
+    private int width;
+    private int depth;
+    private int arraySize;
+    private int nextId;
+
+    /**
+     * Construct a generator
+     * @param seed the seed for the random values
+     * @param width the number of scalar fields in each object
+     * @param depth the number of levels of nested objects and arrays
+     * @param arraySize the number of elements in each array
+     */
+    public DocumentGenerator(long seed, int width, int depth, int arraySize) {
+        this.random = new Random(seed);
+        this.width = width;
+        this.depth = depth;
+        this.arraySize = arraySize;
+    }
+
+    /**
+     * Generate a document
+     * @return a new document
+     */
+    public ObjectNode generate() {
+        return generateObject(0);
+    }
+
+    /**
+     * Copy a document with the keys of every object and the elements of every array in a random order
+     * @param document the document
+     * @return a shuffled copy, which is equal to the original when order is ignored
+     */
+    public JsonNode shuffle(JsonNode document) {
+        if (document.isObject()) {
+            List<Map.Entry<String, JsonNode>> fields = new ArrayList<>();
+            document.fields().forEachRemaining(fields::add);
+            Collections.shuffle(fields, random);
+            ObjectNode shuffled = FACTORY.objectNode();
+            fields.forEach(field -> shuffled.set(field.getKey(), shuffle(field.getValue())));
+            return shuffled;
+        }
+        if (document.isArray()) {
+            List<JsonNode> elements = new ArrayList<>();
+            document.forEach(element -> elements.add(shuffle(element)));
+            Collections.shuffle(elements, random);
+            ArrayNode shuffled = FACTORY.arrayNode();
+            elements.forEach(shuffled::add);
+            return shuffled;
+        }
+        return document;
+    }
+
+    /**
+     * Copy a document with some of its scalar values changed
+     * @param document the document
+     * @param differences how many values to change
+     * @return a copy which is not equal to the original
+     */
+    public JsonNode withDifferences(JsonNode document, int differences) {
+        JsonNode copy = document.deepCopy();
+        List<ObjectNode> parents = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        findScalarFields(copy, parents, keys);
+        for (int i = 0; i < differences && !parents.isEmpty(); i++) {
+            int chosen = random.nextInt(parents.size());
+            parents.get(chosen).set(keys.get(chosen), new TextNode("changed" + i));
+            parents.remove(chosen);
+            keys.remove(chosen);
+        }
+        return copy;
+    }
+
+    /**
+     * Build rules with <code>ANY_SUBTREE</code> paths, which must be considered at every location. Half of them
+     * name fields which the documents don't have, and half of them apply a condition which passes to the
+     * scalar fields
+     * @param ruleCount how many rules
+     * @return the rules
+     */
+    public RuleSet anySubtreeRules(int ruleCount) {
+        return WhereDsl.ruleSet(where -> {
+            for (int i = 0; i < ruleCount; i++) {
+                if (i % 2 == 0) {
+                    where.path(ANY_SUBTREE, "absent" + i).isAnyNode();
+                } else {
+                    where.path(ANY_SUBTREE, "field" + (i % width)).isNotNull();
+                }
+            }
+            return where;
+        });
+    }
+
+    private ObjectNode generateObject(int level) {
+        ObjectNode object = FACTORY.objectNode();
+        addScalars(object);
+        if (level < depth) {
+            object.set("child", generateObject(level + 1));
+            ArrayNode items = object.putArray("items");
+            for (int i = 0; i < arraySize; i++) {
+                ObjectNode item = items.addObject();
+                item.put("id", nextId++);
+                addScalars(item);
+            }
+        }
+        return object;
+    }
+
+    private void addScalars(ObjectNode object) {
+        for (int i = 0; i < width; i++) {
+            String name = "field" + i;
+            switch (i % 4) {
+              case 0:
+                  object.put(name, random.nextInt(1000));
+                  break;
+              case 1:
+                  object.put(name, "value" + random.nextInt(1000));
+                  break;
+              case 2:
+                  object.put(name, random.nextBoolean());
+                  break;
+              default:
+                  object.put(name, random.nextDouble());
+                  break;
+            }
+        }
+    }
+
+    private static void findScalarFields(JsonNode node, List<ObjectNode> parents, List<String> keys) {
+        if (node.isObject()) {
+            Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                if (field.getValue().isValueNode()) {
+                    parents.add((ObjectNode) node);
+                    keys.add(field.getKey());
+                } else {
+                    findScalarFields(field.getValue(), parents, keys);
+                }
+            }
+        } else if (node.isArray()) {
+            node.forEach(element -> findScalarFields(element, parents, keys));
+        }
+    }
+}
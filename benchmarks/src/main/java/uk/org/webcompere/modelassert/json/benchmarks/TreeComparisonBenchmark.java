@@ -0,0 +1,115 @@
+package uk.org.webcompere.modelassert.json.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.org.webcompere.modelassert.json.Result;
+import uk.org.webcompere.modelassert.json.condition.tree.PathRule;
+import uk.org.webcompere.modelassert.json.condition.tree.TreeComparisonCondition;
+import uk.org.webcompere.modelassert.json.condition.tree.TreeRule;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of <code>isEqualTo</code> on generated documents, with and without rules, for documents which
+ * are equal and which are different. The different documents also render the failure report, as a failing
+ * assertion would. Run with <code>-prof gc</code> to see the allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TreeComparisonBenchmark {
+    private static final long SEED = 20210101L;
+
+    @Param({"8"})
+    private int width;
+
+    @Param({"3"})
+    private int depth;
+
+    @Param({"10", "1000"})
+    private int arraySize;
+
+    @Param({"10"})
+    private int ruleCount;
+
+    @Param({"10"})
+    private int differences;
+
+    private JsonNode actual;
+    private JsonNode shuffled;
+    private JsonNode different;
+    private JsonNode shuffledAndDifferent;
+
+    private TreeComparisonCondition noRules;
+    private TreeComparisonCondition inAnyOrder;
+    private TreeComparisonCondition withAnySubtreeRules;
+
+    @Setup
+    public void setup() {
+        DocumentGenerator generator = new DocumentGenerator(SEED, width, depth, arraySize);
+        JsonNode expected = generator.generate();
+
+        actual = expected.deepCopy();
+        shuffled = generator.shuffle(expected);
+        different = generator.withDifferences(expected, differences);
+        shuffledAndDifferent = generator.shuffle(different);
+
+        noRules = TreeComparisonCondition.isEqualTo(expected);
+        inAnyOrder = TreeComparisonCondition.isEqualTo(expected)
+            .withRules(Arrays.asList(new PathRule(TreeRule.IGNORE_KEY_ORDER),
+                new PathRule(TreeRule.IGNORE_ARRAY_ORDER)));
+        withAnySubtreeRules = TreeComparisonCondition.isEqualTo(expected)
+            .withRules(generator.anySubtreeRules(ruleCount));
+    }
+
+    @Benchmark
+    public boolean equalWithNoRules() {
+        return noRules.test(actual).isPassed();
+    }
+
+    @Benchmark
+    public String differentWithNoRules() {
+        return report(noRules.test(different));
+    }
+
+    @Benchmark
+    public boolean equalInAnyOrder() {
+        return inAnyOrder.test(shuffled).isPassed();
+    }
+
+    @Benchmark
+    public String differentInAnyOrder() {
+        return report(inAnyOrder.test(shuffledAndDifferent));
+    }
+
+    @Benchmark
+    public boolean equalWithAnySubtreeRules() {
+        return withAnySubtreeRules.test(actual).isPassed();
+    }
+
+    @Benchmark
+    public String differentWithAnySubtreeRules() {
+        return report(withAnySubtreeRules.test(different));
+    }
+
+    private static String report(Result result) {
+        if (result.isPassed()) {
+            throw new IllegalStateException("Expected the documents to be different");
+        }
+        return result.getWas();
+    }
+}
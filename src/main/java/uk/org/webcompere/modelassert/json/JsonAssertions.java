@@ -38,7 +38,7 @@ public final class JsonAssertions {
      * @return an {@link AssertJson} object for adding assertions to
      */
     public static AssertJson<File> assertJson(File file) {
-        return new AssertJson<>(jsonFileProvider(), file);
+        return new AssertJson<>(jsonFileProvider(), jsonFileStreamProvider(), file);
     }
 
     /**
@@ -85,6 +85,22 @@ public class JsonProviders {
         return path -> getObjectMapper().readTree(path.toFile());
     }
 
+    /**
+     * A provider which streams the contents of a file as JSON tokens
+     * @return the provider
+     */
+    public static JsonStreamProvider<File> jsonFileStreamProvider() {
+        return file -> getObjectMapper().createParser(file);
+    }
+
+    /**
+     * A provider which streams the contents of a file as JSON tokens
+     * @return the provider
+     */
+    public static JsonStreamProvider<Path> jsonPathStreamProvider() {
+        return path -> getObjectMapper().createParser(path.toFile());
+    }
+
     /**
      * A provider which parses a yaml string to {@link JsonNode}
      * @return the provider
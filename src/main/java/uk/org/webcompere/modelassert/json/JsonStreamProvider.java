@@ -0,0 +1,34 @@
+package uk.org.webcompere.modelassert.json;
+
+import com.fasterxml.jackson.core.JsonParser;
+import org.opentest4j.AssertionFailedError;
+
+import java.io.IOException;
+
+/**
+ * Provides the input as a stream of JSON tokens, rather than a loaded tree
+ * @param <T> type of input
+ */
+@FunctionalInterface
+public interface JsonStreamProvider<T> {
+    /**
+     * Open a parser on the input
+     * @param json the json source
+     * @return a {@link JsonParser} at the start of the source - the caller must close it
+     * @throws IOException on error opening the source
+     */
+    JsonParser from(T json) throws IOException;
+
+    /**
+     * Execute the provider, wrapping exceptions up as assertion failures
+     * @param item the item to open
+     * @return the {@link JsonParser} or an assertion failure if it cannot be opened
+     */
+    default JsonParser jsonParserFrom(T item) {
+        try {
+            return from(item);
+        } catch (IOException e) {
+            throw new AssertionFailedError("Cannot read json of " + item, e);
+        }
+    }
+}
@@ -10,7 +10,7 @@ import java.util.function.Supplier;
  */
 public class Result {
     private MemoizedSupplier<String> conditionSupplier;
-    private String was;
+    private MemoizedSupplier<String> wasSupplier;
     private boolean isPassed;
 
     /**
@@ -21,7 +21,7 @@ public class Result {
      */
     public Result(String condition, String was, boolean isPassed) {
         this.conditionSupplier = MemoizedSupplier.of(() -> condition);
-        this.was = was;
+        this.wasSupplier = MemoizedSupplier.of(() -> was);
         this.isPassed = isPassed;
     }
 
@@ -33,7 +33,19 @@ public class Result {
      */
     public Result(Supplier<String> conditionSupplier, String was, boolean isPassed) {
         this.conditionSupplier = MemoizedSupplier.of(conditionSupplier);
-        this.was = was;
+        this.wasSupplier = MemoizedSupplier.of(() -> was);
+        this.isPassed = isPassed;
+    }
+
+    /**
+     * Construct a result where the explanation is only produced if it's read
+     * @param conditionSupplier supplies the condition being evaluated
+     * @param wasSupplier supplies what the answer actually was
+     * @param isPassed is this a success?
+     */
+    public Result(Supplier<String> conditionSupplier, Supplier<String> wasSupplier, boolean isPassed) {
+        this.conditionSupplier = MemoizedSupplier.of(conditionSupplier);
+        this.wasSupplier = MemoizedSupplier.of(wasSupplier);
         this.isPassed = isPassed;
     }
 
@@ -63,7 +75,7 @@ public class Result {
     }
 
     public String getWas() {
-        return was;
+        return wasSupplier.get();
     }
 
     public boolean isPassed() {
@@ -0,0 +1,26 @@
+package uk.org.webcompere.modelassert.json;
+
+import com.fasterxml.jackson.core.JsonParser;
+
+import java.io.IOException;
+
+/**
+ * A {@link Condition} which can be tested against a stream of JSON tokens, rather than
+ * a fully loaded tree
+ */
+public interface StreamableCondition extends Condition {
+
+    /**
+     * Has this condition been set up to test a stream
+     * @return <code>true</code> if {@link #test(JsonParser)} should be used when the JSON is available as a stream
+     */
+    boolean isStreamable();
+
+    /**
+     * Execute the test of the condition against the stream
+     * @param json a parser at the start of the json to test
+     * @return a {@link Result} explaining whether the condition was met and if not, why not
+     * @throws IOException on error reading the stream
+     */
+    Result test(JsonParser json) throws IOException;
+}
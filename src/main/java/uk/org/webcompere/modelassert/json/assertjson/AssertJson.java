@@ -1,18 +1,27 @@
 package uk.org.webcompere.modelassert.json.assertjson;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
 import org.opentest4j.AssertionFailedError;
 import uk.org.webcompere.modelassert.json.Condition;
 import uk.org.webcompere.modelassert.json.JsonProvider;
+import uk.org.webcompere.modelassert.json.JsonStreamProvider;
 import uk.org.webcompere.modelassert.json.Result;
+import uk.org.webcompere.modelassert.json.StreamableCondition;
 import uk.org.webcompere.modelassert.json.impl.CoreJsonAssertion;
+import uk.org.webcompere.modelassert.json.impl.MemoizedSupplier;
+
+import java.io.IOException;
+import java.util.function.Supplier;
 
 /**
  * The assertJson form of the assertion
  * @param <T> the type of JSON source passed in
  */
 public class AssertJson<T> extends CoreJsonAssertion<T, AssertJson<T>> {
-    private JsonNode converted;
+    private T source;
+    private Supplier<JsonNode> converted;
+    private JsonStreamProvider<T> streamProvider;
 
     /**
      * Constructs an assertion - use the <code>assertJson</code> factory method instead
@@ -22,13 +31,29 @@ public class AssertJson<T> extends CoreJsonAssertion<T, AssertJson<T>> {
     public AssertJson(JsonProvider<T> jsonProvider, T source) {
         super(jsonProvider);
 
-        converted = jsonProvider.jsonFrom(source);
+        JsonNode node = jsonProvider.jsonFrom(source);
+        this.converted = () -> node;
+    }
+
+    /**
+     * Constructs an assertion on a source which can be streamed - use the <code>assertJson</code>
+     * factory method instead. The source is only loaded as a tree if a condition needs it
+     * @param jsonProvider the provider of the json, converting from source type to {@link JsonNode}
+     * @param streamProvider the provider of the json as a stream of tokens
+     * @param source the source value
+     */
+    public AssertJson(JsonProvider<T> jsonProvider, JsonStreamProvider<T> streamProvider, T source) {
+        super(jsonProvider);
+
+        this.source = source;
+        this.converted = MemoizedSupplier.of(() -> jsonProvider.jsonFrom(source));
+        this.streamProvider = streamProvider;
     }
 
     @Override
     public AssertJson<T> satisfies(Condition condition) {
         // execute this comparison
-        Result result = condition.test(converted);
+        Result result = test(condition);
         if (!result.isPassed()) {
             throw new AssertionFailedError("Expected: " + condition.describe() +
                     "\n     but: " + result.getCondition() + " was " + result.getWas(),
@@ -37,4 +62,20 @@ public class AssertJson<T> extends CoreJsonAssertion<T, AssertJson<T>> {
 
         return super.satisfies(condition);
     }
+
+    private Result test(Condition condition) {
+        if (streamProvider != null && condition instanceof StreamableCondition &&
+            ((StreamableCondition) condition).isStreamable()) {
+            return testStream((StreamableCondition) condition);
+        }
+        return condition.test(converted.get());
+    }
+
+    private Result testStream(StreamableCondition condition) {
+        try (JsonParser parser = streamProvider.jsonParserFrom(source)) {
+            return condition.test(parser);
+        } catch (IOException e) {
+            throw new AssertionFailedError("Cannot read json of actual", e);
+        }
+    }
 }
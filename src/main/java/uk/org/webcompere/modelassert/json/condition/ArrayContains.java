@@ -6,10 +6,12 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import uk.org.webcompere.modelassert.json.Condition;
 import uk.org.webcompere.modelassert.json.Result;
 import uk.org.webcompere.modelassert.json.condition.array.LooseComparison;
+import uk.org.webcompere.modelassert.json.condition.array.Multiset;
 
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.Executor;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
@@ -23,6 +25,7 @@ public class ArrayContains implements Condition {
     private String description;
     private List<Condition> arrayElementConditions;
     private boolean requireStrict;
+    private Executor executor;
 
     /**
      * Construct the array contains condition
@@ -60,7 +63,8 @@ public class ArrayContains implements Condition {
             return containsValues((Object)null);
         }
         return new ArrayContains(describe(conditions),
-            conditions.getConditionList(), false);
+            conditions.getConditionList(), false)
+            .withExecutor(conditions.getExecutor());
     }
 
     /**
@@ -85,6 +89,17 @@ public class ArrayContains implements Condition {
             conditions.getConditionList(), true);
     }
 
+    /**
+     * Match the conditions to elements in any order by testing them on an executor
+     * @param executor the executor, or <code>null</code> to test on the calling thread
+     * @return <code>this</code> for fluent calling
+     * @see LooseComparison#withExecutor
+     */
+    public ArrayContains withExecutor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
     private static Object[] correctRestForNulls(Object[] rest) {
         if (rest != null) {
             return rest;
@@ -113,8 +128,37 @@ public class ArrayContains implements Condition {
     }
 
     private Result looseComparison(ArrayNode arrayNode) {
-        return LooseComparison.fromConditions(arrayElementConditions, () -> description)
-            .looseComparison(arrayNode);
+        LooseComparison looseComparison = LooseComparison.fromConditions(arrayElementConditions, () -> description)
+            .withExecutor(executor);
+        if (arrayElementConditions.stream().allMatch(HasValueWithLooseType.class::isInstance)) {
+            return looseComparison.resultOf(unmatchedValues(arrayNode));
+        }
+        return looseComparison.looseComparison(arrayNode);
+    }
+
+    /**
+     * When every condition is a value, each is only met by elements equal to it, so rather than testing every
+     * value against every element, the elements are counted by value, and each value takes one of the elements
+     * equal to it, in order
+     * @param arrayNode the array
+     * @return the indices of the values which had no element left to take
+     */
+    private int[] unmatchedValues(ArrayNode arrayNode) {
+        Multiset<Object> elementValues = new Multiset<>();
+        for (JsonNode element : arrayNode) {
+            HasValueWithLooseType.valueOf(element).ifPresent(elementValues::add);
+        }
+
+        int index = 0;
+        int[] unmatched = new int[arrayElementConditions.size()];
+        int unmatchedCount = 0;
+        for (Condition condition : arrayElementConditions) {
+            if (!elementValues.remove(((HasValueWithLooseType) condition).value())) {
+                unmatched[unmatchedCount++] = index;
+            }
+            index++;
+        }
+        return Arrays.copyOf(unmatched, unmatchedCount);
     }
 
     private Result strictComparison(ArrayNode arrayNode) {
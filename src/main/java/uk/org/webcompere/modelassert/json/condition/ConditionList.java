@@ -6,12 +6,14 @@ import uk.org.webcompere.modelassert.json.dsl.JsonNodeAssertDsl;
 
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * A set of conditions for matching
  */
 public class ConditionList implements JsonNodeAssertDsl<ConditionList> {
     private List<Condition> conditionList = new LinkedList<>();
+    private Executor executor;
 
     /**
      * Create a list of conditions using the DSL
@@ -30,6 +32,25 @@ public class ConditionList implements JsonNodeAssertDsl<ConditionList> {
         return conditionList;
     }
 
+    /**
+     * When matching these conditions to the elements of an array in any order, test them against the elements
+     * on an executor, rather than one at a time. The conditions must be safe to test from many threads
+     * @param executor the executor, e.g. {@link java.util.concurrent.ForkJoinPool#commonPool()}
+     * @return <code>this</code> for fluent calling
+     */
+    public ConditionList inParallel(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Get the executor the conditions are tested on
+     * @return the executor, or <code>null</code> if tested on the calling thread
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
     @Override
     public ConditionList satisfies(Condition condition) {
         conditionList.add(condition);
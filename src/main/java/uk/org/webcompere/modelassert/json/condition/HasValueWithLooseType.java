@@ -4,11 +4,16 @@ import com.fasterxml.jackson.databind.JsonNode;
 import uk.org.webcompere.modelassert.json.Condition;
 import uk.org.webcompere.modelassert.json.Result;
 
+import java.util.Optional;
+import java.util.function.Supplier;
+
 /**
  * Performs the hasValue operation with flexibility and type flexibility. It works
  * out the likely type of node from the input.
  */
 public class HasValueWithLooseType implements Condition {
+    private static final Object NULL_VALUE = new Object();
+
     private Object expected;
 
     /**
@@ -19,33 +24,64 @@ public class HasValueWithLooseType implements Condition {
         this.expected = expected;
     }
 
+    /**
+     * The value of a node, as this condition compares it - the condition is met by a node whose value
+     * is equal to its {@link #value()}
+     * @param node the node
+     * @return the value, or empty if the node is not a scalar, so can't meet this condition
+     */
+    static Optional<Object> valueOf(JsonNode node) {
+        if (node.isNull()) {
+            return Optional.of(NULL_VALUE);
+        }
+        if (node.isNumber()) {
+            return Optional.of(node.numberValue());
+        }
+        if (node.isTextual()) {
+            return Optional.of(node.textValue());
+        }
+        if (node.isBoolean()) {
+            return Optional.of(node.booleanValue());
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * The value this condition expects, comparable with the {@link #valueOf} a node
+     * @return the expected value
+     */
+    Object value() {
+        return expected == null ? NULL_VALUE : expected;
+    }
+
     @Override
     public Result test(JsonNode node) {
-        String was = node.toString();
+        // the description of the node is only needed if the result is reported
+        Supplier<String> was = node::toString;
         if (expected == null && node.isNull()) {
-            return new Result(describe(), was, true);
+            return new Result(this::describe, was, true);
         }
 
         if (expected == null) {
-            return new Result(describe(), was, false);
+            return new Result(this::describe, was, false);
         }
 
         if (expected instanceof Number) {
             if (node.isNumber()) {
-                return new Result(describe(), was, node.numberValue().equals(expected));
+                return new Result(this::describe, was, node.numberValue().equals(expected));
             }
-            return new Result(describe(), was, false);
+            return new Result(this::describe, was, false);
         }
 
         if (expected instanceof String && node.isTextual()) {
-            return new Result(describe(), was, node.textValue().equals(expected));
+            return new Result(this::describe, was, node.textValue().equals(expected));
         }
 
         if (expected instanceof Boolean && node.isBoolean()) {
-            return new Result(describe(), was, node.booleanValue() == (Boolean)expected);
+            return new Result(this::describe, was, node.booleanValue() == (Boolean)expected);
         }
 
-        return new Result(describe(), was, false);
+        return new Result(this::describe, was, false);
     }
 
     @Override
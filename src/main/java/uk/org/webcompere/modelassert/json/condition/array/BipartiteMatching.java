@@ -0,0 +1,148 @@
+package uk.org.webcompere.modelassert.json.condition.array;
+
+import java.util.Arrays;
+
+/**
+ * Finds the largest set of pairs between conditions and array elements, where each condition and each element
+ * is used at most once. This is the Hopcroft-Karp algorithm, which takes O(E &radic;V) time. Candidates are
+ * held in primitive arrays and the searches for augmenting paths are iterative, so large arrays neither box
+ * every index nor exhaust the stack.
+ */
+class BipartiteMatching {
+    private static final int UNMATCHED = -1;
+    private static final int UNREACHED = Integer.MAX_VALUE;
+
+    private int[][] candidates;
+    private int[] elementOfCondition;
+    private int[] conditionOfElement;
+    private int[] distance;
+    private int[] nextCandidate;
+    private int[] pathConditions;
+    private int[] pathElements;
+    private int[] queue;
+
+    /**
+     * Construct the matching
+     * @param candidates for each condition, the indices of the elements which it could be paired with
+     * @param elementCount how many elements there are
+     */
+    BipartiteMatching(int[][] candidates, int elementCount) {
+        this.candidates = candidates;
+        int conditionCount = candidates.length;
+        this.elementOfCondition = new int[conditionCount];
+        this.conditionOfElement = new int[elementCount];
+        this.distance = new int[conditionCount];
+        this.nextCandidate = new int[conditionCount];
+        this.pathConditions = new int[conditionCount];
+        this.pathElements = new int[conditionCount];
+        this.queue = new int[conditionCount];
+        Arrays.fill(elementOfCondition, UNMATCHED);
+        Arrays.fill(conditionOfElement, UNMATCHED);
+    }
+
+    /**
+     * Find a maximum matching
+     * @param candidates for each condition, the indices of the elements which it could be paired with
+     * @param elementCount how many elements there are
+     * @return for each condition, the index of the element it's paired with, or <code>-1</code> if it
+     *     could not be paired
+     */
+    static int[] maximumMatching(int[][] candidates, int elementCount) {
+        return new BipartiteMatching(candidates, elementCount).match();
+    }
+
+    private int[] match() {
+        matchGreedily();
+        while (findShortestAugmentingPathLength()) {
+            Arrays.fill(nextCandidate, 0);
+            for (int condition = 0; condition < candidates.length; condition++) {
+                if (elementOfCondition[condition] == UNMATCHED) {
+                    augmentFrom(condition);
+                }
+            }
+        }
+        return elementOfCondition;
+    }
+
+    /**
+     * Most conditions in practice have an unused candidate, so pair them directly before searching
+     */
+    private void matchGreedily() {
+        for (int condition = 0; condition < candidates.length; condition++) {
+            for (int element : candidates[condition]) {
+                if (conditionOfElement[element] == UNMATCHED) {
+                    pair(condition, element);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Breadth first search from all unpaired conditions, layering the conditions by distance
+     * @return <code>true</code> if there's an augmenting path
+     */
+    private boolean findShortestAugmentingPathLength() {
+        int head = 0;
+        int tail = 0;
+        for (int condition = 0; condition < candidates.length; condition++) {
+            if (elementOfCondition[condition] == UNMATCHED) {
+                distance[condition] = 0;
+                queue[tail++] = condition;
+            } else {
+                distance[condition] = UNREACHED;
+            }
+        }
+
+        boolean found = false;
+        while (head < tail) {
+            int condition = queue[head++];
+            for (int element : candidates[condition]) {
+                int pairedCondition = conditionOfElement[element];
+                if (pairedCondition == UNMATCHED) {
+                    found = true;
+                } else if (distance[pairedCondition] == UNREACHED) {
+                    distance[pairedCondition] = distance[condition] + 1;
+                    queue[tail++] = pairedCondition;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Depth first search along the layers for a path to an unpaired element, and flip the pairs along it
+     * @param start the unpaired condition to start from
+     */
+    private void augmentFrom(int start) {
+        int depth = 0;
+        pathConditions[depth++] = start;
+        while (depth > 0) {
+            int condition = pathConditions[depth - 1];
+            if (nextCandidate[condition] == candidates[condition].length) {
+                // dead end - don't try this condition again in this phase
+                distance[condition] = UNREACHED;
+                depth--;
+                continue;
+            }
+
+            int element = candidates[condition][nextCandidate[condition]++];
+            int pairedCondition = conditionOfElement[element];
+            pathElements[depth - 1] = element;
+            if (pairedCondition == UNMATCHED) {
+                for (int i = 0; i < depth; i++) {
+                    pair(pathConditions[i], pathElements[i]);
+                }
+                return;
+            }
+            if (distance[pairedCondition] == distance[condition] + 1) {
+                pathConditions[depth++] = pairedCondition;
+            }
+        }
+    }
+
+    private void pair(int condition, int element) {
+        elementOfCondition[condition] = element;
+        conditionOfElement[element] = condition;
+    }
+}
@@ -0,0 +1,21 @@
+package uk.org.webcompere.modelassert.json.condition.array;
+
+/**
+ * A cheap test of whether an element of an array could possibly meet a condition, used by
+ * {@link LooseComparison} to avoid testing pairs which cannot match
+ */
+@FunctionalInterface
+public interface CandidateFilter {
+    /**
+     * A filter which allows every pair to be tested
+     */
+    CandidateFilter ALL = (conditionIndex, elementIndex) -> true;
+
+    /**
+     * Could the element meet the condition. This must not rule out any pair which would match
+     * @param conditionIndex the index of the condition
+     * @param elementIndex the index of the element in the array
+     * @return <code>false</code> if the element definitely does not meet the condition
+     */
+    boolean mayMatch(int conditionIndex, int elementIndex);
+}
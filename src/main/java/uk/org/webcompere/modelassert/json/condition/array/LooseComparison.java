@@ -5,10 +5,15 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import uk.org.webcompere.modelassert.json.Condition;
 import uk.org.webcompere.modelassert.json.Result;
 
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Supplier;
 import java.util.stream.IntStream;
-import java.util.stream.Stream;
 
 import static java.util.stream.Collectors.joining;
 import static java.util.stream.Collectors.toList;
@@ -17,41 +22,17 @@ import static java.util.stream.Collectors.toList;
  * Loose array comparison
  */
 public class LooseComparison {
-    private static class Match {
-        private int index;
-        private Set<Integer> counterPartIndices = new HashSet<>();
-
-        public Match(int index) {
-            this.index = index;
-        }
-
-        public int size() {
-            return counterPartIndices.size();
-        }
-
-        public int getIndex() {
-            return index;
-        }
-
-        public void add(int counterPart) {
-            counterPartIndices.add(counterPart);
-        }
-
-        public void remove(int counterPart) {
-            counterPartIndices.remove(counterPart);
-        }
-
-        public Stream<Integer> streamCounterparts() {
-            return counterPartIndices.stream();
-        }
-
-        public boolean contains(int counterpart) {
-            return counterPartIndices.contains(counterpart);
-        }
-    }
+    /**
+     * How many partitions of the conditions to make for each thread when testing on an executor, so that
+     * threads which finish early can take more work
+     */
+    private static final int PARTITIONS_PER_THREAD = 4;
 
     private List<ArrayElementCondition> arrayElementConditions;
     private Supplier<String> description;
+    private CandidateFilter candidateFilter = CandidateFilter.ALL;
+    private Executor executor;
+    private int parallelism;
 
 
     @SuppressFBWarnings("EI_EXPOSE_REP2")
@@ -74,68 +55,161 @@ public class LooseComparison {
     }
 
     /**
-     * Execute the loose array comparison
+     * Use a filter to rule out pairs of condition and element before testing them
+     * @param candidateFilter the filter
+     * @return <code>this</code> for fluent calling
+     */
+    public LooseComparison withCandidateFilter(CandidateFilter candidateFilter) {
+        this.candidateFilter = candidateFilter;
+        return this;
+    }
+
+    /**
+     * Test the conditions against the elements on an executor, with the conditions split into partitions which
+     * are tested at the same time. The conditions, and any candidate filter, must be safe to use from many
+     * threads. The result is the same as testing on one thread. The conditions are split for as many threads as
+     * a {@link ForkJoinPool} has, or as there are processors for any other executor
+     * @param executor the executor to test on
+     * @return <code>this</code> for fluent calling
+     * @see #withExecutor(Executor, int)
+     */
+    public LooseComparison withExecutor(Executor executor) {
+        return withExecutor(executor, executor instanceof ForkJoinPool ?
+            ((ForkJoinPool) executor).getParallelism() : Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Test the conditions against the elements on an executor, as with {@link #withExecutor(Executor)}, with
+     * the conditions split for the given number of threads
+     * @param executor the executor to test on
+     * @param parallelism how many threads the executor can test on at once
+     * @return <code>this</code> for fluent calling
+     */
+    public LooseComparison withExecutor(Executor executor, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Must be able to test on at least one thread");
+        }
+        this.executor = executor;
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Execute the loose array comparison. Each condition must be met by a different element of the array, so
+     * this finds the largest possible pairing of conditions with elements that meet them
      * @param arrayNode the node to test
      * @return the result of comparison
      */
     public Result looseComparison(ArrayNode arrayNode) {
-        // each criterion may match many other elements
-        // try them all out
-        List<Match> matches = IntStream.range(0, arrayElementConditions.size())
-            .mapToObj(index -> calcMatches(index, arrayNode))
-            .collect(toList());
-
-        while (!matches.isEmpty()) {
-            matches.sort(Comparator.comparing(Match::size));
-            if (matches.get(0).size() == 0) {
-                return explainMismatches(matches);
-            }
+        return looseComparison(arrayNode, IntStream.range(0, arrayElementConditions.size()).toArray(),
+            IntStream.range(0, arrayNode.size()).toArray());
+    }
 
-            removeLeastOccurringCounterpart(matches);
+    /**
+     * Execute the loose array comparison on some of the conditions and some of the elements, where the
+     * others are already known to pair up
+     * @param arrayNode the node to test
+     * @param conditionIndices the indices of the conditions still to be met
+     * @param elementIndices the indices of the elements still available to meet them
+     * @return the result of comparison, reporting any unmatched conditions by their original index
+     */
+    public Result looseComparison(ArrayNode arrayNode, int[] conditionIndices, int[] elementIndices) {
+        int[][] candidates = new int[conditionIndices.length][];
+        if (executor == null || conditionIndices.length < 2) {
+            findCandidateRows(candidates, 0, conditionIndices.length, arrayNode, conditionIndices, elementIndices);
+        } else {
+            findCandidatesInParallel(candidates, arrayNode, conditionIndices, elementIndices);
         }
-
-        return new Result(describe(), "all matched", true);
+        return resultOf(conditionIndices, candidates, elementIndices.length);
     }
 
-    private void removeLeastOccurringCounterpart(List<Match> matches) {
-        Multiset<Integer> multiset = new Multiset<>();
-        matches.stream().flatMap(Match::streamCounterparts)
-            .forEach(multiset::add);
+    /**
+     * The result of pairing some of the conditions with some of the elements, where the elements which meet
+     * each condition have been found some other way
+     * @param conditionIndices the indices of the conditions still to be met
+     * @param candidates for each of those conditions, the positions among the elements of the ones which meet it
+     * @param elementCount how many elements are available to meet the conditions
+     * @return the result of the largest possible pairing, reporting any unmatched conditions by their original
+     *     index
+     */
+    public Result resultOf(int[] conditionIndices, int[][] candidates, int elementCount) {
+        int[] elementOfCondition = BipartiteMatching.maximumMatching(candidates, elementCount);
+        int[] unmatched = IntStream.range(0, elementOfCondition.length)
+            .filter(i -> elementOfCondition[i] < 0)
+            .map(i -> conditionIndices[i])
+            .toArray();
+        return resultOf(unmatched);
+    }
 
-        // least frequently occurring item
-        int leastFoundIndex = multiset.entries().min(Map.Entry.comparingByValue())
-            .map(Map.Entry::getKey)
-            .orElseThrow(() -> new IllegalStateException("Cannot have no elements"));
+    /**
+     * The result of pairing the conditions with elements, where the pairing has been done some other way
+     * @param unmatched the indices of the conditions which no element was paired with
+     * @return the result, which passed if there are none
+     */
+    public Result resultOf(int[] unmatched) {
+        if (unmatched.length > 0) {
+            return explainMismatches(unmatched);
+        }
 
-        // now let's find the smallest match of this
-        Match smallestMatch = matches.stream()
-            .filter(match -> match.contains(leastFoundIndex)).min(Comparator.comparing(Match::size))
-            .orElseThrow(() -> new IllegalStateException("Cannot have no elements"));
+        return new Result(describe(), "all matched", true);
+    }
 
-        // we can remove this one
-        matches.remove(smallestMatch);
+    private Result explainMismatches(int[] unmatched) {
+        return new Result(describe(), "No matches for:\n" + Arrays.stream(unmatched)
+            .mapToObj(index -> "Index " + index + ": " + arrayElementConditions.get(index).describe())
+            .collect(joining("\n")), false);
+    }
 
-        // then take the least found index out of the remainder
-        matches.forEach(match -> match.remove(leastFoundIndex));
+    /**
+     * Fill the rows of the candidates for some of the conditions
+     */
+    private void findCandidateRows(int[][] candidates, int from, int to, ArrayNode arrayNode,
+                                   int[] conditionIndices, int[] elementIndices) {
+        for (int i = from; i < to; i++) {
+            candidates[i] = findCandidates(conditionIndices[i], arrayNode, elementIndices);
+        }
     }
 
-    private Result explainMismatches(List<Match> matches) {
-        matches.sort(Comparator.comparing(Match::getIndex));
-        return new Result(describe(), "No matches for:\n" + matches.stream()
-            .filter(match -> match.size() == 0)
-            .map(match -> "Index " + match.getIndex() + ": " +
-                arrayElementConditions.get(match.getIndex()).describe())
-            .collect(joining("\n")), false);
+    /**
+     * Fill the rows of the candidates a partition of the conditions at a time on the executor. Each partition
+     * fills its own rows, and waiting for them all to finish makes the rows visible to this thread
+     */
+    private void findCandidatesInParallel(int[][] candidates, ArrayNode arrayNode, int[] conditionIndices,
+                                          int[] elementIndices) {
+        int partitionSize = Math.max(1, conditionIndices.length / (parallelism * PARTITIONS_PER_THREAD));
+        List<CompletableFuture<Void>> partitions = new ArrayList<>();
+        for (int from = 0; from < conditionIndices.length; from += partitionSize) {
+            int partitionFrom = from;
+            int partitionTo = Math.min(conditionIndices.length, from + partitionSize);
+            partitions.add(CompletableFuture.runAsync(() -> findCandidateRows(candidates, partitionFrom, partitionTo,
+                arrayNode, conditionIndices, elementIndices), executor));
+        }
+
+        try {
+            CompletableFuture.allOf(partitions.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            // a condition which failed on another thread fails the same way as on this one
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw e;
+        }
     }
 
-    private Match calcMatches(int index, ArrayNode arrayNode) {
-        Match match = new Match(index);
-        for (int i = 0; i < arrayNode.size(); i++) {
-            if (arrayElementConditions.get(index).test(arrayNode.get(i), index).isPassed()) {
-                match.add(i);
+    // the candidates are positions in the element indices, rather than indices in the array
+    private int[] findCandidates(int index, ArrayNode arrayNode, int[] elementIndices) {
+        ArrayElementCondition condition = arrayElementConditions.get(index);
+        int[] candidates = new int[elementIndices.length];
+        int count = 0;
+        for (int i = 0; i < elementIndices.length; i++) {
+            int element = elementIndices[i];
+            if (candidateFilter.mayMatch(index, element) &&
+                condition.test(arrayNode.get(element), index).isPassed()) {
+                candidates[count++] = i;
             }
         }
-        return match;
+        return Arrays.copyOf(candidates, count);
     }
 
     private Supplier<String> describe() {
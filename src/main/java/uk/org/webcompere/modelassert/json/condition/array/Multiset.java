@@ -15,6 +15,24 @@ public class Multiset<T> {
         items.merge(item, 1, Integer::sum);
     }
 
+    /**
+     * Take one of the item out of the set
+     * @param item the item
+     * @return <code>false</code> if there were none of it left
+     */
+    public boolean remove(T item) {
+        Integer count = items.get(item);
+        if (count == null) {
+            return false;
+        }
+        if (count == 1) {
+            items.remove(item);
+        } else {
+            items.put(item, count - 1);
+        }
+        return true;
+    }
+
     public Stream<Map.Entry<T, Integer>> entries() {
         return items.entrySet().stream();
     }
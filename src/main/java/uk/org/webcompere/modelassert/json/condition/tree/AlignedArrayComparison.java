@@ -0,0 +1,216 @@
+package uk.org.webcompere.modelassert.json.condition.tree;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Compares two arrays in order, after aligning their elements with the fewest elements removed from the
+ * expected and inserted into the actual, so an element inserted near the start is reported as an insertion,
+ * rather than making every element after it different. The alignment is Myers' diff over the structural
+ * hashes of the elements. Where elements are removed and inserted at the same point, they're paired in
+ * order, as most likely they're the same element changed, and only the aligned pairs are compared in detail.
+ * <br>
+ * Whether the arrays are equal is the same as for comparing them index by index - only how the differences
+ * are reported changes.
+ */
+class AlignedArrayComparison {
+    /**
+     * The most elements to remove and insert while aligning - beyond this, the arrays are so different that
+     * they're compared index by index
+     */
+    static final int MAX_EDITS = 1000;
+
+    private long[] expectedHashes;
+
+    /**
+     * Construct the comparison
+     * @param expectedHashes the structural hashes of the expected elements, or <code>null</code> to work them
+     *     out
+     */
+    AlignedArrayComparison(long[] expectedHashes) {
+        this.expectedHashes = expectedHashes;
+    }
+
+    /**
+     * Compare the arrays
+     * @param actual the actual array
+     * @param expected the expected array
+     * @param pathToHere the location of the array
+     * @param walk the walk, which has the failures, and compares the aligned elements
+     * @return <code>false</code> if the arrays are too different to align, so haven't been compared
+     */
+    boolean compare(ArrayNode actual, ArrayNode expected, Location pathToHere, TreeWalk walk) {
+        Optional<int[]> alignment = align(hashes(actual),
+            expectedHashes == null ? hashes(expected) : expectedHashes, MAX_EDITS);
+        if (!alignment.isPresent()) {
+            return false;
+        }
+        int[] actualOfExpected = alignment.get();
+
+        DifferenceCollector failures = walk.getFailures();
+        boolean[] actualPaired = new boolean[actual.size()];
+        Map<Integer, JsonNode> removed = new LinkedHashMap<>();
+        for (int i = 0; i < expected.size(); i++) {
+            if (actualOfExpected[i] < 0) {
+                removed.put(i, expected.get(i));
+            } else {
+                actualPaired[actualOfExpected[i]] = true;
+            }
+        }
+        Map<Integer, JsonNode> inserted = new LinkedHashMap<>();
+        for (int i = 0; i < actual.size(); i++) {
+            if (!actualPaired[i]) {
+                inserted.put(i, actual.get(i));
+            }
+        }
+
+        if (!removed.isEmpty()) {
+            failures.add(Difference.removedElements(pathToHere, removed));
+        }
+        if (!inserted.isEmpty()) {
+            failures.add(Difference.insertedElements(pathToHere, inserted));
+        }
+
+        walk.compareEach(pathToHere, expected.size(), (i, next) -> {
+            int actualIndex = actualOfExpected[i];
+            if (actualIndex >= 0) {
+                next.compare(actual.get(actualIndex), expected.get(i), pathToHere.element(actualIndex));
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Align two sequences of hashes with the fewest removals and insertions, pairing up removals and
+     * insertions at the same point
+     * @param actual the hashes of the actual elements
+     * @param expected the hashes of the expected elements
+     * @param maxEdits the most removals and insertions to try
+     * @return the index of the actual element aligned with each expected element, or <code>-1</code> where the
+     *     expected element was removed, or empty if more than <code>maxEdits</code> are needed
+     */
+    static Optional<int[]> align(long[] actual, long[] expected, int maxEdits) {
+        int[] actualOfExpected = new int[expected.length];
+        Arrays.fill(actualOfExpected, -1);
+
+        // most differences are somewhere in the middle, so skip the ends which are the same
+        int prefix = 0;
+        while (prefix < actual.length && prefix < expected.length && actual[prefix] == expected[prefix]) {
+            actualOfExpected[prefix] = prefix;
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < actual.length - prefix && suffix < expected.length - prefix &&
+            actual[actual.length - 1 - suffix] == expected[expected.length - 1 - suffix]) {
+            actualOfExpected[expected.length - 1 - suffix] = actual.length - 1 - suffix;
+            suffix++;
+        }
+
+        List<int[]> matches = diff(actual, expected, prefix, actual.length - suffix, expected.length - suffix,
+            maxEdits);
+        if (matches == null) {
+            return Optional.empty();
+        }
+
+        // pair up the removals and insertions between each match, and the next
+        int expectedFrom = prefix;
+        int actualFrom = prefix;
+        matches.add(new int[] {expected.length - suffix, actual.length - suffix});
+        for (int[] match : matches) {
+            int paired = Math.min(match[0] - expectedFrom, match[1] - actualFrom);
+            for (int i = 0; i < paired; i++) {
+                actualOfExpected[expectedFrom + i] = actualFrom + i;
+            }
+            if (match[0] < expected.length - suffix) {
+                actualOfExpected[match[0]] = match[1];
+            }
+            expectedFrom = match[0] + 1;
+            actualFrom = match[1] + 1;
+        }
+        return Optional.of(actualOfExpected);
+    }
+
+    /**
+     * Myers' diff of the middle of the sequences. The furthest reaching path on each diagonal is kept for each
+     * number of edits, so the path can be traced back from the end
+     * @return the matching pairs of expected and actual indices, in order, or <code>null</code> if more than
+     *     <code>maxEdits</code> are needed
+     */
+    private static List<int[]> diff(long[] actual, long[] expected, int from, int actualTo, int expectedTo,
+                                    int maxEdits) {
+        int expectedLength = expectedTo - from;
+        int actualLength = actualTo - from;
+        int max = Math.min(expectedLength + actualLength, maxEdits);
+
+        // diagonal k is where the expected index minus the actual index is k
+        int offset = max + 1;
+        int[] furthest = new int[2 * max + 3];
+        List<int[]> trace = new ArrayList<>();
+        for (int edits = 0; edits <= max; edits++) {
+            trace.add(Arrays.copyOfRange(furthest, offset - edits - 1, offset + edits + 2));
+            for (int k = -edits; k <= edits; k += 2) {
+                int x = fromAbove(furthest, offset, k, edits) ?
+                    furthest[offset + k + 1] : furthest[offset + k - 1] + 1;
+                int y = x - k;
+                while (x < expectedLength && y < actualLength && expected[from + x] == actual[from + y]) {
+                    x++;
+                    y++;
+                }
+                furthest[offset + k] = x;
+                if (x >= expectedLength && y >= actualLength) {
+                    return traceBack(trace, expectedLength, actualLength, from);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static List<int[]> traceBack(List<int[]> trace, int expectedLength, int actualLength, int from) {
+        List<int[]> matches = new ArrayList<>();
+        int x = expectedLength;
+        int y = actualLength;
+        for (int edits = trace.size() - 1; edits >= 0; edits--) {
+            // each step of the trace only holds the diagonals which could be reached by then
+            int[] furthest = trace.get(edits);
+            int offset = edits + 1;
+            int k = x - y;
+            int previousK = fromAbove(furthest, offset, k, edits) ? k + 1 : k - 1;
+            int previousX = edits == 0 ? 0 : furthest[offset + previousK];
+            int previousY = edits == 0 ? 0 : previousX - previousK;
+            while (x > previousX && y > previousY) {
+                x--;
+                y--;
+                matches.add(new int[] {from + x, from + y});
+            }
+            x = previousX;
+            y = previousY;
+        }
+
+        // traced from the end, so reverse into order
+        List<int[]> inOrder = new ArrayList<>(matches.size() + 1);
+        for (int i = matches.size() - 1; i >= 0; i--) {
+            inOrder.add(matches.get(i));
+        }
+        return inOrder;
+    }
+
+    private static boolean fromAbove(int[] furthest, int offset, int k, int edits) {
+        // reached by an insertion into the actual, rather than a removal from the expected
+        return k == -edits || (k != edits && furthest[offset + k - 1] < furthest[offset + k + 1]);
+    }
+
+    private static long[] hashes(ArrayNode array) {
+        long[] hashes = new long[array.size()];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = StructuralHashJoin.hash(array.get(i));
+        }
+        return hashes;
+    }
+}
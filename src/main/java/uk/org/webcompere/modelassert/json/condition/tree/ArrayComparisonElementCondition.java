@@ -4,8 +4,6 @@ import com.fasterxml.jackson.databind.JsonNode;
 import uk.org.webcompere.modelassert.json.Result;
 import uk.org.webcompere.modelassert.json.condition.array.ArrayElementCondition;
 
-import java.util.LinkedList;
-import java.util.List;
 
 /**
  * Allow the {@link uk.org.webcompere.modelassert.json.condition.array.LooseComparison} algorithm to
@@ -35,14 +33,16 @@ public class ArrayComparisonElementCondition implements ArrayElementCondition {
 
     @Override
     public Result test(JsonNode json, int arrayIndex) {
-        List<String> failures = new LinkedList<>();
+        // only whether this element matches is needed, so stop at the first difference, and
+        // only describe it if asked to
+        DifferenceCollector failures = DifferenceCollector.firstDifferenceOnly();
         treeComparisonCondition.compareTrees(json, elementInExpected,
-            pathToHere.child(Integer.toString(arrayIndex)), failures);
-        return new Result(this::describe, failures.toString(), failures.isEmpty());
+            pathToHere.element(arrayIndex), failures);
+        return new Result(this::describe, () -> failures.getDifferences().toString(), failures.isEmpty());
     }
 
     @Override
     public String describe() {
-        return "Has match for " + pathToHere.child(Integer.toString(indexOfExpected)).toString() + " in expected";
+        return "Has match for " + pathToHere.element(indexOfExpected).toString() + " in expected";
     }
 }
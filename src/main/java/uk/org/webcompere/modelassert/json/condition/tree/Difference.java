@@ -0,0 +1,299 @@
+package uk.org.webcompere.modelassert.json.condition.tree;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeType;
+import uk.org.webcompere.modelassert.json.Result;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A single difference found when comparing trees. This records where the difference is, what sort of
+ * difference it is and what was expected and found there. It's only turned into text by {@link #toString()},
+ * so a comparison which is only interested in whether there were differences doesn't pay for describing them.
+ * <br>
+ * What the expected and actual are depends on the {@link Kind}.
+ */
+public final class Difference {
+
+    /**
+     * The sorts of difference between two trees
+     */
+    public enum Kind {
+        /**
+         * The nodes are of different types. The expected and actual are the {@link JsonNode}s or,
+         * where the comparison was streamed, their {@link JsonNodeType}s
+         */
+        DIFFERENT_TYPES("type differences"),
+
+        /**
+         * Two scalar values are different. The expected and actual are the {@link JsonNode}s
+         */
+        DIFFERENT_VALUE("value differences"),
+
+        /**
+         * The actual node was of a type that can't be compared. The actual is the {@link JsonNode}
+         */
+        UNSUPPORTED_TYPE("unsupported types"),
+
+        /**
+         * The actual didn't meet the condition in a rule for this path. The expected is the {@link Result}
+         * of the condition, and the actual is the {@link JsonNode}
+         */
+        FAILED_CONDITION("condition failures"),
+
+        /**
+         * The actual object has keys which were not expected. The actual is the list of keys
+         */
+        UNEXPECTED_KEYS("unexpected key differences"),
+
+        /**
+         * The actual object is missing some keys. The expected is the list of keys
+         */
+        MISSING_KEYS("missing key differences"),
+
+        /**
+         * The keys in both objects are in a different order. The expected and actual are the keys,
+         * in order, which are in both
+         */
+        KEY_ORDER("key order differences"),
+
+        /**
+         * The arrays are different sizes. The expected and actual are the sizes
+         */
+        ARRAY_SIZE("array size differences"),
+
+        /**
+         * Some elements of the expected array could not be matched in any position in the actual. The expected
+         * is the {@link Result} of the loose comparison
+         */
+        UNMATCHED_ELEMENTS("unmatched array elements"),
+
+        /**
+         * Elements of an array matched by key were not found in the actual. The expected is the list
+         * of their {@link ElementKey}s
+         */
+        MISSING_ELEMENTS("missing element differences"),
+
+        /**
+         * Elements of an array matched by key were in the actual but not the expected. The actual is the list
+         * of their {@link ElementKey}s
+         */
+        UNEXPECTED_ELEMENTS("unexpected element differences"),
+
+        /**
+         * Elements of an aligned array were removed from the expected. The expected is a map of their
+         * indices in the expected to the elements
+         */
+        REMOVED_ELEMENTS("removed element differences"),
+
+        /**
+         * Elements of an aligned array were inserted into the actual. The actual is a map of their indices
+         * in the actual to the elements
+         */
+        INSERTED_ELEMENTS("inserted element differences"),
+
+        /**
+         * Elements of an array in any order, compared by spilling to disk, had no equal in the actual. The
+         * expected is a map of their indices in the expected to the elements
+         */
+        UNPAIRED_EXPECTED_ELEMENTS("unpaired expected element differences"),
+
+        /**
+         * Elements of an array in any order, compared by spilling to disk, had no equal in the expected. The
+         * actual is a map of their indices in the actual to the elements
+         */
+        UNPAIRED_ACTUAL_ELEMENTS("unpaired actual element differences");
+
+        private final String description;
+
+        Kind(String description) {
+            this.description = description;
+        }
+
+        /**
+         * Describe many differences of this kind
+         * @return the plural description
+         */
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    private final Location path;
+    private final Kind kind;
+    private final Object expected;
+    private final Object actual;
+    private final JsonNode expectedNode;
+
+    private Difference(Location path, Kind kind, Object expected, Object actual) {
+        this(path, kind, expected, actual, null);
+    }
+
+    private Difference(Location path, Kind kind, Object expected, Object actual, JsonNode expectedNode) {
+        this.path = path;
+        this.kind = kind;
+        this.expected = expected;
+        this.actual = actual;
+        this.expectedNode = expectedNode;
+    }
+
+    static Difference differentTypes(Location path, JsonNode expected, JsonNode actual) {
+        return new Difference(path, Kind.DIFFERENT_TYPES, expected, actual);
+    }
+
+    static Difference differentTypes(Location path, JsonNodeType expected, JsonNodeType actual) {
+        return new Difference(path, Kind.DIFFERENT_TYPES, expected, actual);
+    }
+
+    static Difference differentValue(Location path, JsonNode expected, JsonNode actual) {
+        return new Difference(path, Kind.DIFFERENT_VALUE, expected, actual);
+    }
+
+    static Difference unsupportedType(Location path, JsonNode actual) {
+        return new Difference(path, Kind.UNSUPPORTED_TYPE, null, actual);
+    }
+
+    static Difference failedCondition(Location path, Result conditionResult, JsonNode actual) {
+        return new Difference(path, Kind.FAILED_CONDITION, conditionResult, actual);
+    }
+
+    static Difference unexpectedKeys(Location path, List<String> keys) {
+        return new Difference(path, Kind.UNEXPECTED_KEYS, null, keys);
+    }
+
+    static Difference missingKeys(Location path, List<String> keys) {
+        return missingKeys(path, keys, null);
+    }
+
+    static Difference missingKeys(Location path, List<String> keys, JsonNode expectedObject) {
+        return new Difference(path, Kind.MISSING_KEYS, keys, null, expectedObject);
+    }
+
+    static Difference keyOrder(Location path, Collection<String> expectedOrder, Collection<String> actualOrder) {
+        return new Difference(path, Kind.KEY_ORDER, expectedOrder, actualOrder);
+    }
+
+    static Difference arraySize(Location path, int expectedSize, int actualSize) {
+        return new Difference(path, Kind.ARRAY_SIZE, expectedSize, actualSize);
+    }
+
+    static Difference arraySize(Location path, JsonNode expectedArray, int actualSize) {
+        return new Difference(path, Kind.ARRAY_SIZE, expectedArray.size(), actualSize, expectedArray);
+    }
+
+    static Difference unmatchedElements(Location path, Result looseComparisonResult, JsonNode expectedArray) {
+        return new Difference(path, Kind.UNMATCHED_ELEMENTS, looseComparisonResult, null, expectedArray);
+    }
+
+    static Difference missingElements(Location path, List<ElementKey> keys, JsonNode expectedArray) {
+        return new Difference(path, Kind.MISSING_ELEMENTS, keys, null, expectedArray);
+    }
+
+    static Difference unexpectedElements(Location path, List<ElementKey> keys, JsonNode expectedArray) {
+        return new Difference(path, Kind.UNEXPECTED_ELEMENTS, null, keys, expectedArray);
+    }
+
+    static Difference removedElements(Location path, Map<Integer, JsonNode> elements) {
+        return new Difference(path, Kind.REMOVED_ELEMENTS, elements, null);
+    }
+
+    static Difference insertedElements(Location path, Map<Integer, JsonNode> elements) {
+        return new Difference(path, Kind.INSERTED_ELEMENTS, null, elements);
+    }
+
+    static Difference unpairedExpectedElements(Location path, Map<Integer, JsonNode> elements) {
+        return new Difference(path, Kind.UNPAIRED_EXPECTED_ELEMENTS, elements, null);
+    }
+
+    static Difference unpairedActualElements(Location path, Map<Integer, JsonNode> elements) {
+        return new Difference(path, Kind.UNPAIRED_ACTUAL_ELEMENTS, null, elements);
+    }
+
+    /**
+     * Where the difference is
+     * @return the location in the actual tree
+     */
+    public Location getPath() {
+        return path;
+    }
+
+    /**
+     * What sort of difference this is
+     * @return the kind of difference
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * What was expected - see {@link Kind} for what this will be
+     * @return the expected, or <code>null</code> if the kind of difference doesn't have one
+     */
+    public Object getExpected() {
+        return expected;
+    }
+
+    /**
+     * What was found - see {@link Kind} for what this will be
+     * @return the actual, or <code>null</code> if the kind of difference doesn't have one
+     */
+    public Object getActual() {
+        return actual;
+    }
+
+    /**
+     * The expected object or array at the path, for differences in its keys or elements, which a patch
+     * needs for the values to add
+     * @return the expected node, or <code>null</code> if not known, as when streamed
+     */
+    JsonNode getExpectedNode() {
+        return expectedNode;
+    }
+
+    @Override
+    public String toString() {
+        switch (kind) {
+          case DIFFERENT_TYPES:
+              return path + " different types: expected " + typeOf(expected) + ", actual " + typeOf(actual);
+          case DIFFERENT_VALUE:
+              return path + " value is different: expected " + expected + ", actual " + actual;
+          case UNSUPPORTED_TYPE:
+              return "Unexpected node type: " + typeOf(actual);
+          case FAILED_CONDITION:
+              return path + ": expected " + ((Result)expected).getCondition() +
+                  " but was " + ((Result)expected).getWas();
+          case UNEXPECTED_KEYS:
+              return path + ": unexpected keys " + actual;
+          case MISSING_KEYS:
+              return path + ": missing keys " + expected;
+          case KEY_ORDER:
+              return path + ": keys in the wrong order - expected " + expected + ", found " + actual;
+          case ARRAY_SIZE:
+              return path + ": arrays have different size, expected: " + expected + " actual: " + actual;
+          case MISSING_ELEMENTS:
+              return path + ": missing elements " + expected;
+          case UNEXPECTED_ELEMENTS:
+              return path + ": unexpected elements " + actual;
+          case REMOVED_ELEMENTS:
+              return path + ": elements removed, by expected index " + expected;
+          case INSERTED_ELEMENTS:
+              return path + ": elements inserted, by actual index " + actual;
+          case UNPAIRED_EXPECTED_ELEMENTS:
+              return path + ": expected elements with no equal in the actual, by expected index " + expected;
+          case UNPAIRED_ACTUAL_ELEMENTS:
+              return path + ": actual elements with no equal in the expected, by actual index " + actual;
+          case UNMATCHED_ELEMENTS:
+          default:
+              return ((Result)expected).getCondition() + " " + ((Result)expected).getWas();
+        }
+    }
+
+    private static Object typeOf(Object node) {
+        if (node instanceof JsonNode) {
+            return ((JsonNode)node).getNodeType();
+        }
+        return node;
+    }
+}
@@ -0,0 +1,211 @@
+package uk.org.webcompere.modelassert.json.condition.tree;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static java.util.stream.Collectors.joining;
+
+/**
+ * Collects the {@link Difference}s found by a comparison, up to a limit. Once the limit is reached, the
+ * comparison can check {@link #isFull()} to stop looking for more. A collector with a limit of more than one
+ * keeps looking until one more difference is found and dropped, so it can say whether any were left out.
+ */
+class DifferenceCollector {
+    private List<Difference> differences = new ArrayList<>();
+    private int maxDifferences;
+    private boolean findsOverflow;
+    private boolean overflowed;
+
+    /**
+     * Construct a collector
+     * @param maxDifferences the most differences to collect
+     */
+    DifferenceCollector(int maxDifferences) {
+        this(maxDifferences, maxDifferences > 1);
+    }
+
+    private DifferenceCollector(int maxDifferences, boolean findsOverflow) {
+        this.maxDifferences = maxDifferences;
+        this.findsOverflow = findsOverflow;
+    }
+
+    /**
+     * Construct a collector which only needs to know whether there are any differences
+     * @return a collector which is full after the first difference
+     */
+    static DifferenceCollector firstDifferenceOnly() {
+        return new DifferenceCollector(1);
+    }
+
+    /**
+     * Construct a collector for part of the comparison, to be added to this one afterwards, which can hold
+     * as many differences as this one has room for
+     * @return a new collector, which looks past its limit if this one does
+     */
+    DifferenceCollector forRemainingCapacity() {
+        return new DifferenceCollector(remainingCapacity(), findsOverflow);
+    }
+
+    /**
+     * Construct a collector for part of the comparison whose differences belong before others which have been
+     * found, to be inserted into this one afterwards with {@link #insertInto}
+     * @param position the position the differences will be inserted at
+     * @return a new collector, which can hold as many differences as fit here from the position on
+     */
+    DifferenceCollector forRoomAt(int position) {
+        return new DifferenceCollector(maxDifferences - Math.min(position, size()), findsOverflow);
+    }
+
+    /**
+     * Add a difference, unless the limit has been reached, in which case the difference is dropped
+     * @param difference the difference
+     */
+    void add(Difference difference) {
+        if (differences.size() < maxDifferences) {
+            differences.add(difference);
+        } else {
+            overflowed = true;
+        }
+    }
+
+    /**
+     * Add a difference before others which have been found. If this goes over the limit, then the
+     * last difference is dropped
+     * @param position the position to insert it at
+     * @param difference the difference
+     */
+    void add(int position, Difference difference) {
+        differences.add(position, difference);
+        if (differences.size() > maxDifferences) {
+            differences.remove(differences.size() - 1);
+            overflowed = true;
+        }
+    }
+
+    /**
+     * Record that differences were found but left out without being added, as when only as many of them as
+     * there's room for are described
+     */
+    void leftOut() {
+        overflowed = true;
+    }
+
+    /**
+     * Has the limit been reached, meaning there's no need to compare any further. Where the collector says
+     * whether differences were left out, that's once a difference has been dropped
+     * @return <code>true</code> when no more differences will be collected
+     */
+    boolean isFull() {
+        return differences.size() >= maxDifferences && (overflowed || !findsOverflow);
+    }
+
+    boolean isEmpty() {
+        return differences.isEmpty();
+    }
+
+    int size() {
+        return differences.size();
+    }
+
+    /**
+     * How many more differences can be collected
+     * @return the number left before the limit
+     */
+    int remainingCapacity() {
+        return maxDifferences - size();
+    }
+
+    /**
+     * Add the differences collected here to another collector, in order, until it's full. If differences were
+     * dropped here, then they would have been dropped there too
+     * @param target the collector to add to
+     */
+    void addAllTo(DifferenceCollector target) {
+        for (Difference difference : differences) {
+            if (target.isFull()) {
+                return;
+            }
+            target.add(difference);
+        }
+        if (overflowed) {
+            target.overflowed = true;
+        }
+    }
+
+    /**
+     * Insert the differences collected here into another collector, in order, before those it has found from
+     * the position on. Any of its differences which this takes over its limit are dropped
+     * @param target the collector to insert into
+     * @param position the position to insert at, which is no further than the end of the target
+     * @return how many differences were inserted
+     */
+    int insertInto(DifferenceCollector target, int position) {
+        int insertAt = Math.min(position, target.size());
+        for (Difference difference : differences) {
+            target.add(insertAt++, difference);
+        }
+        if (overflowed) {
+            target.overflowed = true;
+        }
+        return differences.size();
+    }
+
+    List<Difference> getDifferences() {
+        return differences;
+    }
+
+    /**
+     * Describe the differences, one per line, noting if there may have been more
+     * @param summarise whether to collapse differences of the same kind, at paths which differ only
+     *                  by array index, into one line
+     * @return the description of the differences
+     */
+    String describe(boolean summarise) {
+        String description = summarise ? describeSummarised() : describeEach();
+        if (overflowed && maxDifferences > 1) {
+            description += "\nStopped comparing at the limit of " + maxDifferences + " differences";
+        }
+        return description;
+    }
+
+    private String describeEach() {
+        return differences.stream()
+            .map(Difference::toString)
+            .collect(joining("\n"));
+    }
+
+    private String describeSummarised() {
+        Map<String, List<Difference>> groups = new LinkedHashMap<>();
+        for (Difference difference : differences) {
+            String pathPattern = toPathPattern(difference.getPath());
+            groups.computeIfAbsent(difference.getKind() + pathPattern, key -> new ArrayList<>())
+                .add(difference);
+        }
+        return groups.values().stream()
+            .map(DifferenceCollector::describeGroup)
+            .collect(joining("\n"));
+    }
+
+    private static String describeGroup(List<Difference> group) {
+        Difference first = group.get(0);
+        if (group.size() == 1) {
+            return first.toString();
+        }
+        return String.format(Locale.ROOT, "%,d similar %s under %s, e.g. %s",
+            group.size(), first.getKind().getDescription(), toPathPattern(first.getPath()), first);
+    }
+
+    private static String toPathPattern(Location location) {
+        // only the indices of array elements are collapsed, not field names which happen to be numbers
+        Deque<String> parts = new ArrayDeque<>();
+        for (Location current = location; !current.isEmpty(); current = current.getParent()) {
+            parts.push(current.isElement() ? "*" : current.last());
+        }
+        return "/" + String.join("/", parts);
+    }
+}
@@ -0,0 +1,63 @@
+package uk.org.webcompere.modelassert.json.condition.tree;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The values of the key fields of an array element, used to pair elements when an array is matched by key.
+ * A field which the element doesn't have is part of the key as a missing value.
+ */
+public final class ElementKey {
+    private final List<String> keyFields;
+    private final List<JsonNode> values;
+
+    private ElementKey(List<String> keyFields, List<JsonNode> values) {
+        this.keyFields = keyFields;
+        this.values = values;
+    }
+
+    /**
+     * Read the key of an element
+     * @param element the element of the array
+     * @param keyFields the fields which make up the key
+     * @return the key
+     */
+    static ElementKey of(JsonNode element, List<String> keyFields) {
+        List<JsonNode> values = new ArrayList<>(keyFields.size());
+        for (String field : keyFields) {
+            values.add(element.path(field));
+        }
+        return new ElementKey(keyFields, values);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof ElementKey)) {
+            return false;
+        }
+        return values.equals(((ElementKey) other).values);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(values);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < keyFields.size(); i++) {
+            builder.append(i == 0 ? "" : ", ")
+                .append(keyFields.get(i))
+                .append('=')
+                .append(values.get(i).isMissingNode() ? "(missing)" : values.get(i).toString());
+        }
+        return keyFields.size() == 1 ? builder.toString() : "{" + builder + "}";
+    }
+}
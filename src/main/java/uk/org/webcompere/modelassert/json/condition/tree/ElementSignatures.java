@@ -0,0 +1,115 @@
+package uk.org.webcompere.modelassert.json.condition.tree;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import uk.org.webcompere.modelassert.json.condition.array.CandidateFilter;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Cheap signatures of the elements of two arrays being compared in any order, so that pairs which obviously
+ * differ don't need a full comparison. How much of the signature can be used for each expected element
+ * depends on the rules that apply to it:
+ * <ul>
+ *     <li>with a condition at the element, anything might match, so there's no filtering</li>
+ *     <li>otherwise the node type must match, and scalars must have the same value</li>
+ *     <li>and if there's no <code>contains</code> rule at the element, and no condition below it which might
+ *     allow keys to be missing or extra, then containers must have the same size and the same keys</li>
+ * </ul>
+ */
+class ElementSignatures implements CandidateFilter {
+    static final int NO_FILTER = 0;
+    static final int TYPE_AND_VALUE = 1;
+    static final int SHAPE = 2;
+
+    private ArrayNode actual;
+    private int[] levels;
+    private long[] expectedSignatures;
+    private AtomicReferenceArray<long[]> actualSignatures = new AtomicReferenceArray<>(SHAPE + 1);
+
+    private ElementSignatures(ArrayNode actual, int[] levels, long[] expectedSignatures) {
+        this.actual = actual;
+        this.levels = levels;
+        this.expectedSignatures = expectedSignatures;
+    }
+
+    /**
+     * Work out the signatures of the expected elements
+     * @param actual the actual array
+     * @param expected the expected array
+     * @param pathToHere the location of the array
+     * @param comparison the comparison, which has the rules
+     * @return the signatures, as a filter of candidate pairs
+     */
+    static ElementSignatures of(ArrayNode actual, ArrayNode expected, Location pathToHere,
+                                TreeComparisonCondition comparison) {
+        ExpectedPlan plan = comparison.getPlan();
+        int[] levels = new int[expected.size()];
+        long[] expectedSignatures = new long[expected.size()];
+        for (int i = 0; i < expected.size(); i++) {
+            levels[i] = levelAt(pathToHere.element(i), comparison);
+            long[] planned = plan == null ? null : plan.elementSignatures(expected, levels[i]);
+            expectedSignatures[i] = planned == null ? signature(expected.get(i), levels[i]) : planned[i];
+        }
+        return new ElementSignatures(actual, levels, expectedSignatures);
+    }
+
+    @Override
+    public boolean mayMatch(int conditionIndex, int elementIndex) {
+        int level = levels[conditionIndex];
+        if (level == NO_FILTER) {
+            return true;
+        }
+        return expectedSignatures[conditionIndex] == actualSignatures(level)[elementIndex];
+    }
+
+    private long[] actualSignatures(int level) {
+        // the loose comparison may be testing candidates on many threads, and any of them can work these out
+        long[] signatures = actualSignatures.get(level);
+        if (signatures == null) {
+            signatures = new long[actual.size()];
+            for (int i = 0; i < signatures.length; i++) {
+                signatures[i] = signature(actual.get(i), level);
+            }
+            actualSignatures.set(level, signatures);
+        }
+        return signatures;
+    }
+
+    private static int levelAt(Location elementLocation, TreeComparisonCondition comparison) {
+        if (comparison.findRule(elementLocation, TreeRule.CONDITION).isPresent()) {
+            return NO_FILTER;
+        }
+        if (comparison.findRule(elementLocation, TreeRule.OBJECT_CONTAINS).isPresent() ||
+            comparison.findRule(elementLocation, TreeRule.ARRAY_CONTAINS).isPresent() ||
+            comparison.hasRuleBelow(elementLocation, TreeRule.CONDITION)) {
+            return TYPE_AND_VALUE;
+        }
+        return SHAPE;
+    }
+
+    /**
+     * The signature of a node
+     * @param node the node
+     * @param level how much of the node the signature covers
+     * @return the signature
+     */
+    static long signature(JsonNode node, int level) {
+        int typeAndValue = node.getNodeType().ordinal();
+        if (node.isValueNode()) {
+            typeAndValue = 31 * typeAndValue + node.hashCode();
+        }
+
+        int shape = 0;
+        if (level == SHAPE && node.isContainerNode()) {
+            shape = node.size();
+            Iterator<String> keys = node.fieldNames();
+            while (keys.hasNext()) {
+                // adding makes this independent of the key order
+                shape += 31 * keys.next().hashCode();
+            }
+        }
+        return ((long) typeAndValue << 32) | (shape & 0xffffffffL);
+    }
+}
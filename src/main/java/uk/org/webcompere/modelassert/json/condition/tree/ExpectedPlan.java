@@ -0,0 +1,138 @@
+package uk.org.webcompere.modelassert.json.condition.tree;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * What the comparison works out about each node of the expected tree, worked out once so that a condition
+ * which is tested many times, such as an argument matcher, doesn't work it out again for every actual. The
+ * nodes are found by identity, so only the nodes of the tree the plan was compiled from are known to it.
+ * <br>
+ * The plan holds the keys of every object, in order, and the structural hashes and signatures of the elements
+ * of every array. It is not changed once compiled, apart from the description, which is only worked out
+ * if a comparison fails, so may be shared between threads.
+ * <br>
+ * Rules are not part of the plan, as they're found by the location being compared, and an expected node isn't
+ * always compared at the same location. An element of an array matched by key, or aligned, is compared at the
+ * index of the actual element it's paired with, which differs from one actual to the next. Elsewhere, including
+ * arrays in any order, the location does follow from the expected node, but finding the rules there is already
+ * cheap - the states of the rules are carried down the tree by {@link RuleStates}, and shared by the elements
+ * of an array, so a location costs a step of each rule, however deep it is.
+ */
+final class ExpectedPlan {
+    private final JsonNode expected;
+    private final Map<JsonNode, Set<String>> keys;
+    private final Map<JsonNode, ArrayPlan> arrays;
+    private volatile String description;
+
+    /**
+     * The hashes and signatures of the elements of an expected array
+     */
+    private static final class ArrayPlan {
+        private final long[] hashes;
+        private final long[][] signatures;
+
+        ArrayPlan(long[] hashes, long[][] signatures) {
+            this.hashes = hashes;
+            this.signatures = signatures;
+        }
+    }
+
+    private ExpectedPlan(JsonNode expected, Map<JsonNode, Set<String>> keys, Map<JsonNode, ArrayPlan> arrays) {
+        this.expected = expected;
+        this.keys = keys;
+        this.arrays = arrays;
+    }
+
+    /**
+     * Compile the plan for an expected tree. The tree is walked once, bottom up, on an explicit stack
+     * @param expected the expected tree
+     * @return the plan
+     */
+    static ExpectedPlan compile(JsonNode expected) {
+        Map<JsonNode, Set<String>> keys = new IdentityHashMap<>();
+        Map<JsonNode, ArrayPlan> arrays = new IdentityHashMap<>();
+
+        // the hashes of the children of each container are ready by the time the container is reached
+        Map<JsonNode, Long> hashes = new IdentityHashMap<>();
+        StructuralHashJoin.hash(expected, (node, hash) -> {
+            if (node.isObject()) {
+                keys.put(node, keysInOrder(node));
+            } else if (node.isArray()) {
+                arrays.put(node, planArray(node, hashes));
+            }
+            hashes.put(node, hash);
+        });
+
+        return new ExpectedPlan(expected, Collections.unmodifiableMap(keys), Collections.unmodifiableMap(arrays));
+    }
+
+    /**
+     * The keys of an expected object
+     * @param object the expected object
+     * @return the keys in order, or <code>null</code> if the object isn't from the planned tree
+     */
+    Set<String> keysOf(JsonNode object) {
+        return keys.get(object);
+    }
+
+    /**
+     * The structural hashes of the elements of an expected array
+     * @param array the expected array
+     * @return the hash of each element, or <code>null</code> if the array isn't from the planned tree
+     */
+    long[] elementHashes(JsonNode array) {
+        ArrayPlan plan = arrays.get(array);
+        return plan == null ? null : plan.hashes;
+    }
+
+    /**
+     * The signatures of the elements of an expected array
+     * @param array the expected array
+     * @param level how much of each element the signatures cover
+     * @return the signature of each element, or <code>null</code> if the array isn't from the planned tree
+     */
+    long[] elementSignatures(JsonNode array, int level) {
+        ArrayPlan plan = arrays.get(array);
+        return plan == null ? null : plan.signatures[level];
+    }
+
+    /**
+     * Describe the expected tree
+     * @return the expected tree as pretty printed json
+     */
+    String describe() {
+        String known = description;
+        if (known == null) {
+            known = expected.toPrettyString();
+            description = known;
+        }
+        return known;
+    }
+
+    private static Set<String> keysInOrder(JsonNode object) {
+        Set<String> keySet = new LinkedHashSet<>();
+        Iterator<String> names = object.fieldNames();
+        names.forEachRemaining(keySet::add);
+        return Collections.unmodifiableSet(keySet);
+    }
+
+    private static ArrayPlan planArray(JsonNode array, Map<JsonNode, Long> hashes) {
+        long[] elementHashes = new long[array.size()];
+        long[][] signatures = new long[ElementSignatures.SHAPE + 1][array.size()];
+        for (int i = 0; i < array.size(); i++) {
+            JsonNode element = array.get(i);
+            elementHashes[i] = hashes.get(element);
+            for (int level = ElementSignatures.NO_FILTER; level <= ElementSignatures.SHAPE; level++) {
+                signatures[level][i] = ElementSignatures.signature(element, level);
+            }
+        }
+        return new ArrayPlan(elementHashes, signatures);
+    }
+}
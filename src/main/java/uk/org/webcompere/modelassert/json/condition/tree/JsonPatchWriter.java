@@ -0,0 +1,248 @@
+package uk.org.webcompere.modelassert.json.condition.tree;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns the differences found by a comparison into the operations of a JSON Patch, as in RFC 6902, which
+ * would turn the actual into the expected. Each operation is written as soon as its difference is found, so
+ * a large patch is never held in memory. The exception is where elements of an array are removed, inserted or
+ * the whole array is replaced - those operations would change the indices of its elements, so they're held
+ * until the comparison has finished with the elements, and then written after any operations within them.
+ * <br>
+ * Differences which a patch can't fix are left out - failed conditions, as there's no value which is known to
+ * meet them, and the order of keys, as JSON Patch treats objects as unordered.
+ */
+class JsonPatchWriter extends DifferenceCollector {
+    private TreeComparisonCondition comparison;
+    private PatchSink sink;
+    private Deque<PendingOperations> pending = new ArrayDeque<>();
+    private int differenceCount;
+    private IOException failure;
+
+    /**
+     * Receives each operation of the patch, in order
+     */
+    @FunctionalInterface
+    interface PatchSink {
+        /**
+         * Write the operation
+         * @param operation the operation
+         * @throws IOException on error writing it
+         */
+        void write(ObjectNode operation) throws IOException;
+    }
+
+    /**
+     * Operations on an array which must wait until its elements have been compared
+     */
+    private static class PendingOperations {
+        private Location array;
+        private List<ObjectNode> removals = new ArrayList<>();
+        private List<ObjectNode> others = new ArrayList<>();
+        private boolean replaced;
+
+        PendingOperations(Location array) {
+            this.array = array;
+        }
+    }
+
+    /**
+     * Construct the writer
+     * @param comparison the comparison, which has the rules
+     * @param sink receives the operations
+     */
+    JsonPatchWriter(TreeComparisonCondition comparison, PatchSink sink) {
+        super(Integer.MAX_VALUE);
+        this.comparison = comparison;
+        this.sink = sink;
+    }
+
+    @Override
+    void add(Difference difference) {
+        if (failure != null) {
+            return;
+        }
+        differenceCount++;
+        try {
+            writePendingOutside(difference.getPath());
+            writeOperations(difference);
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+
+    @Override
+    void add(int position, Difference difference) {
+        // operations are written in the order they're found
+        add(difference);
+    }
+
+    /**
+     * Stop comparing once the patch can't be written
+     * @return <code>true</code> if writing failed
+     */
+    @Override
+    boolean isFull() {
+        return failure != null;
+    }
+
+    @Override
+    boolean isEmpty() {
+        return differenceCount == 0;
+    }
+
+    @Override
+    int size() {
+        return differenceCount;
+    }
+
+    /**
+     * Write the operations which were held back, once the comparison is over
+     * @throws IOException on error writing them, or any earlier operation
+     */
+    void finish() throws IOException {
+        if (failure == null) {
+            while (!pending.isEmpty()) {
+                writeAll(pending.pop());
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void writeOperations(Difference difference) throws IOException {
+        Location path = difference.getPath();
+        switch (difference.getKind()) {
+          case DIFFERENT_TYPES:
+          case DIFFERENT_VALUE:
+              if (difference.getExpected() instanceof JsonNode) {
+                  sink.write(operation("replace", path, (JsonNode) difference.getExpected()));
+              }
+              break;
+          case UNEXPECTED_KEYS:
+              for (Object key : (List<?>) difference.getActual()) {
+                  sink.write(operation("remove", path.child(key.toString()), null));
+              }
+              break;
+          case MISSING_KEYS:
+              if (difference.getExpectedNode() != null) {
+                  for (Object key : (List<?>) difference.getExpected()) {
+                      sink.write(operation("add", path.child(key.toString()),
+                          difference.getExpectedNode().get(key.toString())));
+                  }
+              }
+              break;
+          case ARRAY_SIZE:
+              writeArraySize(difference);
+              break;
+          case UNMATCHED_ELEMENTS:
+          case MISSING_ELEMENTS:
+          case UNEXPECTED_ELEMENTS:
+              replaceLater(path, difference.getExpectedNode());
+              break;
+          case REMOVED_ELEMENTS:
+              for (Map.Entry<?, ?> removed : ((Map<?, ?>) difference.getExpected()).entrySet()) {
+                  pendingAt(path).others.add(operation("add", path.child(removed.getKey().toString()),
+                      (JsonNode) removed.getValue()));
+              }
+              break;
+          case INSERTED_ELEMENTS:
+              // removing from the end first leaves the indices of the rest as they were
+              List<Object> insertedIndices = new ArrayList<>(((Map<?, ?>) difference.getActual()).keySet());
+              for (int i = insertedIndices.size() - 1; i >= 0; i--) {
+                  pendingAt(path).removals.add(operation("remove", path.child(insertedIndices.get(i).toString()),
+                      null));
+              }
+              break;
+          default:
+              break;
+        }
+    }
+
+    private void writeArraySize(Difference difference) throws IOException {
+        Location path = difference.getPath();
+        JsonNode expectedArray = difference.getExpectedNode();
+        if (expectedArray == null) {
+            return;
+        }
+        if (comparison.findRule(path, TreeRule.IGNORE_ARRAY_ORDER).isPresent()) {
+            replaceLater(path, expectedArray);
+            return;
+        }
+
+        // compared index by index, so the elements beyond the end of the shorter array are the difference, and
+        // removing or adding them doesn't move the others
+        int actualSize = (Integer) difference.getActual();
+        for (int i = actualSize - 1; i >= expectedArray.size(); i--) {
+            sink.write(operation("remove", path.element(i), null));
+        }
+        for (int i = actualSize; i < expectedArray.size(); i++) {
+            sink.write(operation("add", path.element(i), expectedArray.get(i)));
+        }
+    }
+
+    private void replaceLater(Location path, JsonNode expectedNode) {
+        if (expectedNode == null) {
+            return;
+        }
+        PendingOperations operations = pendingAt(path);
+        if (!operations.replaced) {
+            operations.replaced = true;
+            operations.removals.clear();
+            operations.others.clear();
+            operations.others.add(operation("replace", path, expectedNode));
+        }
+    }
+
+    private PendingOperations pendingAt(Location path) {
+        if (pending.isEmpty() || !pending.peek().array.equals(path)) {
+            pending.push(new PendingOperations(path));
+        }
+        return pending.peek();
+    }
+
+    /**
+     * The comparison walks the tree depth first, so once a difference is found outside an array, the
+     * elements of the array are finished with
+     * @param path the path of the latest difference
+     * @throws IOException on error writing
+     */
+    private void writePendingOutside(Location path) throws IOException {
+        while (!pending.isEmpty() && !isWithin(path, pending.peek().array)) {
+            writeAll(pending.pop());
+        }
+    }
+
+    private void writeAll(PendingOperations operations) throws IOException {
+        for (ObjectNode removal : operations.removals) {
+            sink.write(removal);
+        }
+        for (ObjectNode other : operations.others) {
+            sink.write(other);
+        }
+    }
+
+    private static boolean isWithin(Location path, Location ancestor) {
+        return path.size() >= ancestor.size() && path.ancestor(ancestor.size()).equals(ancestor);
+    }
+
+    private static ObjectNode operation(String op, Location path, JsonNode value) {
+        ObjectNode operation = JsonNodeFactory.instance.objectNode()
+            .put("op", op)
+            .put("path", path.toJsonPointer());
+        if (value != null) {
+            operation.set("value", value);
+        }
+        return operation;
+    }
+}
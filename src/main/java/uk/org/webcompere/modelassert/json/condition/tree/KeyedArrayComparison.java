@@ -0,0 +1,82 @@
+package uk.org.webcompere.modelassert.json.condition.tree;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares two arrays whose elements are identified by key fields. The actual elements are indexed by key,
+ * each expected element is paired with an actual element with the same key, and only those pairs are
+ * compared. Where several elements share a key, they're paired in the order they appear.
+ */
+class KeyedArrayComparison {
+    private List<String> keyFields;
+    private boolean reportUnexpected;
+
+    /**
+     * Construct the comparison
+     * @param keyFields the fields which identify an element
+     * @param reportUnexpected whether actual elements which aren't in the expected are differences
+     */
+    KeyedArrayComparison(List<String> keyFields, boolean reportUnexpected) {
+        this.keyFields = keyFields;
+        this.reportUnexpected = reportUnexpected;
+    }
+
+    /**
+     * Compare the arrays
+     * @param actual the actual array
+     * @param expected the expected array
+     * @param pathToHere the location of the array
+     * @param walk the walk, which has the failures, and compares the paired elements
+     */
+    void compare(ArrayNode actual, ArrayNode expected, Location pathToHere, TreeWalk walk) {
+        DifferenceCollector failures = walk.getFailures();
+        Map<ElementKey, Deque<Integer>> actualByKey = new HashMap<>();
+        for (int i = 0; i < actual.size(); i++) {
+            actualByKey.computeIfAbsent(ElementKey.of(actual.get(i), keyFields), key -> new ArrayDeque<>()).add(i);
+        }
+
+        int[] actualOfExpected = new int[expected.size()];
+        boolean[] actualPaired = new boolean[actual.size()];
+        List<ElementKey> missing = new ArrayList<>();
+        for (int i = 0; i < expected.size(); i++) {
+            ElementKey key = ElementKey.of(expected.get(i), keyFields);
+            Deque<Integer> candidates = actualByKey.get(key);
+            if (candidates == null || candidates.isEmpty()) {
+                actualOfExpected[i] = -1;
+                missing.add(key);
+            } else {
+                actualOfExpected[i] = candidates.removeFirst();
+                actualPaired[actualOfExpected[i]] = true;
+            }
+        }
+
+        if (reportUnexpected) {
+            List<ElementKey> unexpected = new ArrayList<>();
+            for (int i = 0; i < actual.size(); i++) {
+                if (!actualPaired[i]) {
+                    unexpected.add(ElementKey.of(actual.get(i), keyFields));
+                }
+            }
+            if (!unexpected.isEmpty()) {
+                failures.add(Difference.unexpectedElements(pathToHere, unexpected, expected));
+            }
+        }
+        if (!missing.isEmpty()) {
+            failures.add(Difference.missingElements(pathToHere, missing, expected));
+        }
+
+        walk.compareEach(pathToHere, expected.size(), (i, next) -> {
+            int actualIndex = actualOfExpected[i];
+            if (actualIndex >= 0) {
+                next.compare(actual.get(actualIndex), expected.get(i), pathToHere.element(actualIndex));
+            }
+        });
+    }
+}
@@ -1,33 +1,38 @@
 package uk.org.webcompere.modelassert.json.condition.tree;
 
-import java.util.Collections;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
-
-import static java.util.stream.Collectors.joining;
+import java.util.Objects;
 
 /**
- * Describes the JSON pointer up to a position in the tree
+ * Describes the JSON pointer up to a position in the tree. Each location is linked to its parent,
+ * so adding a child is cheap, and the <code>/a/b/0</code> form is only rendered when asked for.
  */
 public class Location {
-    private List<String> path;
+    private final Location parent;
+    private final String name;
+    private final int size;
+    private final int hash;
+    private final boolean element;
+
+    // the states of the rules at this location, kept by the last rule set to look here
+    private RuleStates ruleStates;
 
     /**
      * An empty location
      */
     public Location() {
-        this.path = new LinkedList<>();
-    }
-
-    private Location(List<String> pathSoFar, String child) {
-        this.path = Stream.concat(pathSoFar.stream(), Stream.of(child))
-            .collect(Collectors.toCollection(LinkedList::new));
+        this.parent = null;
+        this.name = null;
+        this.size = 0;
+        this.hash = 1;
+        this.element = false;
     }
 
-    private Location(List<String> path) {
-        this.path = Collections.unmodifiableList(path);
+    private Location(Location parent, String name, boolean element) {
+        this.parent = parent;
+        this.name = name;
+        this.size = parent.size + 1;
+        this.hash = 31 * parent.hash + name.hashCode();
+        this.element = element;
     }
 
     /**
@@ -36,21 +41,144 @@ public class Location {
      * @return a new {@link Location} with the child attached
      */
     public Location child(String child) {
-        return new Location(path, child);
+        return new Location(this, child, false);
+    }
+
+    /**
+     * The location with an array element added. This is the same path as adding the index as a child, but
+     * knows the last part is an index, rather than a field name which happens to be a number
+     * @param index the index of the element
+     * @return a new {@link Location} with the element attached
+     */
+    public Location element(int index) {
+        return new Location(this, Integer.toString(index), true);
+    }
+
+    /**
+     * Is the last part of the path the index of an array element
+     * @return <code>true</code> if this location was reached with {@link #element(int)}
+     */
+    boolean isElement() {
+        return element;
+    }
+
+    /**
+     * The location this is a child of
+     * @return the parent or <code>null</code> if this is the root
+     */
+    public Location getParent() {
+        return parent;
+    }
+
+    /**
+     * Get the last part of the path - the name of the field or index at this location
+     * @return the last part of the path or <code>null</code> if this is the root
+     */
+    public String last() {
+        return name;
+    }
+
+    /**
+     * How many parts are there in the path
+     * @return the number of parts - zero for the root
+     */
+    public int size() {
+        return size;
     }
 
     /**
-     * Slice the front off the location, and produce the rest of the path
+     * Find the location leading to this one with the given number of parts
+     * @param ancestorSize the size of the ancestor - must be no larger than this
+     * @return the ancestor, which will be <code>this</code> if the size is the same
+     */
+    public Location ancestor(int ancestorSize) {
+        Location current = this;
+        while (current.size > ancestorSize) {
+            current = current.parent;
+        }
+        return current;
+    }
+
+    /**
+     * Slice the front off the location, and produce the rest of the path. This copies the path,
+     * so matching should prefer to walk from the end via {@link #getParent()}
      * @return the remainder of the location
      */
     public Location peelOffFirst() {
-        return new Location(path.subList(1, path.size()));
+        String[] parts = toParts();
+        Location remainder = new Location();
+        for (int i = 1; i < parts.length; i++) {
+            remainder = remainder.child(parts[i]);
+        }
+        return remainder;
     }
 
-
     @Override
     public String toString() {
-        return path.stream().collect(joining("/", "/", ""));
+        return "/" + String.join("/", toParts());
+    }
+
+    /**
+     * Express the location as a JSON Pointer, as in RFC 6901, with <code>~</code> and <code>/</code> in
+     * field names escaped
+     * @return the pointer, which is empty for the root
+     */
+    public String toJsonPointer() {
+        StringBuilder pointer = new StringBuilder();
+        for (String part : toParts()) {
+            pointer.append('/').append(part.replace("~", "~0").replace("/", "~1"));
+        }
+        return pointer.toString();
+    }
+
+    /**
+     * Get the parts of the path, from the root
+     * @return the field names or indices along the path
+     */
+    String[] toParts() {
+        String[] parts = new String[size];
+        Location current = this;
+        for (int i = size - 1; i >= 0; i--) {
+            parts[i] = current.name;
+            current = current.parent;
+        }
+        return parts;
+    }
+
+    RuleStates getRuleStates() {
+        return ruleStates;
+    }
+
+    void rememberRuleStates(RuleStates ruleStates) {
+        this.ruleStates = ruleStates;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof Location)) {
+            return false;
+        }
+        Location current = this;
+        Location otherCurrent = (Location) other;
+        if (current.size != otherCurrent.size || current.hash != otherCurrent.hash) {
+            return false;
+        }
+        while (current != otherCurrent) {
+            if (!Objects.equals(current.name, otherCurrent.name)) {
+                return false;
+            }
+            current = current.parent;
+            otherCurrent = otherCurrent.parent;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
     }
 
     /**
@@ -58,7 +186,7 @@ public class Location {
      * @return true if there's no path in here
      */
     public boolean isEmpty() {
-        return path.isEmpty();
+        return size == 0;
     }
 
     /**
@@ -66,6 +194,6 @@ public class Location {
      * @return the first part of the path or <code>null</code> if there isn't any
      */
     public String first() {
-        return !path.isEmpty() ? path.get(0) : null;
+        return size > 0 ? ancestor(1).name : null;
     }
 }
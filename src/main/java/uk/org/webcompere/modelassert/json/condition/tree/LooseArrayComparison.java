@@ -0,0 +1,128 @@
+package uk.org.webcompere.modelassert.json.condition.tree;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import uk.org.webcompere.modelassert.json.Result;
+import uk.org.webcompere.modelassert.json.condition.array.CandidateFilter;
+import uk.org.webcompere.modelassert.json.condition.array.LooseComparison;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Compares arrays whose elements may be in any order on the walk. Each pair of elements which might match is
+ * tried by a {@link TreeWalk.Trial} on the walk's own stack, one pair at a time, rather than by a comparison
+ * of its own, so arrays in any order nested within each other don't recurse. The pairs are tried in the same
+ * order as a {@link StructuralHashJoin} and then a {@link LooseComparison} would try them, and the pairing,
+ * with its failure, is the same.
+ */
+class LooseArrayComparison implements TreeWalk.Children {
+    private ArrayNode actual;
+    private ArrayNode expected;
+    private Location pathToHere;
+    private LooseComparison looseComparison;
+    private CandidateFilter candidateFilter;
+
+    // pairs elements with the same hash first, when it can, and is finished with once it has
+    private StructuralHashJoin join;
+
+    // the elements left for the loose comparison, and the candidates found so far for each expected element
+    private int[] expectedIndices;
+    private int[] actualIndices;
+    private int[][] candidates;
+    private int[] rowCandidates;
+    private int rowCount;
+    private int row;
+    private int column;
+
+    private TreeWalk.Trial trial;
+
+    /**
+     * Construct the comparison
+     * @param actual the actual array
+     * @param expected the expected array
+     * @param pathToHere the location of the arrays
+     * @param looseComparison the loose comparison of the expected elements, which describes any failure
+     * @param candidateFilter rules out pairs of elements before they're tried
+     * @param join the join to pair elements by their hashes first, or <code>null</code> if they can't be
+     */
+    LooseArrayComparison(ArrayNode actual, ArrayNode expected, Location pathToHere, LooseComparison looseComparison,
+                         CandidateFilter candidateFilter, StructuralHashJoin join) {
+        this.actual = actual;
+        this.expected = expected;
+        this.pathToHere = pathToHere;
+        this.looseComparison = looseComparison;
+        this.candidateFilter = candidateFilter;
+        this.join = join;
+        if (join == null) {
+            startCandidates(IntStream.range(0, expected.size()).toArray(),
+                IntStream.range(0, actual.size()).toArray());
+        }
+    }
+
+    @Override
+    public boolean compareNext(TreeWalk walk) {
+        if (join != null) {
+            if (trial != null) {
+                join.confirm(trial.isPassed());
+            }
+            if (join.nextPair()) {
+                tryPair(walk, join.getExpectedIndex(), join.getActualIndex());
+                return true;
+            }
+            if (join.allExpectedMatched()) {
+                return false;
+            }
+            startCandidates(join.getUnmatchedExpected(), join.getUnmatchedActual());
+            join = null;
+        } else if (trial != null) {
+            if (trial.isPassed()) {
+                rowCandidates[rowCount++] = column;
+            }
+            column++;
+        }
+
+        if (findNextCandidate()) {
+            tryPair(walk, expectedIndices[row], actualIndices[column]);
+            return true;
+        }
+
+        Result result = looseComparison.resultOf(expectedIndices, candidates, actualIndices.length);
+        if (!result.isPassed()) {
+            walk.getFailures().add(Difference.unmatchedElements(pathToHere, result, expected));
+        }
+        return false;
+    }
+
+    private void startCandidates(int[] unmatchedExpected, int[] unmatchedActual) {
+        expectedIndices = unmatchedExpected;
+        actualIndices = unmatchedActual;
+        candidates = new int[unmatchedExpected.length][];
+        rowCandidates = new int[unmatchedActual.length];
+        trial = null;
+    }
+
+    /**
+     * Move on to the next pair which the filter allows, finishing the candidates of each expected element as
+     * all of its pairs have been tried
+     * @return <code>false</code> if every pair has been tried
+     */
+    private boolean findNextCandidate() {
+        while (row < expectedIndices.length) {
+            while (column < actualIndices.length) {
+                if (candidateFilter.mayMatch(expectedIndices[row], actualIndices[column])) {
+                    return true;
+                }
+                column++;
+            }
+            candidates[row++] = Arrays.copyOf(rowCandidates, rowCount);
+            rowCount = 0;
+            column = 0;
+        }
+        return false;
+    }
+
+    private void tryPair(TreeWalk walk, int expectedIndex, int actualIndex) {
+        // the element is tried at the location of the expected element, as its condition would be
+        trial = walk.trial(actual.get(actualIndex), expected.get(expectedIndex), pathToHere.element(expectedIndex));
+    }
+}
@@ -0,0 +1,113 @@
+package uk.org.webcompere.modelassert.json.condition.tree;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares the children of wide nodes - objects with many keys and arrays with many elements - on a
+ * {@link ForkJoinPool}. The children are split into ranges, and each range is compared by its own
+ * {@link TreeWalk}, with its own failures. The failures are then added in the order of the ranges, so they come
+ * out in the same order as a single threaded comparison would find them.
+ * <br>
+ * When the failures have a limit, a range which reaches it marks its index as the cutoff, and the ranges after
+ * the cutoff stop. The ranges before it keep going, as they may find failures which come first. So the failures
+ * kept are the same as they would be without the parallelism.
+ */
+final class ParallelComparison {
+    /**
+     * The fewest children for a node's children to be compared in parallel, unless another is given
+     */
+    static final int DEFAULT_THRESHOLD = 32;
+
+    /**
+     * How many ranges to split the children into for each thread of the pool, so that threads which finish
+     * early can take more work
+     */
+    private static final int RANGES_PER_THREAD = 4;
+
+    private final ForkJoinPool pool;
+    private final int threshold;
+
+    /**
+     * Construct the parallel comparison
+     * @param pool the pool to compare on
+     * @param threshold the fewest children of a node for them to be compared in parallel
+     */
+    ParallelComparison(ForkJoinPool pool, int threshold) {
+        this.pool = pool;
+        this.threshold = threshold;
+    }
+
+    /**
+     * The pool, on which the elements of wide arrays in any order are also tested against each other
+     * @return the pool
+     */
+    ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Should the children of a node be compared in parallel
+     * @param count how many children there are
+     * @return <code>true</code> if there are enough to be worth it
+     */
+    boolean shouldFork(int count) {
+        return count >= threshold;
+    }
+
+    /**
+     * Compare the children in parallel, adding their failures in order once they're all done
+     * @param comparison the comparison
+     * @param parent the location of the node whose children these are
+     * @param count how many children there are
+     * @param child compares the child at each position
+     * @param failures the failures to add to
+     */
+    void compare(TreeComparisonCondition comparison, Location parent, int count, TreeWalk.IndexedChild child,
+                 DifferenceCollector failures) {
+        int rangeSize = Math.max(1, count / (pool.getParallelism() * RANGES_PER_THREAD));
+        AtomicInteger cutoff = new AtomicInteger(Integer.MAX_VALUE);
+        List<ForkJoinTask<DifferenceCollector>> ranges = new ArrayList<>();
+        for (int from = 0; from < count; from += rangeSize) {
+            int rangeFrom = from;
+            int rangeTo = Math.min(count, from + rangeSize);
+            DifferenceCollector rangeFailures = failures.forRemainingCapacity();
+            ranges.add(ForkJoinTask.adapt(() ->
+                compareRange(comparison, parent, rangeFrom, rangeTo, child, rangeFailures, cutoff)));
+        }
+
+        // a comparison already on the pool forks its ranges from its own thread
+        ForkJoinTask<?> all = ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(ranges));
+        if (ForkJoinTask.getPool() == pool) {
+            all.invoke();
+        } else {
+            pool.invoke(all);
+        }
+
+        for (ForkJoinTask<DifferenceCollector> range : ranges) {
+            range.join().addAllTo(failures);
+        }
+    }
+
+    /**
+     * Compare a range of the children on this thread, with a walk of their own
+     * @return the failures found in the range
+     */
+    private static DifferenceCollector compareRange(TreeComparisonCondition comparison, Location parent,
+                                                    int from, int to, TreeWalk.IndexedChild child,
+                                                    DifferenceCollector failures, AtomicInteger cutoff) {
+        TreeWalk walk = new TreeWalk(comparison, failures, parent);
+        for (int i = from; i < to && i <= cutoff.get(); i++) {
+            child.compare(i, walk);
+            walk.run();
+            if (failures.isFull()) {
+                cutoff.accumulateAndGet(i, Math::min);
+                break;
+            }
+        }
+        return failures;
+    }
+}
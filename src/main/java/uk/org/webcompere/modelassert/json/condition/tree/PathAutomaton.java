@@ -0,0 +1,237 @@
+package uk.org.webcompere.modelassert.json.condition.tree;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * A {@link PathMatch} compiled into a non-deterministic automaton over the parts of a location. State
+ * <code>i</code> means the first <code>i</code> matchers have been satisfied, and the set of states is held
+ * as the bits of a <code>long</code>, so all the ways that each <code>ANY_SUBTREE</code> might absorb the
+ * location are tried at once. Matching is linear in the length of the location, and only
+ * regular expressions allocate anything.
+ */
+class PathAutomaton {
+    /**
+     * The most matchers which fit the states in a <code>long</code>, with one more state for the start
+     */
+    static final int MAX_MATCHERS = Long.SIZE - 1;
+
+    private static final byte LITERAL = 0;
+    private static final byte REGEX = 1;
+    private static final byte ANY = 2;
+    private static final byte ANY_SUBTREE = 3;
+
+    private final int matcherCount;
+    private final byte[] kinds;
+    private final String[] literals;
+    private final Pattern[] patterns;
+
+    // bit i + 1 is set when matcher i is ANY_SUBTREE, so state i + 1 can be reached without a part
+    private final long subtreeStates;
+
+    // bit i is set when matcher i could tell one array index from another
+    private final long indexSensitiveStates;
+
+    private PathAutomaton(byte[] kinds, String[] literals, Pattern[] patterns, long subtreeStates,
+                          long indexSensitiveStates) {
+        this.matcherCount = kinds.length;
+        this.kinds = kinds;
+        this.literals = literals;
+        this.patterns = patterns;
+        this.subtreeStates = subtreeStates;
+        this.indexSensitiveStates = indexSensitiveStates;
+    }
+
+    /**
+     * Compile the matchers
+     * @param matchers the matchers of a path
+     * @return the automaton, or <code>null</code> if there are too many matchers or one is not recognised
+     */
+    static PathAutomaton compile(List<PathMatcher> matchers) {
+        if (matchers.size() > MAX_MATCHERS) {
+            return null;
+        }
+        byte[] kinds = new byte[matchers.size()];
+        String[] literals = new String[matchers.size()];
+        Pattern[] patterns = new Pattern[matchers.size()];
+        long subtreeStates = 0;
+        long indexSensitiveStates = 0;
+        for (int i = 0; i < matchers.size(); i++) {
+            PathMatcher matcher = matchers.get(i);
+            if (matcher instanceof StringPathMatcher) {
+                kinds[i] = LITERAL;
+                literals[i] = ((StringPathMatcher) matcher).getValue();
+                if (isIndex(literals[i])) {
+                    indexSensitiveStates |= 1L << i;
+                }
+            } else if (matcher instanceof RegexPathMatcher) {
+                kinds[i] = REGEX;
+                patterns[i] = ((RegexPathMatcher) matcher).getPattern();
+                indexSensitiveStates |= 1L << i;
+            } else if (matcher instanceof WildCardPathMatcher) {
+                boolean anySubtree = ((WildCardPathMatcher) matcher).isAnySubtree();
+                kinds[i] = anySubtree ? ANY_SUBTREE : ANY;
+                if (anySubtree) {
+                    subtreeStates |= 1L << (i + 1);
+                }
+            } else {
+                return null;
+            }
+        }
+        return new PathAutomaton(kinds, literals, patterns, subtreeStates, indexSensitiveStates);
+    }
+
+    /**
+     * Does the whole location match. This runs the automaton backwards, from the accepting state, along the
+     * parent links of the location, so the location is not copied
+     * @param location the location
+     * @return <code>true</code> if the start state is reached at the root
+     */
+    boolean matches(Location location) {
+        long states = closeBackwards(1L << matcherCount);
+        Location current = location;
+        while (!current.isEmpty() && states != 0) {
+            String part = current.last();
+            long next = 0;
+            for (long remaining = states; remaining != 0; remaining &= remaining - 1) {
+                int state = Long.numberOfTrailingZeros(remaining);
+                if (state == 0) {
+                    continue;
+                }
+                int matcher = state - 1;
+                if (kinds[matcher] == ANY_SUBTREE) {
+                    next |= 1L << state;
+                } else if (accepts(matcher, part)) {
+                    next |= 1L << matcher;
+                }
+            }
+            states = closeBackwards(next);
+            current = current.getParent();
+        }
+        return (states & 1L) != 0;
+    }
+
+    /**
+     * Could a location which extends this one match - i.e. after consuming the location from the root, is
+     * there a state left which has matchers still to satisfy
+     * @param location the location
+     * @return <code>true</code> if there may be a match below
+     */
+    boolean couldMatchBelow(Location location) {
+        long states = startStates();
+        for (String part : location.toParts()) {
+            states = step(states, part);
+            if (states == 0) {
+                return false;
+            }
+        }
+        return hasMoreToMatch(states);
+    }
+
+    /**
+     * The states at the root, before any part of a location has been consumed
+     * @return the start states
+     */
+    long startStates() {
+        return closeForwards(1L);
+    }
+
+    /**
+     * Consume the next part of a location
+     * @param states the states at the parent location
+     * @param part the name of the field or index of the child
+     * @return the states at the child, which are <code>0</code> if nothing below can match
+     */
+    long step(long states, String part) {
+        long next = 0;
+        for (long remaining = states; remaining != 0; remaining &= remaining - 1) {
+            int state = Long.numberOfTrailingZeros(remaining);
+            if (state == matcherCount) {
+                continue;
+            }
+            if (kinds[state] == ANY_SUBTREE) {
+                next |= 1L << state;
+            } else if (accepts(state, part)) {
+                next |= 1L << (state + 1);
+            }
+        }
+        return closeForwards(next);
+    }
+
+    /**
+     * Do the states include the end of the path
+     * @param states the states at a location
+     * @return <code>true</code> if the path matches the location
+     */
+    boolean isMatch(long states) {
+        return (states & (1L << matcherCount)) != 0;
+    }
+
+    /**
+     * Do the states include any with matchers still to satisfy
+     * @param states the states at a location
+     * @return <code>true</code> if the path may match below the location
+     */
+    boolean hasMoreToMatch(long states) {
+        return (states & ~(1L << matcherCount)) != 0;
+    }
+
+    /**
+     * Would stepping from these states give different results for different array indices
+     * @param states the states at a location
+     * @return <code>false</code> if every index leads to the same states, so one step can stand for them all
+     */
+    boolean dependsOnIndex(long states) {
+        return (states & indexSensitiveStates) != 0;
+    }
+
+    /**
+     * Is this part of a location an array index - or a field name which no matcher could tell from one
+     * @param part the part of the location
+     * @return <code>true</code> if it's all digits
+     */
+    static boolean isIndex(String part) {
+        if (part.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < part.length(); i++) {
+            char digit = part.charAt(i);
+            if (digit < '0' || digit > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean accepts(int matcher, String part) {
+        switch (kinds[matcher]) {
+          case LITERAL:
+              return literals[matcher].equals(part);
+          case REGEX:
+              return patterns[matcher].matcher(part).matches();
+          default:
+              return true;
+        }
+    }
+
+    private long closeForwards(long states) {
+        // an ANY_SUBTREE may match no parts at all, so passing over it costs nothing
+        long closed = states;
+        long added = (closed << 1) & subtreeStates;
+        while ((added & ~closed) != 0) {
+            closed |= added;
+            added = (closed << 1) & subtreeStates;
+        }
+        return closed;
+    }
+
+    private long closeBackwards(long states) {
+        long closed = states;
+        long added = (closed & subtreeStates) >>> 1;
+        while ((added & ~closed) != 0) {
+            closed |= added;
+            added = (closed & subtreeStates) >>> 1;
+        }
+        return closed;
+    }
+}
@@ -3,6 +3,8 @@ package uk.org.webcompere.modelassert.json.condition.tree;
 import uk.org.webcompere.modelassert.json.PathWildCard;
 
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.List;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
@@ -16,6 +18,7 @@ public class PathMatch {
     private static final String JSON_POINTER_DELIMITER = "/";
 
     private List<PathMatcher> matchers;
+    private PathAutomaton automaton;
 
     /**
      * Constructed with at least one value which may be {@link String}, {@link Pattern} or {@link PathWildCard}
@@ -26,12 +29,14 @@ public class PathMatch {
         this.matchers = Stream.concat(Stream.of(pathStart), Arrays.stream(pathRemainder))
             .map(PathMatcher::of)
             .collect(toList());
+        this.automaton = PathAutomaton.compile(matchers);
     }
 
     private PathMatch(String[] fixedPath) {
         this.matchers = Arrays.stream(fixedPath)
             .map(PathMatcher::of)
             .collect(toList());
+        this.automaton = PathAutomaton.compile(matchers);
     }
 
     /**
@@ -68,10 +73,67 @@ public class PathMatch {
      * @return <code>true</code> if the path matches
      */
     public boolean matches(Location location) {
-        if (matchers.isEmpty()) {
-            return location.isEmpty();
+        if (automaton != null) {
+            return automaton.matches(location);
         }
-        return matchers.get(0).matches(location, matchers.subList(1, matchers.size()));
+        return PathMatcher.matchesTheStart(location, matchers);
+    }
+
+    /**
+     * Could this path match somewhere below the location - i.e. at any location which extends it. This is
+     * conservative: it's <code>true</code> if the path could continue below the location, without checking
+     * whether the rest of the path could match any particular field names
+     * @param location the location to check below
+     * @return <code>true</code> if there may be a location below which matches
+     */
+    boolean couldMatchBelow(Location location) {
+        if (automaton != null) {
+            return automaton.couldMatchBelow(location);
+        }
+
+        // the positions in the matchers which could be reached by the location so far
+        BitSet positions = new BitSet(matchers.size() + 1);
+        positions.set(0);
+        skipEmptySubtrees(positions);
+
+        for (String part : location.toParts()) {
+            Location single = new Location().child(part);
+            BitSet next = new BitSet(matchers.size() + 1);
+            for (int position = positions.nextSetBit(0); position >= 0 && position < matchers.size();
+                 position = positions.nextSetBit(position + 1)) {
+                PathMatcher matcher = matchers.get(position);
+                if (isAnySubtree(matcher)) {
+                    next.set(position);
+                } else if (matcher.matches(single, Collections.emptyList())) {
+                    next.set(position + 1);
+                }
+            }
+            skipEmptySubtrees(next);
+            positions = next;
+        }
+
+        // any matcher still to be satisfied could be satisfied by a location below
+        return positions.nextSetBit(0) >= 0 && positions.nextSetBit(0) < matchers.size();
+    }
+
+    private void skipEmptySubtrees(BitSet positions) {
+        for (int position = 0; position < matchers.size(); position++) {
+            if (positions.get(position) && isAnySubtree(matchers.get(position))) {
+                positions.set(position + 1);
+            }
+        }
+    }
+
+    private static boolean isAnySubtree(PathMatcher matcher) {
+        return matcher instanceof WildCardPathMatcher && ((WildCardPathMatcher) matcher).isAnySubtree();
+    }
+
+    /**
+     * The compiled form of this path
+     * @return the automaton, or <code>null</code> if the path is too long to compile
+     */
+    PathAutomaton getAutomaton() {
+        return automaton;
     }
 
     @Override
@@ -15,6 +15,16 @@ public interface PathMatcher {
      */
     boolean matches(Location location, List<PathMatcher> remaining);
 
+    /**
+     * Does this path matcher accept the end of the location, with the preceding matchers accepting
+     * the start of it. This walks from the end of the location towards the root using its parent, so
+     * does not need to copy the location
+     * @param location the location
+     * @param preceding the {@link PathMatcher}s before this one
+     * @return <code>true</code> if there's a match
+     */
+    boolean matchesEnd(Location location, List<PathMatcher> preceding);
+
     /**
      * Factory method - convert an object into its path matcher
      * @param value the value to convert
@@ -53,4 +63,19 @@ public interface PathMatcher {
         return remaining.get(0)
             .matches(location, remaining.subList(1, remaining.size()));
     }
+
+    /**
+     * Work out whether the start of the location, up to and including its last part, meets the
+     * preceding matchers
+     * @param location the location up to this point
+     * @param preceding the matchers for the start of the path
+     * @return true if matches the start
+     */
+    static boolean matchesTheStart(Location location, List<PathMatcher> preceding) {
+        if (preceding.isEmpty()) {
+            return location.isEmpty();
+        }
+        return preceding.get(preceding.size() - 1)
+            .matchesEnd(location, preceding.subList(0, preceding.size() - 1));
+    }
 }
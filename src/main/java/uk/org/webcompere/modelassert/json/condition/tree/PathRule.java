@@ -2,6 +2,10 @@ package uk.org.webcompere.modelassert.json.condition.tree;
 
 import uk.org.webcompere.modelassert.json.Condition;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Dictates a {@link TreeRule} that applies at a given path match and any operand for that rule
  */
@@ -9,6 +13,7 @@ public class PathRule {
     private PathMatch pathMatch;
     private TreeRule rule;
     private Condition ruleCondition;
+    private List<String> keyFields;
 
     /**
      * Constructed with a stateless tree rule for everywhere
@@ -40,6 +45,20 @@ public class PathRule {
         this.ruleCondition = ruleCondition;
     }
 
+    /**
+     * Construct a rule to match the elements of an array by key fields
+     * @param pathMatch the path of the array
+     * @param keyFields the fields within each element which identify it
+     */
+    public PathRule(PathMatch pathMatch, List<String> keyFields) {
+        if (keyFields.isEmpty()) {
+            throw new IllegalArgumentException("Must provide at least one key field");
+        }
+        this.pathMatch = pathMatch;
+        this.rule = TreeRule.ARRAY_MATCHED_BY_KEY;
+        this.keyFields = Collections.unmodifiableList(new ArrayList<>(keyFields));
+    }
+
     /**
      * Does this rule apply to this location
      * @param location the location to test
@@ -49,6 +68,14 @@ public class PathRule {
         return pathMatch.matches(location);
     }
 
+    /**
+     * Get the path the rule applies to
+     * @return the path match
+     */
+    public PathMatch getPathMatch() {
+        return pathMatch;
+    }
+
     /**
      * Get the rule type
      * @return the type of rule
@@ -65,8 +92,26 @@ public class PathRule {
         return ruleCondition;
     }
 
+    /**
+     * Get the key fields of a {@link TreeRule#ARRAY_MATCHED_BY_KEY} rule
+     * @return the key fields or <code>null</code> for other rules
+     */
+    public List<String> getKeyFields() {
+        return keyFields;
+    }
+
     @Override
     public String toString() {
-        return "at " + pathMatch + " " + rule + " " + (ruleCondition != null ? ruleCondition.describe() : "");
+        return "at " + pathMatch + " " + rule + " " + describeOperand();
+    }
+
+    private String describeOperand() {
+        if (ruleCondition != null) {
+            return ruleCondition.describe();
+        }
+        if (keyFields != null) {
+            return keyFields.toString();
+        }
+        return "";
     }
 }
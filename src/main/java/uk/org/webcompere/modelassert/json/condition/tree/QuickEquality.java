@@ -0,0 +1,162 @@
+package uk.org.webcompere.modelassert.json.condition.tree;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A first pass of the tree comparison, which only answers whether the trees are equal under the rules. It
+ * keeps no locations and builds no descriptions, and it stops at the first difference. Most comparisons
+ * pass, so this is all they need. When it finds a difference, the full comparison walks the trees again
+ * to describe every difference.
+ * <br>
+ * Comparisons with arrays in any order, arrays which contain elements, or arrays matched by key, need to pair
+ * elements up with locations, so they go straight to the full comparison.
+ */
+class QuickEquality {
+    private RuleSet rules;
+    private Deque<Object> stack = new ArrayDeque<>();
+
+    private QuickEquality(RuleSet rules) {
+        this.rules = rules;
+    }
+
+    /**
+     * Can the rules be checked by this pass
+     * @param rules the rules
+     * @return <code>true</code> if there are no rules for pairing array elements, and every rule can be found
+     *     without a location
+     */
+    static boolean canCheck(RuleSet rules) {
+        return !rules.hasRules(TreeRule.IGNORE_ARRAY_ORDER) &&
+            !rules.hasRules(TreeRule.ARRAY_CONTAINS) &&
+            !rules.hasRules(TreeRule.ARRAY_MATCHED_BY_KEY) &&
+            rules.isResolvableFromStates();
+    }
+
+    /**
+     * Are the trees strictly equal, with the keys of objects in the same order
+     * @param actual the actual tree
+     * @param expected the expected tree
+     * @return <code>true</code> if they are equal
+     */
+    static boolean isStrictlyEqual(JsonNode actual, JsonNode expected) {
+        return isEqual(actual, expected, RuleSet.empty());
+    }
+
+    /**
+     * Are the trees equal under the rules - i.e. would the full comparison find no differences
+     * @param actual the actual tree
+     * @param expected the expected tree
+     * @param rules the rules, which must be ones this {@link #canCheck}
+     * @return <code>true</code> if they are equal, <code>false</code> if there may be differences
+     */
+    static boolean isEqual(JsonNode actual, JsonNode expected, RuleSet rules) {
+        return new QuickEquality(rules).isEqual(actual, expected);
+    }
+
+    private boolean isEqual(JsonNode rootActual, JsonNode rootExpected) {
+        push(rootActual, rootExpected, rules.newRootStates());
+        while (!stack.isEmpty()) {
+            RuleStates states = (RuleStates) stack.pop();
+            JsonNode expected = (JsonNode) stack.pop();
+            JsonNode actual = (JsonNode) stack.pop();
+            if (!isNodeEqual(actual, expected, states)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isNodeEqual(JsonNode actual, JsonNode expected, RuleStates states) {
+        Optional<PathRule> condition = rules.findRule(states, TreeRule.CONDITION);
+        if (condition.isPresent()) {
+            return condition.get().getRuleCondition().test(actual).isPassed();
+        }
+
+        if (actual.getNodeType() != expected.getNodeType()) {
+            return false;
+        }
+
+        switch (actual.getNodeType()) {
+          case BOOLEAN:
+          case NULL:
+          case NUMBER:
+          case STRING:
+              return actual.equals(expected);
+          case ARRAY:
+              return pushElements(actual, expected, states);
+          case OBJECT:
+              return pushFields(actual, expected, states);
+          default:
+              return false;
+        }
+    }
+
+    private boolean pushElements(JsonNode actual, JsonNode expected, RuleStates states) {
+        if (actual.size() != expected.size()) {
+            return false;
+        }
+        for (int i = 0; i < actual.size(); i++) {
+            push(actual.get(i), expected.get(i), states.indexChild(i));
+        }
+        return true;
+    }
+
+    private boolean pushFields(JsonNode actual, JsonNode expected, RuleStates states) {
+        boolean contains = rules.findRule(states, TreeRule.OBJECT_CONTAINS).isPresent();
+        if (contains) {
+            // extra keys in the actual are allowed, and they can be in any order
+            if (actual.size() < expected.size()) {
+                return false;
+            }
+            return pushSharedFields(expected.fields(), actual, states, false);
+        }
+
+        if (actual.size() != expected.size()) {
+            return false;
+        }
+        boolean inOrder = rules.findRule(states, TreeRule.REQUIRE_KEY_ORDER).isPresent() ||
+            !rules.findRule(states, TreeRule.IGNORE_KEY_ORDER).isPresent();
+        if (inOrder && !TreeComparisonCondition.haveSameKeysInOrder(actual.fieldNames(), expected.fieldNames())) {
+            return false;
+        }
+        return pushSharedFields(actual.fields(), expected, states, true);
+    }
+
+    /**
+     * Push the fields of one object with the same field of the other
+     * @param fields the fields of one object
+     * @param other the other object
+     * @param states the states at the objects
+     * @param fieldsAreActual whether the fields are from the actual object
+     * @return <code>false</code> if the other object is missing one of the fields
+     */
+    private boolean pushSharedFields(Iterator<Map.Entry<String, JsonNode>> fields, JsonNode other,
+                                     RuleStates states, boolean fieldsAreActual) {
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            JsonNode otherValue = other.get(field.getKey());
+            if (otherValue == null) {
+                return false;
+            }
+            RuleStates childStates = states.child(field.getKey());
+            if (fieldsAreActual) {
+                push(field.getValue(), otherValue, childStates);
+            } else {
+                push(otherValue, field.getValue(), childStates);
+            }
+        }
+        return true;
+    }
+
+    private void push(JsonNode actual, JsonNode expected, RuleStates states) {
+        stack.push(actual);
+        stack.push(expected);
+        stack.push(states);
+    }
+}
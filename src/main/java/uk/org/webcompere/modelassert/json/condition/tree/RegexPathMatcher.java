@@ -4,6 +4,7 @@ import java.util.List;
 import java.util.regex.Pattern;
 
 import static uk.org.webcompere.modelassert.json.condition.tree.PathMatcher.matchesTheRest;
+import static uk.org.webcompere.modelassert.json.condition.tree.PathMatcher.matchesTheStart;
 
 /**
  * Matches a Json pointer sub path on the tree using a regular expression
@@ -26,6 +27,19 @@ public class RegexPathMatcher implements PathMatcher {
         return pattern.matcher(first).matches() && matchesTheRest(location.peelOffFirst(), remaining);
     }
 
+    @Override
+    public boolean matchesEnd(Location location, List<PathMatcher> preceding) {
+        String last = location.last();
+        if (last == null) {
+            return false;
+        }
+        return pattern.matcher(last).matches() && matchesTheStart(location.getParent(), preceding);
+    }
+
+    Pattern getPattern() {
+        return pattern;
+    }
+
     @Override
     public String toString() {
         return "{" + pattern.pattern() + "}";
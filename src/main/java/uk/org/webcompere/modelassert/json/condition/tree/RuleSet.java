@@ -0,0 +1,248 @@
+package uk.org.webcompere.modelassert.json.condition.tree;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static java.util.stream.Collectors.joining;
+
+/**
+ * An immutable set of {@link PathRule}s, indexed for lookup during tree comparison. The rules
+ * are grouped by {@link TreeRule}, and the progress of each rule's path along a location is kept as
+ * {@link RuleStates}, worked out from the parent location, so finding a rule doesn't match its path from the
+ * root again at every location. As with the rules in the <code>where</code> DSL, the last rule added has the
+ * highest priority.
+ * <br>
+ * As this cannot be changed after construction, it can be built once and shared between
+ * threads and tests.
+ */
+public final class RuleSet {
+    private static final RuleSet EMPTY = new RuleSet(Collections.emptyList());
+
+    private final List<PathRule> rules;
+    private final PathAutomaton[] automata;
+    private final Map<TreeRule, int[]> indicesByType = new EnumMap<>(TreeRule.class);
+
+    private RuleSet(List<PathRule> rules) {
+        this.rules = Collections.unmodifiableList(new ArrayList<>(rules));
+        this.automata = new PathAutomaton[this.rules.size()];
+        Map<TreeRule, List<Integer>> byType = new EnumMap<>(TreeRule.class);
+        for (int priority = this.rules.size() - 1; priority >= 0; priority--) {
+            PathRule rule = this.rules.get(priority);
+            automata[priority] = rule.getPathMatch().getAutomaton();
+            byType.computeIfAbsent(rule.getRule(), type -> new ArrayList<>()).add(priority);
+        }
+        byType.forEach((type, indices) ->
+            indicesByType.put(type, indices.stream().mapToInt(Integer::intValue).toArray()));
+    }
+
+    /**
+     * A rule set with no rules in it
+     * @return the empty rule set
+     */
+    public static RuleSet empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Build a rule set from rules
+     * @param rules the rules in the order they were provided - the last has the highest priority
+     * @return a new {@link RuleSet}
+     */
+    public static RuleSet of(List<PathRule> rules) {
+        if (rules.isEmpty()) {
+            return EMPTY;
+        }
+        return new RuleSet(rules);
+    }
+
+    /**
+     * Produce a rule set with further rules added after these ones, giving them priority
+     * @param moreRules the rules to add
+     * @return a new {@link RuleSet} or <code>this</code> if there's nothing to add
+     */
+    public RuleSet with(List<PathRule> moreRules) {
+        if (moreRules.isEmpty()) {
+            return this;
+        }
+        if (rules.isEmpty()) {
+            return new RuleSet(moreRules);
+        }
+        List<PathRule> combined = new ArrayList<>(rules);
+        combined.addAll(moreRules);
+        return new RuleSet(combined);
+    }
+
+    /**
+     * Produce a rule set with the rules of another added after these ones, giving them priority
+     * @param other the other rule set
+     * @return the combined {@link RuleSet}, which will be one of the originals if the other is empty
+     */
+    public RuleSet with(RuleSet other) {
+        if (rules.isEmpty()) {
+            return other;
+        }
+        return with(other.rules);
+    }
+
+    /**
+     * Find the highest priority rule of the given type which applies to the location
+     * @param location the location in the tree
+     * @param ruleToFind the type of rule
+     * @return the rule, if there is one
+     */
+    public Optional<PathRule> findRule(Location location, TreeRule ruleToFind) {
+        int[] indices = indicesByType.get(ruleToFind);
+        if (indices == null) {
+            return Optional.empty();
+        }
+        return statesAt(location).findRule(ruleToFind, indices, location);
+    }
+
+    /**
+     * Find the highest priority rule of the given type from the states of the rules, rather than a location.
+     * Only for rule sets which are {@link #isResolvableFromStates()}
+     * @param states the states at some position in the tree
+     * @param ruleToFind the type of rule
+     * @return the rule, if there is one
+     */
+    Optional<PathRule> findRule(RuleStates states, TreeRule ruleToFind) {
+        int[] indices = indicesByType.get(ruleToFind);
+        if (indices == null) {
+            return Optional.empty();
+        }
+        return states.findRule(ruleToFind, indices, null);
+    }
+
+    /**
+     * Is there any rule of the given type which could apply somewhere below the location
+     * @param location the location in the tree
+     * @param ruleToFind the type of rule
+     * @return <code>true</code> if a rule may apply to a descendant of the location
+     */
+    public boolean hasRuleBelow(Location location, TreeRule ruleToFind) {
+        int[] indices = indicesByType.get(ruleToFind);
+        if (indices == null) {
+            return false;
+        }
+        return statesAt(location).hasRuleBelow(ruleToFind, indices, location);
+    }
+
+    /**
+     * Is there no rule which could apply at the location or anywhere below it
+     * @param location the location in the tree
+     * @return <code>true</code> if the tree from here down is compared strictly
+     */
+    public boolean isRuleFree(Location location) {
+        return rules.isEmpty() || statesAt(location).isRuleFree();
+    }
+
+    /**
+     * Is there no rule which could apply at, or below, any element of the array at the location. Rules at the
+     * array itself, such as the order of its elements, may still apply
+     * @param location the location of the array
+     * @return <code>true</code> if the elements are compared strictly
+     */
+    boolean areElementsRuleFree(Location location) {
+        return rules.isEmpty() || statesAt(location).areElementsRuleFree();
+    }
+
+    /**
+     * Do the same rules apply to every element of the array at the location, whatever its index
+     * @param location the location of the array
+     * @return <code>true</code> if no rule picks out some elements by their index
+     */
+    boolean doElementsShareRules(Location location) {
+        return rules.isEmpty() || statesAt(location).doElementsShareRules();
+    }
+
+    /**
+     * Can every rule be found from its {@link RuleStates} alone, without the location
+     * @return <code>true</code> if no path was too long to compile
+     */
+    boolean isResolvableFromStates() {
+        for (PathAutomaton automaton : automata) {
+            if (automaton == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Are there rules of the given type
+     * @param ruleToFind the type of rule
+     * @return <code>true</code> if any rule has that type
+     */
+    boolean hasRules(TreeRule ruleToFind) {
+        return indicesByType.containsKey(ruleToFind);
+    }
+
+    /**
+     * Start a new tree of states, for walking a tree without locations
+     * @return the states at the root
+     */
+    RuleStates newRootStates() {
+        return RuleStates.root(this, rules, automata);
+    }
+
+    /**
+     * Find the states of the rules at the location, stepping down from the nearest ancestor which already
+     * has them. During a comparison that is the parent, so this is one step per rule. A root without them
+     * starts a new tree of states, so each comparison has its own
+     * @param location the location
+     * @return the states of the rules there
+     */
+    private RuleStates statesAt(Location location) {
+        if (hasStatesFor(location)) {
+            return location.getRuleStates();
+        }
+
+        Location ancestor = location;
+        while (!ancestor.isEmpty() && !hasStatesFor(ancestor)) {
+            ancestor = ancestor.getParent();
+        }
+        if (!hasStatesFor(ancestor)) {
+            ancestor.rememberRuleStates(newRootStates());
+        }
+        RuleStates states = ancestor.getRuleStates();
+
+        Location[] descendants = new Location[location.size() - ancestor.size()];
+        for (Location current = location; current != ancestor; current = current.getParent()) {
+            descendants[current.size() - ancestor.size() - 1] = current;
+        }
+        for (Location descendant : descendants) {
+            states = states.child(descendant.last());
+            descendant.rememberRuleStates(states);
+        }
+        return states;
+    }
+
+    private boolean hasStatesFor(Location location) {
+        return location.getRuleStates() != null && location.getRuleStates().isFor(this);
+    }
+
+    /**
+     * Are there any rules
+     * @return <code>true</code> if there are no rules in this set
+     */
+    public boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    /**
+     * Get the rules in the order they were added
+     * @return the rules
+     */
+    public List<PathRule> getRules() {
+        return rules;
+    }
+
+    @Override
+    public String toString() {
+        return rules.stream().map(PathRule::toString).collect(joining("\n"));
+    }
+}
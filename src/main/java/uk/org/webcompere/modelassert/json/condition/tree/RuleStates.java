@@ -0,0 +1,273 @@
+package uk.org.webcompere.modelassert.json.condition.tree;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The states of the path automata of every rule in a {@link RuleSet} at one location in the tree. The
+ * states at a child are worked out from the states at its parent with one step per rule, and are kept on the
+ * {@link Location}, so a comparison carries them down the tree as it walks it. Finding the rules for a
+ * location then costs the same however deep the location is.
+ * <br>
+ * Where no rule can tell one array index from another, every element of an array shares the same states,
+ * and so does everything below them with the same path shape - e.g. <code>/items/N/price</code> for any
+ * <code>N</code>. The rules found at shared states are remembered, so the elements of a large array only
+ * resolve their rules once. A new tree of states is started for each comparison, so this never outlives it.
+ */
+final class RuleStates {
+    private final RuleSet owner;
+    private final List<PathRule> rules;
+    private final PathAutomaton[] automata;
+    private final long[] states;
+    private final boolean matchesDirectly;
+    private final boolean shared;
+    private final boolean anyLive;
+    private final boolean allDead;
+
+    // remembered results, shared by the threads of a parallel comparison, so published through volatile fields
+    // and an atomic array, which threads only ever see fully built. Threads which race to work out the same
+    // result both use their own, which is harmless, as the results are immutable and equal
+    private volatile RuleStates indexChild;
+    private volatile Map<String, RuleStates> fieldChildren;
+    private volatile AtomicReferenceArray<Object> decisions;
+
+    private RuleStates(RuleSet owner, List<PathRule> rules, PathAutomaton[] automata, long[] states,
+                       boolean matchesDirectly, boolean shared) {
+        this.owner = owner;
+        this.rules = rules;
+        this.automata = automata;
+        this.states = states;
+        this.matchesDirectly = matchesDirectly;
+        this.shared = shared;
+        this.anyLive = anyLive(automata, states);
+        this.allDead = allDead(states);
+    }
+
+    /**
+     * The states at the root of the tree
+     * @param owner the rule set the states belong to
+     * @param rules the rules, in priority order
+     * @param automata the automaton of each rule, or <code>null</code> for paths too long to compile
+     * @return the start states of every rule
+     */
+    static RuleStates root(RuleSet owner, List<PathRule> rules, PathAutomaton[] automata) {
+        long[] states = new long[automata.length];
+        boolean matchesDirectly = false;
+        for (int i = 0; i < automata.length; i++) {
+            if (automata[i] == null) {
+                matchesDirectly = true;
+            } else {
+                states[i] = automata[i].startStates();
+            }
+        }
+        return new RuleStates(owner, rules, automata, states, matchesDirectly, false);
+    }
+
+    /**
+     * The states at a child of the location these are for
+     * @param part the field name or index of the child
+     * @return the states at the child, which will be <code>this</code> if no rule can match any more
+     */
+    RuleStates child(String part) {
+        if (allDead) {
+            return this;
+        }
+        if (PathAutomaton.isIndex(part) && !dependsOnIndex()) {
+            return sharedIndexChild(part);
+        }
+        if (!shared) {
+            return step(part, false);
+        }
+
+        Map<String, RuleStates> children = fieldChildren;
+        if (children == null) {
+            children = new ConcurrentHashMap<>();
+            fieldChildren = children;
+        }
+        return children.computeIfAbsent(part, name -> step(name, true));
+    }
+
+    /**
+     * The states at an array element of the location these are for. When no rule can tell the indices apart,
+     * this doesn't need the index as a string
+     * @param index the index of the element
+     * @return the states at the element
+     */
+    RuleStates indexChild(int index) {
+        if (allDead) {
+            return this;
+        }
+        if (!dependsOnIndex()) {
+            return sharedIndexChild("0");
+        }
+        return child(Integer.toString(index));
+    }
+
+    private RuleStates sharedIndexChild(String anyIndex) {
+        RuleStates child = indexChild;
+        if (child == null) {
+            child = step(anyIndex, true);
+            indexChild = child;
+        }
+        return child;
+    }
+
+    /**
+     * Can no rule match here, or anywhere below here
+     * @return <code>true</code> if the comparison below here is strict equality
+     */
+    boolean isRuleFree() {
+        return allDead && !matchesDirectly;
+    }
+
+    /**
+     * Can no rule match at, or below, any element of the array these are the states for
+     * @return <code>true</code> if every element of the array is compared strictly
+     */
+    boolean areElementsRuleFree() {
+        return doElementsShareRules() && indexChild(0).isRuleFree();
+    }
+
+    /**
+     * Do the same rules apply at, and below, every element of the array these are the states for, whatever
+     * its index
+     * @return <code>true</code> if no rule can tell the elements apart by their index
+     */
+    boolean doElementsShareRules() {
+        return !matchesDirectly && (allDead || !dependsOnIndex());
+    }
+
+    /**
+     * Were these states worked out by the given rule set
+     * @param ruleSet the rule set
+     * @return <code>true</code> if the states belong to it
+     */
+    boolean isFor(RuleSet ruleSet) {
+        return owner == ruleSet;
+    }
+
+    /**
+     * Find the highest priority rule which applies at the location
+     * @param ruleToFind the type of rule, for remembering the result
+     * @param indices the indices of the rules of that type, highest priority first
+     * @param location the location these are the states for
+     * @return the rule, if there is one
+     */
+    @SuppressWarnings("unchecked")
+    Optional<PathRule> findRule(TreeRule ruleToFind, int[] indices, Location location) {
+        int slot = 2 * ruleToFind.ordinal();
+        Object known = remembered(slot);
+        if (known != null) {
+            return (Optional<PathRule>) known;
+        }
+
+        Optional<PathRule> found = Optional.empty();
+        for (int index : indices) {
+            if (matches(index, location)) {
+                found = Optional.of(rules.get(index));
+                break;
+            }
+        }
+        remember(slot, found);
+        return found;
+    }
+
+    /**
+     * Could any of the rules apply below the location
+     * @param ruleToFind the type of rule, for remembering the result
+     * @param indices the indices of the rules of that type
+     * @param location the location these are the states for
+     * @return <code>true</code> if one of the rules could match a descendant of the location
+     */
+    boolean hasRuleBelow(TreeRule ruleToFind, int[] indices, Location location) {
+        int slot = 2 * ruleToFind.ordinal() + 1;
+        Object known = remembered(slot);
+        if (known != null) {
+            return (Boolean) known;
+        }
+
+        boolean found = false;
+        for (int index : indices) {
+            if (couldMatchBelow(index, location)) {
+                found = true;
+                break;
+            }
+        }
+        remember(slot, found);
+        return found;
+    }
+
+    private boolean matches(int index, Location location) {
+        if (automata[index] == null) {
+            return rules.get(index).matches(location);
+        }
+        return automata[index].isMatch(states[index]);
+    }
+
+    private boolean couldMatchBelow(int index, Location location) {
+        if (automata[index] == null) {
+            return rules.get(index).getPathMatch().couldMatchBelow(location);
+        }
+        return automata[index].hasMoreToMatch(states[index]);
+    }
+
+    private Object remembered(int slot) {
+        AtomicReferenceArray<Object> known = decisions;
+        return known == null ? null : known.get(slot);
+    }
+
+    private void remember(int slot, Object decision) {
+        // rules matched directly against the location can't be shared between locations
+        if (!shared || matchesDirectly) {
+            return;
+        }
+        AtomicReferenceArray<Object> known = decisions;
+        if (known == null) {
+            known = new AtomicReferenceArray<>(2 * TreeRule.values().length);
+            decisions = known;
+        }
+        known.set(slot, decision);
+    }
+
+    private RuleStates step(String part, boolean childShared) {
+        long[] childStates = new long[states.length];
+        if (anyLive) {
+            for (int i = 0; i < states.length; i++) {
+                if (states[i] != 0) {
+                    childStates[i] = automata[i].step(states[i], part);
+                }
+            }
+        }
+        return new RuleStates(owner, rules, automata, childStates, matchesDirectly, childShared);
+    }
+
+    private boolean dependsOnIndex() {
+        for (int i = 0; i < states.length; i++) {
+            if (states[i] != 0 && automata[i].dependsOnIndex(states[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean allDead(long[] states) {
+        for (long state : states) {
+            if (state != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean anyLive(PathAutomaton[] automata, long[] states) {
+        for (int i = 0; i < states.length; i++) {
+            if (states[i] != 0 && automata[i].hasMoreToMatch(states[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
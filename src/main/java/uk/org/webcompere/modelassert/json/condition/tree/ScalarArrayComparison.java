@@ -0,0 +1,251 @@
+package uk.org.webcompere.modelassert.json.condition.tree;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.BooleanNode;
+import com.fasterxml.jackson.databind.node.DoubleNode;
+import com.fasterxml.jackson.databind.node.IntNode;
+import com.fasterxml.jackson.databind.node.LongNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Compares arrays whose elements are all the same kind of scalar - whole numbers, floating point numbers,
+ * booleans or strings - where no rule applies to the elements. The elements are copied into primitive keys,
+ * which are equal exactly when the nodes are, so the arrays are compared without a {@link Location} or a
+ * comparison of trees for each element. In order, the keys are scanned side by side. In any order, the actual
+ * keys are sorted, and each expected key is looked for among them.
+ * <br>
+ * Whole numbers are only copied where the node type follows from the value, as it does for parsed json -
+ * an {@link IntNode} is never equal to a {@link LongNode}, even with the same value. Floating point numbers
+ * are copied as their bits, which are equal exactly when {@link DoubleNode#equals} would be.
+ */
+final class ScalarArrayComparison {
+
+    /**
+     * The kinds of scalar which can be copied into keys. Each kind has its own keys, so keys are
+     * only compared between arrays of the same kind
+     */
+    private enum Kind {
+        WHOLE_NUMBER,
+        FLOATING_POINT,
+        BOOLEAN,
+        TEXT
+    }
+
+    private final ArrayNode actual;
+    private final ArrayNode expected;
+
+    // one of the pairs of keys is used, depending on the kind of the elements
+    private final long[] actualKeys;
+    private final long[] expectedKeys;
+    private final String[] actualTexts;
+    private final String[] expectedTexts;
+
+    private ScalarArrayComparison(ArrayNode actual, ArrayNode expected, Kind kind) {
+        this.actual = actual;
+        this.expected = expected;
+        if (kind == Kind.TEXT) {
+            actualKeys = null;
+            expectedKeys = null;
+            actualTexts = textsOf(actual);
+            expectedTexts = textsOf(expected);
+        } else {
+            actualKeys = keysOf(actual, kind);
+            expectedKeys = keysOf(expected, kind);
+            actualTexts = null;
+            expectedTexts = null;
+        }
+    }
+
+    /**
+     * Copy the arrays into keys, if every element of both is the same kind of scalar
+     * @param actual the actual array
+     * @param expected the expected array
+     * @return the comparison, or empty if the arrays must be compared element by element, which they also are
+     *     if either is empty
+     */
+    static Optional<ScalarArrayComparison> of(ArrayNode actual, ArrayNode expected) {
+        if (actual.isEmpty() || expected.isEmpty()) {
+            return Optional.empty();
+        }
+        Kind kind = commonKind(actual, null);
+        if (kind == null) {
+            return Optional.empty();
+        }
+        kind = commonKind(expected, kind);
+        if (kind == null) {
+            return Optional.empty();
+        }
+        return Optional.of(new ScalarArrayComparison(actual, expected, kind));
+    }
+
+    /**
+     * Compare the elements at the same index, up to the length of the shorter array
+     * @param pathToHere the location of the arrays
+     * @param failures the failures to add a different value to for each index whose elements differ
+     */
+    void compareInOrder(Location pathToHere, DifferenceCollector failures) {
+        int size = Math.min(actual.size(), expected.size());
+        for (int i = 0; i < size && !failures.isFull(); i++) {
+            if (!isSameAt(i)) {
+                failures.add(Difference.differentValue(pathToHere.element(i), expected.get(i),
+                    actual.get(i)));
+            }
+        }
+    }
+
+    /**
+     * Find the expected elements with no equal in the actual, where each actual element can only be equal to
+     * one expected element. Equal expected elements are paired with the actual in the order of the expected
+     * @return the indices of the expected elements with no equal, in order
+     */
+    int[] unmatchedExpected() {
+        return actualTexts == null ? unmatchedKeys() : unmatchedTexts();
+    }
+
+    private boolean isSameAt(int index) {
+        if (actualTexts == null) {
+            return actualKeys[index] == expectedKeys[index];
+        }
+        return actualTexts[index].equals(expectedTexts[index]);
+    }
+
+    private int[] unmatchedKeys() {
+        long[] sorted = actualKeys.clone();
+        Arrays.sort(sorted);
+        // how many of the run of equal keys starting at each position have been paired, with a slot past the end
+        // for keys greater than any in the actual
+        int[] paired = new int[sorted.length + 1];
+        int[] unmatched = new int[expectedKeys.length];
+        int unmatchedCount = 0;
+        for (int i = 0; i < expectedKeys.length; i++) {
+            int first = firstIndexOf(sorted, expectedKeys[i]);
+            if (first + paired[first] < sorted.length && sorted[first + paired[first]] == expectedKeys[i]) {
+                paired[first]++;
+            } else {
+                unmatched[unmatchedCount++] = i;
+            }
+        }
+        return Arrays.copyOf(unmatched, unmatchedCount);
+    }
+
+    private int[] unmatchedTexts() {
+        String[] sorted = actualTexts.clone();
+        Arrays.sort(sorted);
+        int[] paired = new int[sorted.length + 1];
+        int[] unmatched = new int[expectedTexts.length];
+        int unmatchedCount = 0;
+        for (int i = 0; i < expectedTexts.length; i++) {
+            int first = firstIndexOf(sorted, expectedTexts[i]);
+            if (first + paired[first] < sorted.length && sorted[first + paired[first]].equals(expectedTexts[i])) {
+                paired[first]++;
+            } else {
+                unmatched[unmatchedCount++] = i;
+            }
+        }
+        return Arrays.copyOf(unmatched, unmatchedCount);
+    }
+
+    /**
+     * The first position in the sorted keys which is not less than the key
+     */
+    private static int firstIndexOf(long[] sorted, long key) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sorted[middle] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * The first position in the sorted texts which is not less than the text
+     */
+    private static int firstIndexOf(String[] sorted, String text) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sorted[middle].compareTo(text) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * The kind of every element of the array
+     * @param array the array
+     * @param kindSoFar the kind of the elements already seen, or <code>null</code> if there were none
+     * @return the kind, or <code>null</code> if the elements aren't all of one kind which can be copied
+     */
+    private static Kind commonKind(ArrayNode array, Kind kindSoFar) {
+        Kind common = kindSoFar;
+        for (JsonNode element : array) {
+            Kind kind = kindOf(element);
+            if (kind == null || (common != null && kind != common)) {
+                return null;
+            }
+            common = kind;
+        }
+        return common;
+    }
+
+    private static Kind kindOf(JsonNode element) {
+        if (element instanceof IntNode) {
+            return Kind.WHOLE_NUMBER;
+        }
+        if (element instanceof LongNode) {
+            // a long which would fit in an int may be unequal to an int node of the same value
+            return element.canConvertToInt() ? null : Kind.WHOLE_NUMBER;
+        }
+        if (element instanceof DoubleNode) {
+            return Kind.FLOATING_POINT;
+        }
+        if (element instanceof BooleanNode) {
+            return Kind.BOOLEAN;
+        }
+        if (element instanceof TextNode) {
+            return Kind.TEXT;
+        }
+        return null;
+    }
+
+    private static long[] keysOf(ArrayNode array, Kind kind) {
+        long[] keys = new long[array.size()];
+        for (int i = 0; i < keys.length; i++) {
+            JsonNode element = array.get(i);
+            switch (kind) {
+              case FLOATING_POINT:
+                  keys[i] = Double.doubleToLongBits(element.doubleValue());
+                  break;
+              case BOOLEAN:
+                  keys[i] = element.booleanValue() ? 1 : 0;
+                  break;
+              case WHOLE_NUMBER:
+              default:
+                  keys[i] = element.longValue();
+                  break;
+            }
+        }
+        return keys;
+    }
+
+    private static String[] textsOf(ArrayNode array) {
+        String[] texts = new String[array.size()];
+        for (int i = 0; i < texts.length; i++) {
+            texts[i] = array.get(i).textValue();
+        }
+        return texts;
+    }
+}
@@ -0,0 +1,440 @@
+package uk.org.webcompere.modelassert.json.condition.tree;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.ObjectCodec;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares two streamed arrays in any order which may be too large to load. The elements of each array are
+ * read one at a time, given a structural hash, and written with their index to one of a number of spill files,
+ * chosen by the hash. As equal elements have the same hash, they're always in the same partition, so the
+ * partitions can be compared one at a time.
+ * <br>
+ * Where either side of a partition is bigger than the memory budget, and has more than one hash in it, it's
+ * split again, on other bits of the hash. The budget is measured as the size of the spilled json. Neither side
+ * of a partition is loaded whole: the expected elements are streamed into groups of equal elements, keeping
+ * one element of each group and the indices of the rest, and then the actual elements are streamed past the
+ * groups, each paired with an index from the group it's equal to. So a partition of many copies of the same
+ * element only holds one of them. This is only possible where {@link StructuralHashJoin#canJoin} - equal
+ * elements must have equal hashes, and equality must be the same for every element.
+ * <br>
+ * Elements with the same hash are usually equal. Where they're not - e.g. the same keys in a different order -
+ * each element is compared with at most {@link #MAX_COMPARISONS} of the groups with its hash, and groups with
+ * no indices left to pair are skipped without comparing. Beyond that, an element may be reported as unpaired
+ * even though an equal element was among the many unequal ones with its hash.
+ * <br>
+ * Elements with no equal on the other side are only gathered by their indices. At the end, they're read back
+ * from the spill files and reported, one difference for each side, in index order. The unpaired elements count
+ * towards the limit of failures as though each were a difference of its own, so with a limit, the comparison
+ * stops once more elements are unpaired than there's room to report, and only that many are read back. The
+ * spill files are deleted when the comparison finishes.
+ */
+class SpilledArrayComparison {
+    private static final int PARTITION_BITS = 6;
+    private static final int PARTITIONS = 1 << PARTITION_BITS;
+    private static final int LEVELS = Long.SIZE / PARTITION_BITS;
+
+    /**
+     * The most groups of elements with the same hash an element is compared with
+     */
+    static final int MAX_COMPARISONS = 64;
+
+    private TreeComparisonCondition comparison;
+    private Path directory;
+    private long memoryBudget;
+    private DifferenceCollector failures;
+    private BitSet unpairedExpected = new BitSet();
+    private BitSet unpairedActual = new BitSet();
+    private int unpairedCount;
+
+    // how many unpaired elements can be reported within the limit of failures
+    private int room;
+
+    /**
+     * An element read back from a spill file
+     */
+    private static class SpilledElement {
+        private int index;
+        private long hash;
+        private JsonNode node;
+
+        SpilledElement(int index, long hash, JsonNode node) {
+            this.index = index;
+            this.hash = hash;
+            this.node = node;
+        }
+    }
+
+    /**
+     * Expected elements which are equal to each other, with one of them to compare with, and the indices of
+     * those not yet paired, in order
+     */
+    private static class EqualElements {
+        private JsonNode node;
+        private int[] indices = new int[1];
+        private int first;
+        private int end;
+
+        EqualElements(JsonNode node) {
+            this.node = node;
+        }
+
+        void add(int index) {
+            if (end == indices.length) {
+                indices = Arrays.copyOf(indices, indices.length * 2);
+            }
+            indices[end++] = index;
+        }
+
+        boolean hasUnpaired() {
+            return first < end;
+        }
+
+        void pairFirst() {
+            first++;
+        }
+
+        int addUnpairedTo(BitSet unpaired) {
+            for (int i = first; i < end; i++) {
+                unpaired.set(indices[i]);
+            }
+            return end - first;
+        }
+    }
+
+    /**
+     * The spill files of one side of the comparison, at one level of partitioning
+     */
+    private class Partitions {
+        private ObjectCodec codec;
+        private int level;
+        private Path[] files = new Path[PARTITIONS];
+        private JsonGenerator[] generators = new JsonGenerator[PARTITIONS];
+        private long[] firstHashes = new long[PARTITIONS];
+        private boolean[] mixedHashes = new boolean[PARTITIONS];
+        private int count;
+
+        Partitions(ObjectCodec codec, int level) {
+            this.codec = codec;
+            this.level = level;
+        }
+
+        void write(int index, long hash, JsonNode node) throws IOException {
+            int partition = partitionOf(hash, level);
+            if (generators[partition] == null) {
+                files[partition] = Files.createTempFile(directory, "modelassert-", ".spill");
+                generators[partition] = codec.getFactory().createGenerator(files[partition].toFile(),
+                    JsonEncoding.UTF8);
+                firstHashes[partition] = hash;
+            } else if (firstHashes[partition] != hash) {
+                mixedHashes[partition] = true;
+            }
+            JsonGenerator generator = generators[partition];
+            generator.writeStartArray();
+            generator.writeNumber(index);
+            generator.writeNumber(hash);
+            codec.writeTree(generator, node);
+            generator.writeEndArray();
+            count++;
+        }
+
+        void close() throws IOException {
+            for (JsonGenerator generator : generators) {
+                if (generator != null) {
+                    generator.close();
+                }
+            }
+        }
+
+        /**
+         * Is this side of the partition over the budget, and able to be split
+         */
+        boolean needsSplitting(int partition) throws IOException {
+            return files[partition] != null && mixedHashes[partition] && level + 1 < LEVELS &&
+                Files.size(files[partition]) > memoryBudget;
+        }
+
+        void delete() throws IOException {
+            close();
+            for (Path file : files) {
+                if (file != null) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Receives each element read back from a spill file
+     */
+    @FunctionalInterface
+    private interface SpilledElementConsumer {
+        /**
+         * Receive the element
+         * @param element the element
+         * @return <code>false</code> to stop reading the file
+         * @throws IOException on error writing the element elsewhere
+         */
+        boolean accept(SpilledElement element) throws IOException;
+    }
+
+    /**
+     * Construct the comparison
+     * @param comparison the tree comparison, which has the rules, and compares the elements
+     * @param directory where to write the spill files
+     * @param memoryBudget the most bytes of spilled json to load at once
+     * @param failures the failures to add to
+     */
+    SpilledArrayComparison(TreeComparisonCondition comparison, Path directory, long memoryBudget,
+                           DifferenceCollector failures) {
+        this.comparison = comparison;
+        this.directory = directory;
+        this.memoryBudget = memoryBudget;
+        this.failures = failures;
+    }
+
+    /**
+     * Compare the arrays
+     * @param actual parser on the start of the actual array, left on its end
+     * @param expected parser on the start of the expected array, left on its end
+     * @param pathToHere the location of the array
+     * @throws IOException on error reading the arrays, or writing or reading the spill files
+     */
+    void compare(JsonParser actual, JsonParser expected, Location pathToHere) throws IOException {
+        Partitions actualPartitions = new Partitions(actual.getCodec(), 0);
+        Partitions expectedPartitions = new Partitions(expected.getCodec(), 0);
+        try {
+            spill(actual, actualPartitions);
+            spill(expected, expectedPartitions);
+            if (actualPartitions.count != expectedPartitions.count) {
+                failures.add(Difference.arraySize(pathToHere, expectedPartitions.count, actualPartitions.count));
+            }
+            room = failures.remainingCapacity();
+            comparePartitions(actualPartitions, expectedPartitions, pathToHere);
+            report(actualPartitions, expectedPartitions, pathToHere);
+        } finally {
+            actualPartitions.delete();
+            expectedPartitions.delete();
+        }
+    }
+
+    /**
+     * Have more elements been left unpaired than can be reported, so there's no need to compare any further
+     */
+    private boolean isFull() {
+        return failures.isFull() || unpairedCount > room;
+    }
+
+    /**
+     * Read back as many of the unpaired elements as there's room for, lowest indices first, and report them
+     */
+    private void report(Partitions actual, Partitions expected, Location pathToHere) throws IOException {
+        Map<Integer, JsonNode> expectedElements = readElements(expected, first(unpairedExpected, room));
+        Map<Integer, JsonNode> actualElements = readElements(actual,
+            first(unpairedActual, room - expectedElements.size()));
+        if (expectedElements.size() + actualElements.size() < unpairedCount) {
+            failures.leftOut();
+        }
+
+        if (!expectedElements.isEmpty()) {
+            failures.add(Difference.unpairedExpectedElements(pathToHere, expectedElements));
+        }
+        if (!actualElements.isEmpty()) {
+            failures.add(Difference.unpairedActualElements(pathToHere, actualElements));
+        }
+    }
+
+    private static BitSet first(BitSet indices, int count) {
+        BitSet first = new BitSet();
+        int added = 0;
+        for (int i = indices.nextSetBit(0); i >= 0 && added < count; i = indices.nextSetBit(i + 1)) {
+            first.set(i);
+            added++;
+        }
+        return first;
+    }
+
+    private void spill(JsonParser parser, Partitions partitions) throws IOException {
+        int index = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            JsonNode element = parser.readValueAsTree();
+            partitions.write(index++, StructuralHashJoin.hash(element), element);
+        }
+        partitions.close();
+    }
+
+    private void comparePartitions(Partitions actual, Partitions expected, Location pathToHere) throws IOException {
+        for (int partition = 0; partition < PARTITIONS && !isFull(); partition++) {
+            if (expected.needsSplitting(partition) || actual.needsSplitting(partition)) {
+                Partitions actualSplit = new Partitions(actual.codec, actual.level + 1);
+                Partitions expectedSplit = new Partitions(expected.codec, expected.level + 1);
+                try {
+                    split(actual, partition, actualSplit);
+                    split(expected, partition, expectedSplit);
+                    comparePartitions(actualSplit, expectedSplit, pathToHere);
+                } finally {
+                    actualSplit.delete();
+                    expectedSplit.delete();
+                }
+            } else {
+                comparePartition(actual.files[partition], actual.codec, expected.files[partition], expected.codec,
+                    pathToHere);
+            }
+        }
+    }
+
+    private void split(Partitions partitions, int partition, Partitions into) throws IOException {
+        Path file = partitions.files[partition];
+        if (file != null) {
+            read(file, partitions.codec, element -> {
+                into.write(element.index, element.hash, element.node);
+                return true;
+            });
+            // the first level of files is kept to read the unpaired elements back from
+            if (partitions.level > 0) {
+                Files.delete(file);
+                partitions.files[partition] = null;
+            }
+        }
+        into.close();
+    }
+
+    private void comparePartition(Path actualFile, ObjectCodec actualCodec, Path expectedFile,
+                                  ObjectCodec expectedCodec, Location pathToHere) throws IOException {
+        Map<Long, List<EqualElements>> expectedByHash = new HashMap<>();
+        if (expectedFile != null) {
+            read(expectedFile, expectedCodec, element -> {
+                group(element, expectedByHash.computeIfAbsent(element.hash, key -> new ArrayList<>()), pathToHere);
+                return true;
+            });
+        }
+
+        if (actualFile != null) {
+            read(actualFile, actualCodec, element -> {
+                if (!pair(element, expectedByHash.get(element.hash), pathToHere)) {
+                    unpairedActual.set(element.index);
+                    unpairedCount++;
+                }
+                return !isFull();
+            });
+        }
+
+        if (isFull()) {
+            // the actual elements may not all have been read, so the expected ones left aren't known to be unpaired
+            return;
+        }
+        for (List<EqualElements> groups : expectedByHash.values()) {
+            for (EqualElements equal : groups) {
+                unpairedCount += equal.addUnpairedTo(unpairedExpected);
+            }
+        }
+    }
+
+    /**
+     * Add the expected element to the group of elements it's equal to, or start a new group
+     */
+    private void group(SpilledElement expected, List<EqualElements> groups, Location pathToHere) {
+        Location elementPath = pathToHere.element(expected.index);
+        int comparisons = 0;
+        for (EqualElements equal : groups) {
+            if (comparisons++ == MAX_COMPARISONS) {
+                break;
+            }
+            if (isEqual(expected.node, equal.node, elementPath)) {
+                equal.add(expected.index);
+                return;
+            }
+        }
+        EqualElements equal = new EqualElements(expected.node);
+        equal.add(expected.index);
+        groups.add(equal);
+    }
+
+    /**
+     * Pair the actual element with the first unpaired expected element it's equal to
+     * @return <code>true</code> if paired, in which case the expected element is no longer available to pair
+     */
+    private boolean pair(SpilledElement actual, List<EqualElements> groups, Location pathToHere) {
+        if (groups == null) {
+            return false;
+        }
+        Location elementPath = pathToHere.element(actual.index);
+        int comparisons = 0;
+        for (EqualElements equal : groups) {
+            if (!equal.hasUnpaired()) {
+                continue;
+            }
+            if (comparisons++ == MAX_COMPARISONS) {
+                return false;
+            }
+            if (isEqual(actual.node, equal.node, elementPath)) {
+                equal.pairFirst();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isEqual(JsonNode actual, JsonNode expected, Location elementPath) {
+        DifferenceCollector elementFailures = DifferenceCollector.firstDifferenceOnly();
+        comparison.compareTrees(actual, expected, elementPath, elementFailures);
+        return elementFailures.isEmpty();
+    }
+
+    /**
+     * Read back the elements with the given indices from the first level of spill files, which between them
+     * hold every element
+     * @return the elements, in index order
+     */
+    private static Map<Integer, JsonNode> readElements(Partitions partitions, BitSet indices) throws IOException {
+        Map<Integer, JsonNode> elements = new TreeMap<>();
+        int wanted = indices.cardinality();
+        for (int partition = 0; partition < PARTITIONS && elements.size() < wanted; partition++) {
+            if (partitions.files[partition] != null) {
+                read(partitions.files[partition], partitions.codec, element -> {
+                    if (indices.get(element.index)) {
+                        elements.put(element.index, element.node);
+                    }
+                    return elements.size() < wanted;
+                });
+            }
+        }
+        return elements;
+    }
+
+    private static void read(Path file, ObjectCodec codec, SpilledElementConsumer consumer) throws IOException {
+        try (JsonParser parser = codec.getFactory().createParser(file.toFile())) {
+            parser.setCodec(codec);
+            // each element is spilled as an array of its index, its hash, and the element
+            boolean reading = true;
+            while (reading && parser.nextToken() == JsonToken.START_ARRAY) {
+                JsonNode spilled = parser.readValueAsTree();
+                reading = consumer.accept(new SpilledElement(spilled.get(0).intValue(), spilled.get(1).longValue(),
+                    spilled.get(2)));
+            }
+        }
+    }
+
+    /**
+     * Which partition a hash belongs to, at each level of partitioning. The hash is multiplied by a large odd
+     * constant, which spreads every bit of it into the high bits, and each level takes the next bits down
+     */
+    static int partitionOf(long hash, int level) {
+        long mixed = hash * 0x9E3779B97F4A7C15L;
+        return (int) ((mixed >>> (Long.SIZE - (level + 1) * PARTITION_BITS)) & (PARTITIONS - 1));
+    }
+}
@@ -0,0 +1,435 @@
+package uk.org.webcompere.modelassert.json.condition.tree;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeType;
+import com.fasterxml.jackson.databind.node.MissingNode;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Compares two streams of JSON tokens in step, producing the same failures as the
+ * {@link TreeComparisonCondition} would for the loaded trees. Where a rule needs to see the whole
+ * of a subtree - a condition, an array in any order or by key, or an object with keys in any order - that subtree
+ * is loaded from both streams and compared as a tree. So the memory used is bounded by the largest
+ * such subtree, rather than the size of the document. Arrays in any order can instead be spilled to files,
+ * with a {@link SpilledArrayComparison}, when the comparison is configured for it.
+ * <br>
+ * The keys of streamed objects are kept, without their values, to find any which are missing, unexpected or out
+ * of order. When the keys stop matching, the values of those which are out of step are held until the other
+ * stream reaches the same key, and the rest of the values are still streamed.
+ * <br>
+ * Objects and arrays which are streamed are kept open on an explicit stack, rather than by recursion, so how
+ * deeply the documents can be nested is limited by the heap and not by the thread's stack.
+ * <br>
+ * The differences in the keys of an object, or the size of an array, are only known once it has been read, but
+ * come before the differences in its values. So they're inserted at the position where the object or array
+ * started. When the failures reach their limit, the values are no longer compared, but the open objects and
+ * arrays are still read to the end, to find any such differences. Each stream must end after its root value.
+ */
+class StreamingTreeComparison {
+    private TreeComparisonCondition treeComparison;
+    private JsonParser actual;
+    private JsonParser expected;
+    private DifferenceCollector failures;
+    private Deque<OpenValue> stack = new ArrayDeque<>();
+
+    /**
+     * An object or array which is being streamed from both parsers
+     */
+    private interface OpenValue {
+        /**
+         * Move both parsers onto the start of the next child to compare
+         * @return the location of the child, or <code>null</code> when there are no more children to stream,
+         *     leaving both parsers on the last token of this value
+         * @throws IOException on error reading
+         */
+        Location next() throws IOException;
+
+        /**
+         * Read to the end of this value, without comparing any more children, now the failures are full,
+         * adding any differences which come before those already found
+         * @throws IOException on error reading
+         */
+        void finish() throws IOException;
+    }
+
+    /**
+     * Construct the comparison
+     * @param treeComparison the tree comparison which has the rules, and compares any subtrees
+     * @param actual parser at the start of the actual json
+     * @param expected parser at the start of the expected json
+     * @param failures the failures to add to
+     */
+    StreamingTreeComparison(TreeComparisonCondition treeComparison, JsonParser actual, JsonParser expected,
+                            DifferenceCollector failures) {
+        this.treeComparison = treeComparison;
+        this.actual = actual;
+        this.expected = expected;
+        this.failures = failures;
+    }
+
+    /**
+     * Compare the two streams
+     * @throws IOException on error reading, or if either stream has more after its root value
+     */
+    void compare() throws IOException {
+        JsonToken actualToken = actual.nextToken();
+        JsonToken expectedToken = expected.nextToken();
+        if (actualToken == null || expectedToken == null) {
+            treeComparison.compareTrees(readTreeOrMissing(actual), readTreeOrMissing(expected),
+                new Location(), failures);
+        } else {
+            compareValues(new Location());
+            while (!stack.isEmpty()) {
+                if (failures.isFull()) {
+                    stack.pop().finish();
+                    continue;
+                }
+                Location child = stack.peek().next();
+                if (child == null) {
+                    stack.pop();
+                } else {
+                    compareValues(child);
+                }
+            }
+        }
+
+        checkEnded(actual);
+        checkEnded(expected);
+    }
+
+    /**
+     * Compare the values at the current tokens. Values which are compared whole leave both parsers on their
+     * last token. Objects and arrays which are streamed are pushed onto the stack to compare their children
+     */
+    private void compareValues(Location pathToHere) throws IOException {
+        if (treeComparison.findRule(pathToHere, TreeRule.CONDITION).isPresent()) {
+            treeComparison.applyConditionRule(actual.readValueAsTree(), pathToHere, failures);
+            expected.skipChildren();
+            return;
+        }
+
+        JsonNodeType actualType = toNodeType(actual.currentToken());
+        JsonNodeType expectedType = toNodeType(expected.currentToken());
+        if (actualType != expectedType) {
+            failures.add(Difference.differentTypes(pathToHere, expectedType, actualType));
+            actual.skipChildren();
+            expected.skipChildren();
+            return;
+        }
+
+        if (actualType == JsonNodeType.OBJECT && canStreamObject(pathToHere)) {
+            stack.push(new ObjectFields(pathToHere));
+        } else if (actualType == JsonNodeType.ARRAY && canStreamArray(pathToHere)) {
+            stack.push(new ArrayElements(pathToHere));
+        } else {
+            compareWholeValues(actualType, pathToHere);
+        }
+    }
+
+    private void compareWholeValues(JsonNodeType type, Location pathToHere) throws IOException {
+        Optional<SpilledArrayComparison> spilled = type == JsonNodeType.ARRAY ?
+            treeComparison.spilledArrayComparison(pathToHere, failures) : Optional.empty();
+        if (spilled.isPresent()) {
+            spilled.get().compare(actual, expected, pathToHere);
+        } else {
+            treeComparison.compareTrees(actual.readValueAsTree(), expected.readValueAsTree(), pathToHere, failures);
+        }
+    }
+
+    private boolean canStreamObject(Location pathToHere) {
+        return !treeComparison.findRule(pathToHere, TreeRule.OBJECT_CONTAINS).isPresent() &&
+            treeComparison.keysShouldBeInOrder(pathToHere);
+    }
+
+    private boolean canStreamArray(Location pathToHere) {
+        return !treeComparison.findRule(pathToHere, TreeRule.ARRAY_CONTAINS).isPresent() &&
+            !treeComparison.findRule(pathToHere, TreeRule.IGNORE_ARRAY_ORDER).isPresent() &&
+            !treeComparison.findRule(pathToHere, TreeRule.ARRAY_MATCHED_BY_KEY).isPresent() &&
+            !treeComparison.findRule(pathToHere, TreeRule.ARRAY_ALIGNED).isPresent();
+    }
+
+    /**
+     * The fields of objects whose keys should be in the same order. The values of keys which are in step are
+     * streamed. Where the keys aren't, one side's value is held until its key turns up on the other side, and
+     * then compared, with its differences inserted where they'd have been found had the keys been in step
+     */
+    private class ObjectFields implements OpenValue {
+        private Location pathToHere;
+        private int start;
+        private ObjectSide actualSide = new ObjectSide(actual);
+        private ObjectSide expectedSide = new ObjectSide(expected);
+        private boolean holdActualNext = true;
+
+        // values held until their key is reached on the other side, the actual ones with where their differences go
+        private Map<String, HeldValue> heldActual = new LinkedHashMap<>();
+        private Map<String, JsonNode> heldExpected = new LinkedHashMap<>();
+
+        ObjectFields(Location pathToHere) {
+            this.pathToHere = pathToHere;
+            this.start = failures.size();
+        }
+
+        @Override
+        public Location next() throws IOException {
+            while (!failures.isFull()) {
+                boolean actualHasKey = actualSide.hasKey();
+                boolean expectedHasKey = expectedSide.hasKey();
+                if (!actualHasKey && !expectedHasKey) {
+                    addKeyDifferences();
+                    return null;
+                }
+
+                if (actualHasKey && expectedHasKey && actualSide.key.equals(expectedSide.key)) {
+                    String key = actualSide.key;
+                    actualSide.enterValue();
+                    expectedSide.enterValue();
+                    return pathToHere.child(key);
+                }
+
+                if (actualHasKey && heldExpected.containsKey(actualSide.key)) {
+                    String key = actualSide.key;
+                    treeComparison.compareTrees(actualSide.readValue(), heldExpected.remove(key),
+                        pathToHere.child(key), failures);
+                } else if (expectedHasKey && heldActual.containsKey(expectedSide.key)) {
+                    compareHeldActual();
+                } else if (actualHasKey && (holdActualNext || !expectedHasKey)) {
+                    // once the expected has ended, the value is only needed if a condition may allow the key
+                    String key = actualSide.key;
+                    JsonNode value = (expectedHasKey || hasCondition(key)) ? actualSide.readValue() :
+                        actualSide.skipValue();
+                    heldActual.put(key, new HeldValue(value, failures.size()));
+                    holdActualNext = false;
+                } else {
+                    // once the actual has ended, the key is missing, and its value isn't needed
+                    String key = expectedSide.key;
+                    heldExpected.put(key, actualHasKey ? expectedSide.readValue() : expectedSide.skipValue());
+                    holdActualNext = true;
+                }
+            }
+
+            finish();
+            return null;
+        }
+
+        @Override
+        public void finish() throws IOException {
+            // the values after this point can't be reported, but the keys can, as can any held actual
+            // values whose differences go before the ones found so far
+            while (actualSide.hasKey()) {
+                String key = actualSide.key;
+                if (hasCondition(key)) {
+                    heldActual.put(key, new HeldValue(actualSide.readValue(), failures.size()));
+                } else {
+                    actualSide.skipValue();
+                }
+            }
+            while (expectedSide.hasKey()) {
+                HeldValue held = heldActual.get(expectedSide.key);
+                if (held != null && held.position < failures.size()) {
+                    compareHeldActual();
+                } else {
+                    expectedSide.skipValue();
+                }
+            }
+            addKeyDifferences();
+        }
+
+        private boolean hasCondition(String key) {
+            return treeComparison.findRule(pathToHere.child(key), TreeRule.CONDITION).isPresent();
+        }
+
+        /**
+         * Compare the expected value with the actual one held for its key, inserting the differences where
+         * they belong, and moving along where the later held values' differences go
+         */
+        private void compareHeldActual() throws IOException {
+            String key = expectedSide.key;
+            JsonNode expectedValue = expectedSide.readValue();
+            HeldValue held = heldActual.get(key);
+            DifferenceCollector differences = failures.forRoomAt(held.position);
+            treeComparison.compareTrees(held.value, expectedValue, pathToHere.child(key), differences);
+            int inserted = differences.insertInto(failures, held.position);
+
+            // the values held since are for later keys, so their differences go after these
+            boolean later = false;
+            for (Map.Entry<String, HeldValue> entry : heldActual.entrySet()) {
+                if (later) {
+                    entry.getValue().position += inserted;
+                }
+                later = later || entry.getKey().equals(key);
+            }
+            heldActual.remove(key);
+        }
+
+        private void addKeyDifferences() {
+            if (TreeComparisonCondition.haveSameKeysInOrder(actualSide.keys.iterator(),
+                expectedSide.keys.iterator())) {
+                return;
+            }
+            DifferenceCollector keyDifferences = failures.forRoomAt(start);
+            treeComparison.compareKeys(actualSide.keys, expectedSide.keys, key -> {
+                HeldValue held = heldActual.get(key);
+                return held == null ? null : held.value;
+            }, null, pathToHere, keyDifferences);
+            keyDifferences.insertInto(failures, start);
+        }
+    }
+
+    /**
+     * One side of the objects being streamed - the keys it has had, and the key it's on, if any
+     */
+    private static class ObjectSide {
+        private JsonParser parser;
+        private Set<String> keys = new LinkedHashSet<>();
+        private String key;
+        private boolean ended;
+
+        ObjectSide(JsonParser parser) {
+            this.parser = parser;
+        }
+
+        /**
+         * Move on to the next key, unless already on one
+         * @return <code>false</code> when the object has ended
+         * @throws IOException on error reading
+         */
+        boolean hasKey() throws IOException {
+            if (key == null && !ended) {
+                if (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    key = parser.currentName();
+                    keys.add(key);
+                } else {
+                    ended = true;
+                }
+            }
+            return !ended;
+        }
+
+        void enterValue() throws IOException {
+            parser.nextToken();
+            key = null;
+        }
+
+        JsonNode readValue() throws IOException {
+            enterValue();
+            return parser.readValueAsTree();
+        }
+
+        JsonNode skipValue() throws IOException {
+            enterValue();
+            parser.skipChildren();
+            return null;
+        }
+    }
+
+    /**
+     * The value of an actual key which is out of step, and the position its differences belong at
+     */
+    private static class HeldValue {
+        private JsonNode value;
+        private int position;
+
+        HeldValue(JsonNode value, int position) {
+            this.value = value;
+            this.position = position;
+        }
+    }
+
+    /**
+     * The elements of arrays in order, up to the end of the shorter one
+     */
+    private class ArrayElements implements OpenValue {
+        private Location pathToHere;
+        private int index;
+
+        // the size difference is reported before the differences in the elements
+        private int sizeFailurePosition;
+
+        ArrayElements(Location pathToHere) {
+            this.pathToHere = pathToHere;
+            this.sizeFailurePosition = failures.size();
+        }
+
+        @Override
+        public Location next() throws IOException {
+            JsonToken actualToken = actual.nextToken();
+            JsonToken expectedToken = expected.nextToken();
+            if (actualToken != JsonToken.END_ARRAY && expectedToken != JsonToken.END_ARRAY) {
+                return pathToHere.element(index++);
+            }
+            addSizeDifference();
+            return null;
+        }
+
+        @Override
+        public void finish() throws IOException {
+            actual.nextToken();
+            expected.nextToken();
+            addSizeDifference();
+        }
+
+        private void addSizeDifference() throws IOException {
+            int actualSize = index + countRemainingElements(actual);
+            int expectedSize = index + countRemainingElements(expected);
+            if (actualSize != expectedSize) {
+                failures.add(sizeFailurePosition, Difference.arraySize(pathToHere, expectedSize, actualSize));
+            }
+        }
+    }
+
+    private static void checkEnded(JsonParser parser) throws IOException {
+        // reading a value as a tree may clear the last token of the root, but never reads past it
+        if (parser.nextToken() != null) {
+            throw new JsonParseException(parser, "Unexpected " + parser.currentToken() + " after the root value");
+        }
+    }
+
+    private static int countRemainingElements(JsonParser parser) throws IOException {
+        int count = 0;
+        while (parser.currentToken() != JsonToken.END_ARRAY) {
+            count++;
+            parser.skipChildren();
+            parser.nextToken();
+        }
+        return count;
+    }
+
+    private static JsonNode readTreeOrMissing(JsonParser parser) throws IOException {
+        if (parser.currentToken() == null) {
+            return MissingNode.getInstance();
+        }
+        return parser.readValueAsTree();
+    }
+
+    private static JsonNodeType toNodeType(JsonToken token) {
+        switch (token) {
+          case START_OBJECT:
+              return JsonNodeType.OBJECT;
+          case START_ARRAY:
+              return JsonNodeType.ARRAY;
+          case VALUE_STRING:
+              return JsonNodeType.STRING;
+          case VALUE_NUMBER_INT:
+          case VALUE_NUMBER_FLOAT:
+              return JsonNodeType.NUMBER;
+          case VALUE_TRUE:
+          case VALUE_FALSE:
+              return JsonNodeType.BOOLEAN;
+          case VALUE_NULL:
+              return JsonNodeType.NULL;
+          default:
+              return JsonNodeType.POJO;
+        }
+    }
+}
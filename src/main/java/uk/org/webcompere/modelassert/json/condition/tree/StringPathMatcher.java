@@ -3,6 +3,7 @@ package uk.org.webcompere.modelassert.json.condition.tree;
 import java.util.List;
 
 import static uk.org.webcompere.modelassert.json.condition.tree.PathMatcher.matchesTheRest;
+import static uk.org.webcompere.modelassert.json.condition.tree.PathMatcher.matchesTheStart;
 
 public class StringPathMatcher implements PathMatcher {
     private String value;
@@ -11,11 +12,24 @@ public class StringPathMatcher implements PathMatcher {
         this.value = value;
     }
 
+    /**
+     * Get the field name this matches
+     * @return the field name
+     */
+    public String getValue() {
+        return value;
+    }
+
     @Override
     public boolean matches(Location location, List<PathMatcher> remaining) {
         return value.equals(location.first()) && matchesTheRest(location.peelOffFirst(), remaining);
     }
 
+    @Override
+    public boolean matchesEnd(Location location, List<PathMatcher> preceding) {
+        return value.equals(location.last()) && matchesTheStart(location.getParent(), preceding);
+    }
+
     @Override
     public String toString() {
         return "\"" + value + "\"";
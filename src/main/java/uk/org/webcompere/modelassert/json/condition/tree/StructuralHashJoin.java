@@ -0,0 +1,264 @@
+package uk.org.webcompere.modelassert.json.condition.tree;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import uk.org.webcompere.modelassert.json.condition.array.ArrayElementCondition;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ObjLongConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Pairs the elements of two arrays which are compared in any order, when nothing below the array can change
+ * what equality means except for the order of keys and arrays. Each element is given a structural hash, which
+ * ignores the order of keys and of array elements, so any two elements which could be equal have the same
+ * hash. The elements are then joined on their hash, with each pair confirmed by a full comparison. Only
+ * elements which cannot be paired this way need the loose comparison.
+ */
+class StructuralHashJoin {
+    private ArrayNode expected;
+    private long[] expectedHashes;
+    private Map<Long, Deque<Integer>> actualByHash = new HashMap<>();
+    private boolean[] actualMatched;
+    private boolean[] expectedMatched;
+
+    // the pair being confirmed, from the candidates with the same hash as the expected element
+    private int expectedIndex = -1;
+    private Iterator<Integer> candidates = Collections.emptyIterator();
+    private int candidate;
+
+    private StructuralHashJoin(ArrayNode actual, ArrayNode expected, long[] expectedHashes) {
+        this.expected = expected;
+        this.expectedHashes = expectedHashes;
+        for (int i = 0; i < actual.size(); i++) {
+            actualByHash.computeIfAbsent(hash(actual.get(i)), key -> new ArrayDeque<>()).add(i);
+        }
+        actualMatched = new boolean[actual.size()];
+        expectedMatched = new boolean[expected.size()];
+    }
+
+    /**
+     * Can the elements of the array at this location be paired by their hashes
+     * @param pathToHere the location of the array
+     * @param comparison the comparison, which has the rules
+     * @return <code>true</code> if the array is in any order, there are no rules below it which allow
+     *     elements to match without being equal, and the rules are the same for every element. Otherwise an
+     *     element paired with the first equal candidate may be the only match for another expected element
+     */
+    static boolean canJoin(Location pathToHere, TreeComparisonCondition comparison) {
+        return comparison.findRule(pathToHere, TreeRule.IGNORE_ARRAY_ORDER).isPresent() &&
+            !comparison.findRule(pathToHere, TreeRule.ARRAY_CONTAINS).isPresent() &&
+            comparison.doElementsShareRules(pathToHere) &&
+            !comparison.hasRuleBelow(pathToHere, TreeRule.CONDITION) &&
+            !comparison.hasRuleBelow(pathToHere, TreeRule.OBJECT_CONTAINS) &&
+            !comparison.hasRuleBelow(pathToHere, TreeRule.ARRAY_CONTAINS);
+    }
+
+    /**
+     * Pair up the elements which are equal
+     * @param actual the actual array
+     * @param expected the expected array
+     * @param expectedConditions the conditions for each expected element, which confirm the pairs
+     * @return the join, with the elements which could not be paired
+     */
+    static StructuralHashJoin join(ArrayNode actual, ArrayNode expected,
+                                   List<ArrayElementCondition> expectedConditions) {
+        return join(actual, expected, null, expectedConditions);
+    }
+
+    /**
+     * Pair up the elements which are equal, using hashes of the expected elements worked out in advance
+     * @param actual the actual array
+     * @param expected the expected array
+     * @param expectedHashes the hash of each expected element, or <code>null</code> to work them out
+     * @param expectedConditions the conditions for each expected element, which confirm the pairs
+     * @return the join, with the elements which could not be paired
+     */
+    static StructuralHashJoin join(ArrayNode actual, ArrayNode expected, long[] expectedHashes,
+                                   List<ArrayElementCondition> expectedConditions) {
+        StructuralHashJoin join = start(actual, expected, expectedHashes);
+        while (join.nextPair()) {
+            join.confirm(expectedConditions.get(join.getExpectedIndex())
+                .test(actual.get(join.getActualIndex()), join.getExpectedIndex()).isPassed());
+        }
+        return join;
+    }
+
+    /**
+     * Start a join whose pairs are confirmed one at a time by the caller, with {@link #nextPair()} and
+     * {@link #confirm(boolean)}, in the same order as {@link #join} would confirm them
+     * @param actual the actual array
+     * @param expected the expected array
+     * @param expectedHashes the hash of each expected element, or <code>null</code> to work them out
+     * @return the join, with nothing paired yet
+     */
+    static StructuralHashJoin start(ArrayNode actual, ArrayNode expected, long[] expectedHashes) {
+        return new StructuralHashJoin(actual, expected, expectedHashes);
+    }
+
+    /**
+     * Move on to the next pair with the same hash which needs confirming
+     * @return <code>false</code> when there are no more pairs, so the join is finished
+     */
+    boolean nextPair() {
+        while (!candidates.hasNext()) {
+            expectedIndex++;
+            if (expectedIndex >= expected.size()) {
+                return false;
+            }
+            long expectedHash = expectedHashes == null ? hash(expected.get(expectedIndex)) :
+                expectedHashes[expectedIndex];
+            Deque<Integer> withSameHash = actualByHash.get(expectedHash);
+            candidates = withSameHash == null ? Collections.<Integer>emptyIterator() : withSameHash.iterator();
+        }
+        candidate = candidates.next();
+        return true;
+    }
+
+    /**
+     * Record whether the elements of the current pair are equal. Equal elements are paired, and the expected
+     * element has no more candidates
+     * @param equal whether the elements are equal
+     */
+    void confirm(boolean equal) {
+        if (equal) {
+            candidates.remove();
+            actualMatched[candidate] = true;
+            expectedMatched[expectedIndex] = true;
+            candidates = Collections.emptyIterator();
+        }
+    }
+
+    int getExpectedIndex() {
+        return expectedIndex;
+    }
+
+    int getActualIndex() {
+        return candidate;
+    }
+
+    /**
+     * Did every expected element pair up - any actual elements left over are only extras
+     * @return <code>true</code> if there's nothing left to compare
+     */
+    boolean allExpectedMatched() {
+        return getUnmatchedExpected().length == 0;
+    }
+
+    int[] getUnmatchedExpected() {
+        return unmatched(expectedMatched);
+    }
+
+    int[] getUnmatchedActual() {
+        return unmatched(actualMatched);
+    }
+
+    /**
+     * A hash of the node which is the same for any two nodes which are equal, ignoring the order of keys in
+     * objects and elements in arrays. Scalars use their own hash, which agrees with how they are compared. The
+     * tree is walked on an explicit stack, so deeply nested elements can be hashed
+     * @param node the node
+     * @return the hash
+     */
+    static long hash(JsonNode node) {
+        return hash(node, (child, hash) -> { });
+    }
+
+    /**
+     * Hash the node, passing the hash of every node within it, children before their parents
+     * @param node the node
+     * @param eachNode receives each node with its hash
+     * @return the hash of the node
+     */
+    static long hash(JsonNode node, ObjLongConsumer<JsonNode> eachNode) {
+        Deque<HashFrame> stack = new ArrayDeque<>();
+        stack.push(new HashFrame(node));
+        while (true) {
+            HashFrame frame = stack.peek();
+            if (frame.hasNextChild()) {
+                stack.push(new HashFrame(frame.nextChild()));
+                continue;
+            }
+            long hash = frame.finish();
+            eachNode.accept(frame.node, hash);
+            stack.pop();
+            if (stack.isEmpty()) {
+                return hash;
+            }
+            stack.peek().addChild(hash);
+        }
+    }
+
+    private static long mix(long value) {
+        // the finaliser of MurmurHash3, spreading the bits so that sums of hashes rarely collide
+        long mixed = value;
+        mixed ^= mixed >>> 33;
+        mixed *= 0xff51afd7ed558ccdL;
+        mixed ^= mixed >>> 33;
+        mixed *= 0xc4ceb9fe1a85ec53L;
+        mixed ^= mixed >>> 33;
+        return mixed;
+    }
+
+    /**
+     * A node whose hash is being worked out, as the hashes of its children arrive
+     */
+    private static class HashFrame {
+        private JsonNode node;
+        private Iterator<Map.Entry<String, JsonNode>> fields;
+        private Iterator<JsonNode> elements;
+        private int currentKeyHash;
+        private long hash;
+
+        HashFrame(JsonNode node) {
+            this.node = node;
+            this.hash = node.getNodeType().ordinal();
+            if (node.isObject()) {
+                fields = node.fields();
+            } else if (node.isArray()) {
+                elements = node.elements();
+            }
+        }
+
+        boolean hasNextChild() {
+            return (fields != null && fields.hasNext()) || (elements != null && elements.hasNext());
+        }
+
+        JsonNode nextChild() {
+            if (fields != null) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                currentKeyHash = field.getKey().hashCode();
+                return field.getValue();
+            }
+            return elements.next();
+        }
+
+        void addChild(long childHash) {
+            // adding the mixed hash of each child makes this independent of the order
+            if (fields != null) {
+                hash += mix(31L * currentKeyHash + childHash);
+            } else {
+                hash += mix(childHash);
+            }
+        }
+
+        long finish() {
+            if (!node.isContainerNode()) {
+                hash = 31L * hash + node.hashCode();
+            }
+            return mix(hash + node.size());
+        }
+    }
+
+    private static int[] unmatched(boolean[] matched) {
+        return IntStream.range(0, matched.length)
+            .filter(i -> !matched[i])
+            .toArray();
+    }
+}
@@ -1,33 +1,74 @@
 package uk.org.webcompere.modelassert.json.condition.tree;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import uk.org.webcompere.modelassert.json.Condition;
 import uk.org.webcompere.modelassert.json.JsonProvider;
+import uk.org.webcompere.modelassert.json.JsonStreamProvider;
 import uk.org.webcompere.modelassert.json.Result;
+import uk.org.webcompere.modelassert.json.StreamableCondition;
 import uk.org.webcompere.modelassert.json.condition.array.ArrayElementCondition;
 import uk.org.webcompere.modelassert.json.condition.array.LooseComparison;
+import uk.org.webcompere.modelassert.json.impl.MemoizedSupplier;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
 
 /**
  * Compare with a whole JSON structure
  */
-public class TreeComparisonCondition implements Condition {
-
-    private JsonNode expected;
-    private LinkedList<PathRule> rules = new LinkedList<>();
+public class TreeComparisonCondition implements StreamableCondition {
+
+    private Supplier<JsonNode> expected;
+    private Supplier<JsonParser> expectedStream;
+    private String expectedSource;
+    private boolean streamed;
+    private RuleSet rules = RuleSet.empty();
+    private int maxFailures = Integer.MAX_VALUE;
+    private boolean summarised;
+    private boolean compiled;
+    private volatile ExpectedPlan plan;
+    private Path spillDirectory;
+    private long spillMemoryBudget;
+    private ParallelComparison parallel;
 
     /**
      * Constructor is private, use factory methods
      * @param expected the expected Json as a JSON Node
      */
     private TreeComparisonCondition(JsonNode expected) {
-        this.expected = expected;
+        this.expected = () -> expected;
+    }
+
+    private TreeComparisonCondition(Supplier<JsonNode> expected, Supplier<JsonParser> expectedStream,
+                                    String expectedSource) {
+        this.expected = MemoizedSupplier.of(expected);
+        this.expectedStream = expectedStream;
+        this.expectedSource = expectedSource;
+    }
+
+    private TreeComparisonCondition(TreeComparisonCondition original) {
+        this.expected = original.expected;
+        this.expectedStream = original.expectedStream;
+        this.expectedSource = original.expectedSource;
+        this.streamed = original.streamed;
+        this.rules = original.rules;
+        this.maxFailures = original.maxFailures;
+        this.summarised = original.summarised;
+        this.compiled = original.compiled;
+        this.plan = original.plan;
+        this.spillDirectory = original.spillDirectory;
+        this.spillMemoryBudget = original.spillMemoryBudget;
+        this.parallel = original.parallel;
     }
 
     /**
@@ -41,6 +82,21 @@ public class TreeComparisonCondition implements Condition {
         return new TreeComparisonCondition(provider.jsonFrom(json));
     }
 
+    /**
+     * Construct equals condition from a source which can also be streamed. The expected json is only
+     * loaded when needed, and the comparison can be switched to {@link #streamed()}
+     * @param json the source of the json
+     * @param provider the converter to load the whole tree
+     * @param streamProvider the converter to stream the tokens
+     * @param <T> the type of the JSON
+     * @return the condition
+     */
+    public static <T> TreeComparisonCondition isEqualTo(T json, JsonProvider<T> provider,
+                                                        JsonStreamProvider<T> streamProvider) {
+        return new TreeComparisonCondition(() -> provider.jsonFrom(json),
+            () -> streamProvider.jsonParserFrom(json), String.valueOf(json));
+    }
+
     /**
      * Construct equals condition from a JsonNode
      * @param tree the json node
@@ -50,16 +106,138 @@ public class TreeComparisonCondition implements Condition {
         return new TreeComparisonCondition(tree);
     }
 
+    /**
+     * A copy of this condition, with the same expected json, rules and settings, which can be changed
+     * without changing this one
+     * @return the copy
+     */
+    public TreeComparisonCondition copy() {
+        return new TreeComparisonCondition(this);
+    }
+
     /**
      * Add rules to the comparison
      * @param rules the rules
      * @return <code>this</code> for fluent calling
      */
     public TreeComparisonCondition withRules(List<PathRule> rules) {
-        this.rules.addAll(rules);
+        this.rules = this.rules.with(rules);
+        return this;
+    }
+
+    /**
+     * Add a prepared set of rules to the comparison
+     * @param ruleSet the rules
+     * @return <code>this</code> for fluent calling
+     */
+    public TreeComparisonCondition withRules(RuleSet ruleSet) {
+        this.rules = this.rules.with(ruleSet);
+        return this;
+    }
+
+    /**
+     * Compare by walking the tokens of the actual and expected json in step, rather than loading
+     * them. Only the parts of the tree where rules need a whole subtree to work with will be loaded.
+     * This is only possible when the expected json came from a source which can be streamed
+     * @return <code>this</code> for fluent calling
+     */
+    public TreeComparisonCondition streamed() {
+        this.streamed = true;
+        return this;
+    }
+
+    /**
+     * Stop comparing after a number of failures have been found
+     * @param maxFailures the most failures to report
+     * @return <code>this</code> for fluent calling
+     */
+    public TreeComparisonCondition withMaxFailures(int maxFailures) {
+        if (maxFailures < 1) {
+            throw new IllegalArgumentException("Must allow at least one failure");
+        }
+        this.maxFailures = maxFailures;
+        return this;
+    }
+
+    /**
+     * Stop comparing at the first failure
+     * @return <code>this</code> for fluent calling
+     */
+    public TreeComparisonCondition failFast() {
+        return withMaxFailures(1);
+    }
+
+    /**
+     * Report failures of the same kind, at paths which only differ by array index, as a single summary
+     * line, rather than one line each
+     * @return <code>this</code> for fluent calling
+     */
+    public TreeComparisonCondition summarised() {
+        this.summarised = true;
+        return this;
+    }
+
+    /**
+     * Work out what the comparison needs to know about the expected json once, the first time it's needed,
+     * and reuse it for every test of this condition. This suits a condition which is tested many times,
+     * such as an argument matcher, or an expected document shared between parameterised tests
+     * @return <code>this</code> for fluent calling
+     */
+    public TreeComparisonCondition compiled() {
+        this.compiled = true;
         return this;
     }
 
+    /**
+     * Compare the children of wide objects and arrays in parallel, on the common fork/join pool
+     * @return <code>this</code> for fluent calling
+     * @see #parallel(ForkJoinPool, int)
+     */
+    public TreeComparisonCondition parallel() {
+        return parallel(ForkJoinPool.commonPool(), ParallelComparison.DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Compare the children of wide objects and arrays in parallel. The children are split into ranges which
+     * are compared on the pool, and the failures are reported in the same order, and up to the same limit,
+     * as comparing on one thread. The elements of wide arrays in any order are also tested against each other
+     * on the pool. Any conditions in the rules must be safe to test from many threads
+     * @param pool the pool to compare on
+     * @param threshold the fewest keys or elements for a node's children to be compared in parallel
+     * @return <code>this</code> for fluent calling
+     */
+    public TreeComparisonCondition parallel(ForkJoinPool pool, int threshold) {
+        if (threshold < 2) {
+            throw new IllegalArgumentException("Must need at least two children to compare in parallel");
+        }
+        this.parallel = new ParallelComparison(pool, threshold);
+        return this;
+    }
+
+    /**
+     * When {@link #streamed()}, compare arrays in any order by spilling their elements to files, rather than
+     * loading them, so arrays too large for memory can be compared. The elements are split between the files
+     * by hash, and the files compared one at a time. Elements with no equal on the other side are reported
+     * with their indices. This applies to arrays where no rule below makes elements match without being equal -
+     * i.e. no conditions or contains rules
+     * @param directory where to write the spill files, which are deleted afterwards
+     * @param memoryBudget roughly how many bytes of json elements to load at once
+     * @return <code>this</code> for fluent calling
+     */
+    public TreeComparisonCondition spillingTo(Path directory, long memoryBudget) {
+        if (memoryBudget < 1) {
+            throw new IllegalArgumentException("Must allow some memory for comparing spilled elements");
+        }
+        this.spillDirectory = directory;
+        this.spillMemoryBudget = memoryBudget;
+        return this;
+    }
+
+    @Override
+    public boolean isStreamable() {
+        return streamed && expectedStream != null;
+    }
+
     /**
      * Execute the test of the condition
      *
@@ -68,33 +246,205 @@ public class TreeComparisonCondition implements Condition {
      */
     @Override
     public Result test(JsonNode json) {
-        List<String> failures = new ArrayList<>();
+        // most comparisons pass, so find that out cheaply before looking for the differences
+        boolean checkedQuickly = canCheckQuickly();
+        if (checkedQuickly && QuickEquality.isEqual(json, expected.get(), rules)) {
+            return passed();
+        }
+
+        DifferenceCollector failures = new DifferenceCollector(maxFailures);
 
         Location root = new Location();
-        compareTrees(json, expected, root, failures);
+        compareTrees(json, expected.get(), root, failures, checkedQuickly);
+
+        return toResult(failures);
+    }
 
+    /**
+     * Execute the test of the condition by streaming both the actual and expected json
+     *
+     * @param json a parser at the start of the json to test
+     * @return a {@link Result} explaining whether the condition was met and if not, why not
+     * @throws IOException on error reading either stream
+     */
+    @Override
+    public Result test(JsonParser json) throws IOException {
+        DifferenceCollector failures = new DifferenceCollector(maxFailures);
+
+        try (JsonParser expectedParser = expectedStream.get()) {
+            new StreamingTreeComparison(this, json, expectedParser, failures).compare();
+        }
+
+        return toResult(failures);
+    }
+
+    /**
+     * Work out the differences from the json as a JSON Patch, as in RFC 6902, which would turn it into the
+     * expected json. The patch covers every difference, whatever the limit on failures, except for failed
+     * conditions and the order of keys, which a patch can't fix. The values in the patch are nodes of the
+     * expected json, so should not be changed
+     * @param json the json to compare
+     * @return the operations of the patch, which is empty if there are no differences
+     */
+    public ArrayNode toPatch(JsonNode json) {
+        ArrayNode patch = JsonNodeFactory.instance.arrayNode();
+        try {
+            comparePatching(json, patch::add);
+        } catch (IOException e) {
+            // adding to an array can't fail
+            throw new UncheckedIOException(e);
+        }
+        return patch;
+    }
+
+    /**
+     * Work out the differences from the json as a JSON Patch, as in {@link #toPatch}, writing each operation
+     * as it's found, so that a large patch doesn't need to be held in memory
+     * @param json the json to compare
+     * @param generator receives the patch, as an array of operations
+     * @throws IOException on error writing to the generator
+     */
+    public void streamPatch(JsonNode json, JsonGenerator generator) throws IOException {
+        generator.writeStartArray();
+        comparePatching(json, generator::writeTree);
+        generator.writeEndArray();
+    }
+
+    private void comparePatching(JsonNode json, JsonPatchWriter.PatchSink sink) throws IOException {
+        boolean checkedQuickly = canCheckQuickly();
+        if (checkedQuickly && QuickEquality.isEqual(json, expected.get(), rules)) {
+            return;
+        }
+        JsonPatchWriter writer = new JsonPatchWriter(this, sink);
+        compareTrees(json, expected.get(), new Location(), writer, checkedQuickly);
+        writer.finish();
+    }
+
+    /**
+     * Can equality be checked with the quick first pass. That's on one thread, so a parallel comparison goes
+     * straight to the walk, which checks subtrees without rules quickly as it forks them
+     * @return <code>true</code> if the quick pass should be tried first
+     */
+    private boolean canCheckQuickly() {
+        return parallel == null && QuickEquality.canCheck(rules);
+    }
+
+    private Result toResult(DifferenceCollector failures) {
         if (!failures.isEmpty()) {
-            return new Result(describe(), String.join("\n", failures), false);
+            return new Result(this::describe, () -> failures.describe(summarised), false);
         }
 
-        return new Result(describe(), "equal", true);
+        return passed();
     }
 
-    void compareTrees(JsonNode actual, JsonNode expected, Location pathToHere, List<String> failures) {
-        Optional<PathRule> alternativeCondition = findRule(pathToHere, TreeRule.CONDITION);
-        if (alternativeCondition.isPresent()) {
-            Result result = alternativeCondition.get().getRuleCondition().test(actual);
-            if (!result.isPassed()) {
-                failures.add(pathToHere.toString() + ": expected " + result.getCondition() +
-                    " but was " + result.getWas());
-            }
+    private Result passed() {
+        return new Result(this::describe, "equal", true);
+    }
+
+    /**
+     * The plan of the expected tree, compiled the first time it's asked for
+     * @return the plan, or <code>null</code> if this condition isn't {@link #compiled()}, or is streamed,
+     *     so never loads the whole expected tree
+     */
+    ExpectedPlan getPlan() {
+        if (!compiled || isStreamable()) {
+            return null;
+        }
+        ExpectedPlan known = plan;
+        if (known == null) {
+            // compiling twice in a race is harmless, as both plans are the same
+            known = ExpectedPlan.compile(expected.get());
+            plan = known;
+        }
+        return known;
+    }
+
+    /**
+     * How wide nodes are compared in parallel
+     * @return the parallel comparison, or <code>null</code> if not {@link #parallel()}
+     */
+    ParallelComparison getParallel() {
+        return parallel;
+    }
+
+    /**
+     * The comparison which spills the elements of a streamed array in any order to files
+     * @param pathToHere the location of the array
+     * @param failures the failures to add to
+     * @return the comparison, or empty if not {@link #spillingTo} files, or the array's rules need it loaded
+     */
+    Optional<SpilledArrayComparison> spilledArrayComparison(Location pathToHere, DifferenceCollector failures) {
+        if (spillDirectory == null || findRule(pathToHere, TreeRule.ARRAY_MATCHED_BY_KEY).isPresent() ||
+            !StructuralHashJoin.canJoin(pathToHere, this)) {
+            return Optional.empty();
+        }
+        return Optional.of(new SpilledArrayComparison(this, spillDirectory, spillMemoryBudget, failures));
+    }
+
+    /**
+     * Compare two trees, walking them on an explicit stack
+     * @param actual the actual tree
+     * @param expected the expected tree
+     * @param pathToHere the location of the trees
+     * @param failures the failures to add to
+     */
+    void compareTrees(JsonNode actual, JsonNode expected, Location pathToHere, DifferenceCollector failures) {
+        compareTrees(actual, expected, pathToHere, failures, false);
+    }
+
+    /**
+     * Compare two trees, which may already be known to differ
+     * @param actual the actual tree
+     * @param expected the expected tree
+     * @param pathToHere the location of the trees
+     * @param failures the failures to add to
+     * @param knownUnequal whether a quick pass over the whole trees has already found them unequal, so the top
+     *     of the trees needn't be checked for equality again before walking them
+     */
+    private void compareTrees(JsonNode actual, JsonNode expected, Location pathToHere,
+                              DifferenceCollector failures, boolean knownUnequal) {
+        if (failures.isFull()) {
+            return;
+        }
+        TreeWalk walk = new TreeWalk(this, failures);
+        if (knownUnequal) {
+            compareUnequalNode(actual, expected, pathToHere, walk);
+        } else {
+            walk.compare(actual, expected, pathToHere);
+        }
+        walk.run();
+    }
+
+    /**
+     * Compare two nodes, pushing their children onto the walk to be compared after them
+     * @param actual the actual node
+     * @param expected the expected node
+     * @param pathToHere the location of the nodes
+     * @param walk the walk
+     */
+    void compareNode(JsonNode actual, JsonNode expected, Location pathToHere, TreeWalk walk) {
+        if (isEqualRuleFreeSubtree(actual, expected, pathToHere, walk)) {
+            return;
+        }
+        compareUnequalNode(actual, expected, pathToHere, walk);
+    }
+
+    /**
+     * Compare two nodes without first checking whether they're the top of an equal subtree with no rules
+     * @param actual the actual node
+     * @param expected the expected node
+     * @param pathToHere the location of the nodes
+     * @param walk the walk
+     */
+    private void compareUnequalNode(JsonNode actual, JsonNode expected, Location pathToHere, TreeWalk walk) {
+        DifferenceCollector failures = walk.getFailures();
+        if (applyConditionRule(actual, pathToHere, failures)) {
             return;
         }
 
         // early exit if types don't match
         if (actual.getNodeType() != expected.getNodeType()) {
-            failures.add(pathToHere.toString() + " different types: expected " + expected.getNodeType() +
-                ", actual " + actual.getNodeType());
+            failures.add(Difference.differentTypes(pathToHere, expected, actual));
             return;
         }
 
@@ -104,26 +454,85 @@ public class TreeComparisonCondition implements Condition {
           case NUMBER:
           case STRING:
               if (!actual.equals(expected)) {
-                  failures.add(pathToHere.toString() + " value is different: expected " + expected +
-                      ", actual " + actual);
+                  failures.add(Difference.differentValue(pathToHere, expected, actual));
               }
               break;
           case ARRAY:
-              compareArrays((ArrayNode)actual, (ArrayNode)expected, pathToHere, failures);
+              compareArrays((ArrayNode)actual, (ArrayNode)expected, pathToHere, walk);
               break;
           case OBJECT:
-              compareObjects((ObjectNode)actual, (ObjectNode)expected, pathToHere, failures);
+              compareObjects((ObjectNode)actual, (ObjectNode)expected, pathToHere, walk);
               break;
           default:
-              failures.add("Unexpected node type: " + actual.getNodeType());
+              failures.add(Difference.unsupportedType(pathToHere, actual));
               break;
         }
     }
 
-    private void compareObjects(ObjectNode actual, ObjectNode expected, Location pathToHere, List<String> failures) {
-        Set<String> actualKeys = toSet(actual.fieldNames());
-        Set<String> expectedKeys = toSet(expected.fieldNames());
+    /**
+     * At the top of a subtree where no rule applies, check the whole subtree with a direct structural equality,
+     * so only subtrees with differences are walked node by node. Below the top, the check has already failed.
+     * A node whose children will be compared in parallel leaves the check to each of its children instead
+     * @param actual the actual node
+     * @param expected the expected node
+     * @param pathToHere the location of the nodes
+     * @param walk the walk
+     * @return <code>true</code> if there's nothing to compare below here
+     */
+    private boolean isEqualRuleFreeSubtree(JsonNode actual, JsonNode expected, Location pathToHere, TreeWalk walk) {
+        return actual.isContainerNode() &&
+            !walk.wouldFork(actual.size()) &&
+            rules.isRuleFree(pathToHere) &&
+            (pathToHere.isEmpty() || !rules.isRuleFree(pathToHere.getParent()) || walk.isForkedChild(pathToHere)) &&
+            QuickEquality.isStrictlyEqual(actual, expected);
+    }
+
+    /**
+     * Where there's a {@link TreeRule#CONDITION} for this location, test the actual with it
+     * @param actual the actual node
+     * @param pathToHere the location
+     * @param failures the failures to add to
+     * @return <code>true</code> if the condition rule was applied, so there's no more comparison to do
+     */
+    boolean applyConditionRule(JsonNode actual, Location pathToHere, DifferenceCollector failures) {
+        Optional<PathRule> alternativeCondition = findRule(pathToHere, TreeRule.CONDITION);
+        if (!alternativeCondition.isPresent()) {
+            return false;
+        }
+        Result result = alternativeCondition.get().getRuleCondition().test(actual);
+        if (!result.isPassed()) {
+            failures.add(Difference.failedCondition(pathToHere, result, actual));
+        }
+        return true;
+    }
+
+    private void compareObjects(ObjectNode actual, ObjectNode expected, Location pathToHere, TreeWalk walk) {
+        if (keysMatch(actual, expected, pathToHere)) {
+            compareValuesOfMatchingKeys(actual, expected, pathToHere, walk);
+            return;
+        }
 
+        List<String> keysToCompare = new ArrayList<>(compareKeys(toSet(actual.fieldNames()), keysOf(expected),
+            actual::get, expected, pathToHere, walk.getFailures()));
+        walk.compareEach(pathToHere, keysToCompare.size(), (i, next) -> {
+            String key = keysToCompare.get(i);
+            next.compare(actual.get(key), expected.get(key), pathToHere.child(key));
+        });
+    }
+
+    /**
+     * Report the differences in the keys of two objects - keys which are unexpected or missing, unless a rule
+     * allows them, and keys in the wrong order
+     * @param actualKeys the keys of the actual object, in order
+     * @param expectedKeys the keys of the expected object, in order
+     * @param actualValues finds the value of an actual key, for any condition rule which could allow it
+     * @param expected the expected object, or <code>null</code> if it's not loaded, as when streamed
+     * @param pathToHere the location of the objects
+     * @param failures the failures to add to
+     * @return the keys of the actual which are also in the expected, in order, whose values are to be compared
+     */
+    Set<String> compareKeys(Set<String> actualKeys, Set<String> expectedKeys, Function<String, JsonNode> actualValues,
+                            ObjectNode expected, Location pathToHere, DifferenceCollector failures) {
         Set<String> missingKeys = new HashSet<>(expectedKeys);
         missingKeys.removeAll(actualKeys);
 
@@ -133,9 +542,15 @@ public class TreeComparisonCondition implements Condition {
         boolean usingObjectContains = findRule(pathToHere, TreeRule.OBJECT_CONTAINS).isPresent();
 
         if (!usingObjectContains) {
-            reportKeys("unexpected", actual, pathToHere, failures, extraKeys);
+            List<String> unexpected = filterKeysAllowedByRules(actualValues, pathToHere, extraKeys);
+            if (!unexpected.isEmpty()) {
+                failures.add(Difference.unexpectedKeys(pathToHere, unexpected));
+            }
+        }
+        List<String> missing = filterKeysAllowedByRules(actualValues, pathToHere, missingKeys);
+        if (!missing.isEmpty()) {
+            failures.add(Difference.missingKeys(pathToHere, missing, expected));
         }
-        reportKeys("missing", actual, pathToHere, failures, missingKeys);
 
         Set<String> actualKeysWithoutExtras = new LinkedHashSet<>(actualKeys);
         actualKeysWithoutExtras.removeAll(extraKeys);
@@ -146,89 +561,255 @@ public class TreeComparisonCondition implements Condition {
         if (!usingObjectContains && keysShouldBeInOrder(pathToHere)) {
             checkKeyOrder(pathToHere, failures, actualKeysWithoutExtras, expectedKeysFoundInActual);
         }
+        return actualKeysWithoutExtras;
+    }
 
-        // now iterate over the comparable keys
-        for (String key: actualKeysWithoutExtras) {
-            compareTrees(actual.get(key), expected.get(key), pathToHere.child(key), failures);
+    /**
+     * Check, without building any collections, whether the objects have the same keys in an acceptable order,
+     * so there's nothing to report about the keys. This is the common case
+     * @param actual the actual object
+     * @param expected the expected object
+     * @param pathToHere the location of the objects
+     * @return <code>true</code> if only the values need comparing
+     */
+    private boolean keysMatch(ObjectNode actual, ObjectNode expected, Location pathToHere) {
+        if (actual.size() != expected.size()) {
+            return false;
+        }
+        if (haveSameKeysInOrder(actual.fieldNames(), expected.fieldNames())) {
+            return true;
         }
+        if (!findRule(pathToHere, TreeRule.OBJECT_CONTAINS).isPresent() && keysShouldBeInOrder(pathToHere)) {
+            return false;
+        }
+        Iterator<String> actualKeys = actual.fieldNames();
+        while (actualKeys.hasNext()) {
+            if (!expected.has(actualKeys.next())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void compareValuesOfMatchingKeys(ObjectNode actual, ObjectNode expected, Location pathToHere,
+                                             TreeWalk walk) {
+        if (walk.wouldFork(actual.size())) {
+            // forking needs the keys by position
+            List<String> keys = new ArrayList<>(actual.size());
+            actual.fieldNames().forEachRemaining(keys::add);
+            walk.compareEach(pathToHere, keys.size(), (i, next) -> {
+                String key = keys.get(i);
+                next.compare(actual.get(key), expected.get(key), pathToHere.child(key));
+            });
+            return;
+        }
+
+        Iterator<Map.Entry<String, JsonNode>> fields = actual.fields();
+        walk.compareEach(next -> {
+            if (!fields.hasNext()) {
+                return false;
+            }
+            Map.Entry<String, JsonNode> field = fields.next();
+            next.compare(field.getValue(), expected.get(field.getKey()), pathToHere.child(field.getKey()));
+            return true;
+        });
+    }
+
+    private Set<String> keysOf(ObjectNode expected) {
+        ExpectedPlan expectedPlan = getPlan();
+        Set<String> planned = expectedPlan == null ? null : expectedPlan.keysOf(expected);
+        return planned == null ? toSet(expected.fieldNames()) : planned;
+    }
+
+    static boolean haveSameKeysInOrder(Iterator<String> actualKeys, Iterator<String> expectedKeys) {
+        while (actualKeys.hasNext() && expectedKeys.hasNext()) {
+            if (!actualKeys.next().equals(expectedKeys.next())) {
+                return false;
+            }
+        }
+        return !actualKeys.hasNext() && !expectedKeys.hasNext();
     }
 
-    private boolean keysShouldBeInOrder(Location pathToHere) {
+    boolean keysShouldBeInOrder(Location pathToHere) {
         return findRule(pathToHere, TreeRule.REQUIRE_KEY_ORDER).isPresent() ||
             !findRule(pathToHere, TreeRule.IGNORE_KEY_ORDER).isPresent();
     }
 
-    private void reportKeys(String name, ObjectNode actual, Location pathToHere,
-                            List<String> failures, Set<String> keys) {
-        List<String> filtered = keys.stream()
-            .filter(key -> !isKeyAllowedByRules(actual, pathToHere, key))
+    private List<String> filterKeysAllowedByRules(Function<String, JsonNode> actualValues, Location pathToHere,
+                                                  Set<String> keys) {
+        return keys.stream()
+            .filter(key -> !isKeyAllowedByRules(actualValues, pathToHere, key))
             .collect(Collectors.toList());
-
-        if (!filtered.isEmpty()) {
-            failures.add(pathToHere.toString() + ": " + name + " keys " + filtered);
-        }
     }
 
-    private boolean isKeyAllowedByRules(ObjectNode actual, Location pathToHere, String key) {
+    private boolean isKeyAllowedByRules(Function<String, JsonNode> actualValues, Location pathToHere, String key) {
         return findRule(pathToHere.child(key), TreeRule.CONDITION)
-            .map(rule -> rule.getRuleCondition().test(actual.get(key)).isPassed())
+            .map(rule -> rule.getRuleCondition().test(actualValues.apply(key)).isPassed())
             .orElse(false);
     }
 
-    private Optional<PathRule> findRule(Location pathToHere, TreeRule ruleToFind) {
-        return rulesInPriorityOrder()
-            .filter(rule -> rule.matches(pathToHere) && rule.getRule().equals(ruleToFind))
-            .findFirst();
+    Optional<PathRule> findRule(Location pathToHere, TreeRule ruleToFind) {
+        return rules.findRule(pathToHere, ruleToFind);
     }
 
-    private Stream<PathRule> rulesInPriorityOrder() {
-        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(rules.descendingIterator(),
-            Spliterator.ORDERED), false);
+    boolean hasRuleBelow(Location pathToHere, TreeRule ruleToFind) {
+        return rules.hasRuleBelow(pathToHere, ruleToFind);
     }
 
-    private void checkKeyOrder(Location pathToHere, List<String> failures,
+    boolean doElementsShareRules(Location pathToHere) {
+        return rules.doElementsShareRules(pathToHere);
+    }
+
+    private void checkKeyOrder(Location pathToHere, DifferenceCollector failures,
                                Set<String> actualKeysWithoutExtras,
                                Set<String> expectedKeysFoundInActual) {
-        if (!new LinkedList<>(actualKeysWithoutExtras).equals(new LinkedList<>(expectedKeysFoundInActual))) {
-            failures.add(pathToHere.toString() + ": keys in the wrong order - expected " +
-                expectedKeysFoundInActual + ", found " + actualKeysWithoutExtras);
+        if (!haveSameKeysInOrder(actualKeysWithoutExtras.iterator(), expectedKeysFoundInActual.iterator())) {
+            failures.add(Difference.keyOrder(pathToHere, expectedKeysFoundInActual, actualKeysWithoutExtras));
         }
     }
 
-    private void compareArrays(ArrayNode actual, ArrayNode expected, Location pathToHere, List<String> failures) {
+    private void compareArrays(ArrayNode actual, ArrayNode expected, Location pathToHere, TreeWalk walk) {
+        DifferenceCollector failures = walk.getFailures();
         boolean usingArrayContains = findRule(pathToHere, TreeRule.ARRAY_CONTAINS).isPresent();
+        Optional<PathRule> matchedByKey = findRule(pathToHere, TreeRule.ARRAY_MATCHED_BY_KEY);
+        if (matchedByKey.isPresent()) {
+            // missing and unexpected elements are reported by key, rather than by the sizes
+            new KeyedArrayComparison(matchedByKey.get().getKeyFields(), !usingArrayContains)
+                .compare(actual, expected, pathToHere, walk);
+            return;
+        }
+
+        boolean inOrder = !findRule(pathToHere, TreeRule.IGNORE_ARRAY_ORDER).isPresent() && !usingArrayContains;
+        if (inOrder && findRule(pathToHere, TreeRule.ARRAY_ALIGNED).isPresent() &&
+            performAlignedArrayComparison(actual, expected, pathToHere, walk)) {
+            return;
+        }
+
         if (!usingArrayContains) {
             if (actual.size() != expected.size()) {
-                failures.add(pathToHere.toString() + ": arrays have different size, expected: " +
-                    expected.size() + " actual: " + actual.size());
+                failures.add(Difference.arraySize(pathToHere, expected, actual.size()));
             }
         }
 
-        if (!findRule(pathToHere, TreeRule.IGNORE_ARRAY_ORDER).isPresent() && !usingArrayContains) {
-            performExactArrayComparison(actual, expected, pathToHere, failures);
+        Optional<ScalarArrayComparison> scalars = rules.areElementsRuleFree(pathToHere) ?
+            ScalarArrayComparison.of(actual, expected) : Optional.empty();
+        if (scalars.isPresent()) {
+            performScalarArrayComparison(scalars.get(), inOrder, expected, pathToHere, failures);
+        } else if (inOrder) {
+            performExactArrayComparison(actual, expected, pathToHere, walk);
         } else {
-            performLooseArrayComparison(actual, expected, pathToHere, failures);
+            performLooseArrayComparison(actual, expected, pathToHere, walk);
         }
     }
 
+    /**
+     * Compare arrays of scalars, with no rules for their elements, by their values alone. The failures are the
+     * same as comparing them element by element would find
+     * @param scalars the values of the arrays
+     * @param inOrder whether the elements must be in the same order
+     * @param expected the expected array
+     * @param pathToHere the location of the arrays
+     * @param failures the failures to add to
+     */
+    private void performScalarArrayComparison(ScalarArrayComparison scalars, boolean inOrder, ArrayNode expected,
+                                              Location pathToHere, DifferenceCollector failures) {
+        if (inOrder) {
+            scalars.compareInOrder(pathToHere, failures);
+            return;
+        }
+
+        int[] unmatched = scalars.unmatchedExpected();
+        if (unmatched.length > 0) {
+            // the conditions are only needed to describe the unmatched elements
+            Result result = looseComparisonOf(expectedConditions(expected, pathToHere), pathToHere)
+                .resultOf(unmatched);
+            failures.add(Difference.unmatchedElements(pathToHere, result, expected));
+        }
+    }
+
+    /**
+     * Pair the elements of arrays in any order. Usually the pairs are tried on the walk, one at a time, by a
+     * {@link LooseArrayComparison}. Wide arrays of a parallel comparison are instead tried on the pool, where
+     * each pair is compared by a walk of its own
+     * @param actual the actual array
+     * @param expected the expected array
+     * @param pathToHere the location of the arrays
+     * @param walk the walk
+     */
     private void performLooseArrayComparison(ArrayNode actual, ArrayNode expected,
-                                             Location pathToHere, List<String> failures) {
-        List<ArrayElementCondition> expectedConditions = new LinkedList<>();
+                                             Location pathToHere, TreeWalk walk) {
+        List<ArrayElementCondition> expectedConditions = expectedConditions(expected, pathToHere);
+        ElementSignatures signatures = ElementSignatures.of(actual, expected, pathToHere, this);
+        LooseComparison looseComparison = looseComparisonOf(expectedConditions, pathToHere)
+            .withCandidateFilter(signatures);
+        ExpectedPlan expectedPlan = getPlan();
+        long[] expectedHashes = expectedPlan == null ? null : expectedPlan.elementHashes(expected);
+        boolean canJoin = StructuralHashJoin.canJoin(pathToHere, this);
+
+        if (parallel == null || !parallel.shouldFork(expected.size())) {
+            walk.compareEach(new LooseArrayComparison(actual, expected, pathToHere, looseComparison, signatures,
+                canJoin ? StructuralHashJoin.start(actual, expected, expectedHashes) : null));
+            return;
+        }
+
+        looseComparison.withExecutor(parallel.getPool());
+        Result result;
+        if (canJoin) {
+            StructuralHashJoin join = StructuralHashJoin.join(actual, expected, expectedHashes, expectedConditions);
+            if (join.allExpectedMatched()) {
+                return;
+            }
+            result = looseComparison.looseComparison(actual, join.getUnmatchedExpected(), join.getUnmatchedActual());
+        } else {
+            result = looseComparison.looseComparison(actual);
+        }
+
+        if (!result.isPassed()) {
+            walk.getFailures().add(Difference.unmatchedElements(pathToHere, result, expected));
+        }
+    }
+
+    private List<ArrayElementCondition> expectedConditions(ArrayNode expected, Location pathToHere) {
+        List<ArrayElementCondition> expectedConditions = new ArrayList<>(expected.size());
         for (int i = 0; i < expected.size(); i++) {
             expectedConditions.add(new ArrayComparisonElementCondition(expected.get(i), i, pathToHere, this));
         }
-        Result result = new LooseComparison(expectedConditions, () -> "Matches array at " + pathToHere.toString())
-            .looseComparison(actual);
-        if (!result.isPassed()) {
-            failures.add(result.getCondition() + " " + result.getWas());
+        return expectedConditions;
+    }
+
+    private static LooseComparison looseComparisonOf(List<ArrayElementCondition> expectedConditions,
+                                                     Location pathToHere) {
+        return new LooseComparison(expectedConditions, () -> "Matches array at " + pathToHere.toString());
+    }
+
+    /**
+     * Align the arrays, to report inserted and removed elements, and compare the aligned elements. The alignment
+     * is over structural hashes, so when a rule below the array could make elements with different hashes
+     * match, only arrays of different sizes, which can't match anyway, are aligned
+     * @param actual the actual array
+     * @param expected the expected array
+     * @param pathToHere the location of the arrays
+     * @param walk the walk
+     * @return <code>false</code> if the arrays should be compared index by index instead
+     */
+    private boolean performAlignedArrayComparison(ArrayNode actual, ArrayNode expected, Location pathToHere,
+                                                  TreeWalk walk) {
+        boolean hashesFollowEquality = !hasRuleBelow(pathToHere, TreeRule.CONDITION) &&
+            !hasRuleBelow(pathToHere, TreeRule.OBJECT_CONTAINS) &&
+            !hasRuleBelow(pathToHere, TreeRule.ARRAY_CONTAINS);
+        if (!hashesFollowEquality && actual.size() == expected.size()) {
+            return false;
         }
+        ExpectedPlan expectedPlan = getPlan();
+        return new AlignedArrayComparison(expectedPlan == null ? null : expectedPlan.elementHashes(expected))
+            .compare(actual, expected, pathToHere, walk);
     }
 
     private void performExactArrayComparison(ArrayNode actual, ArrayNode expected,
-                                             Location pathToHere, List<String> failures) {
-        for (int i = 0; i < Math.min(actual.size(), expected.size()); i++) {
-            compareTrees(actual.get(i), expected.get(i), pathToHere.child(Integer.toString(i)), failures);
-        }
+                                             Location pathToHere, TreeWalk walk) {
+        int size = Math.min(actual.size(), expected.size());
+        walk.compareEach(pathToHere, size, (i, next) ->
+            next.compare(actual.get(i), expected.get(i), pathToHere.element(i)));
     }
 
     /**
@@ -238,14 +819,19 @@ public class TreeComparisonCondition implements Condition {
      */
     @Override
     public String describe() {
-        return "equal to " + expected.toPrettyString() + explainRules();
+        if (isStreamable()) {
+            return "equal to json in " + expectedSource + explainRules();
+        }
+        ExpectedPlan expectedPlan = getPlan();
+        String expectedJson = expectedPlan == null ? expected.get().toPrettyString() : expectedPlan.describe();
+        return "equal to " + expectedJson + explainRules();
     }
 
     private String explainRules() {
         if (rules.isEmpty()) {
             return "";
         }
-        return "\nWith rules:" + rules.stream().map(PathRule::toString).collect(Collectors.joining("\n"));
+        return "\nWith rules:" + rules;
     }
 
     private static Set<String> toSet(Iterator<String> iterable) {
@@ -31,4 +31,16 @@ public enum TreeRule {
      * Skip over fields that are missing in the other object - implies keys in any order
      */
     OBJECT_CONTAINS,
+
+    /**
+     * Pair up the elements of an array by the values of key fields within them, rather than by position -
+     * implies any order
+     */
+    ARRAY_MATCHED_BY_KEY,
+
+    /**
+     * Keep the order of the array, but align its elements first, so elements inserted or removed are reported
+     * as such, rather than as differences in every element after them
+     */
+    ARRAY_ALIGNED,
 }
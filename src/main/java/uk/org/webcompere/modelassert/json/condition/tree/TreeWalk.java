@@ -0,0 +1,228 @@
+package uk.org.webcompere.modelassert.json.condition.tree;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Walks two trees in step on an explicit stack, rather than by recursion, so how deeply the documents can be
+ * nested is limited by the heap and not by the thread's stack. Comparing a node reports its own differences
+ * straight away, and pushes its children, which are compared one at a time, each with all of its own
+ * descendants before the next. This visits the nodes, and reports their differences, in the same order that
+ * recursion would.
+ * <br>
+ * Whether two elements of arrays in any order match is found by a {@link Trial} on the same stack, with failures
+ * of its own, so arrays in any order nested within each other don't recurse either.
+ * <br>
+ * When the comparison is parallel, the children of wide nodes are compared by a {@link ParallelComparison},
+ * with a walk of their own for each range of them.
+ */
+class TreeWalk {
+    private TreeComparisonCondition comparison;
+    private Location forkedFrom;
+    private Deque<Children> stack = new ArrayDeque<>();
+
+    // the failures of the innermost trial being run, or of the whole walk when there is none
+    private DifferenceCollector failures;
+    private Deque<Trial> trials = new ArrayDeque<>();
+
+    /**
+     * The children of a node, which are compared one at a time
+     */
+    @FunctionalInterface
+    interface Children {
+        /**
+         * Compare the next child, if there is one, by calling {@link TreeWalk#compare}
+         * @param walk the walk
+         * @return <code>false</code> when there are no more children
+         */
+        boolean compareNext(TreeWalk walk);
+    }
+
+    /**
+     * A comparison of two nodes, and everything below them, which only finds whether they are equal. Once it
+     * has found a difference, the rest of its nodes are skipped
+     */
+    static final class Trial implements Children {
+        private JsonNode actual;
+        private JsonNode expected;
+        private Location pathToHere;
+        private DifferenceCollector failures = DifferenceCollector.firstDifferenceOnly();
+        private DifferenceCollector outerFailures;
+
+        private Trial(JsonNode actual, JsonNode expected, Location pathToHere) {
+            this.actual = actual;
+            this.expected = expected;
+            this.pathToHere = pathToHere;
+        }
+
+        @Override
+        public boolean compareNext(TreeWalk walk) {
+            if (outerFailures == null) {
+                outerFailures = walk.failures;
+                walk.failures = failures;
+                walk.trials.push(this);
+                walk.compare(actual, expected, pathToHere);
+                return true;
+            }
+            walk.failures = outerFailures;
+            walk.trials.pop();
+            return false;
+        }
+
+        /**
+         * Were the nodes found to be equal - only known once the trial has been run
+         * @return <code>true</code> if there were no differences
+         */
+        boolean isPassed() {
+            return failures.isEmpty();
+        }
+    }
+
+    /**
+     * A child which is found by its position
+     */
+    @FunctionalInterface
+    interface IndexedChild {
+        /**
+         * Compare the child at this position, or do nothing if there isn't one to compare
+         * @param index the position
+         * @param walk the walk
+         */
+        void compare(int index, TreeWalk walk);
+    }
+
+    /**
+     * Construct a walk
+     * @param comparison the comparison, which compares each node
+     * @param failures the failures to add to
+     */
+    TreeWalk(TreeComparisonCondition comparison, DifferenceCollector failures) {
+        this(comparison, failures, null);
+    }
+
+    /**
+     * Construct a walk of some of the children of a node, which have been forked from another walk
+     * @param comparison the comparison, which compares each node
+     * @param failures the failures to add to
+     * @param forkedFrom the location of the node whose children are compared by this walk
+     */
+    TreeWalk(TreeComparisonCondition comparison, DifferenceCollector failures, Location forkedFrom) {
+        this.comparison = comparison;
+        this.failures = failures;
+        this.forkedFrom = forkedFrom;
+    }
+
+    /**
+     * Children found by position
+     * @param count how many positions there are
+     * @param child compares the child at each position
+     * @return the children
+     */
+    private static Children indexed(int count, IndexedChild child) {
+        int[] next = {0};
+        return walk -> {
+            if (next[0] >= count) {
+                return false;
+            }
+            child.compare(next[0]++, walk);
+            return true;
+        };
+    }
+
+    /**
+     * Compare a pair of nodes - this compares the nodes themselves, and any children they push are compared
+     * by {@link #run()}
+     * @param actual the actual node
+     * @param expected the expected node
+     * @param pathToHere the location of the nodes
+     */
+    void compare(JsonNode actual, JsonNode expected, Location pathToHere) {
+        comparison.compareNode(actual, expected, pathToHere, this);
+    }
+
+    /**
+     * Find whether two nodes are equal, after the node being compared has finished, without adding their
+     * differences to the failures
+     * @param actual the actual node
+     * @param expected the expected node
+     * @param pathToHere the location of the nodes
+     * @return the trial, which has its result once the walk has returned to whatever pushed it
+     */
+    Trial trial(JsonNode actual, JsonNode expected, Location pathToHere) {
+        Trial trial = new Trial(actual, expected, pathToHere);
+        stack.push(trial);
+        return trial;
+    }
+
+    /**
+     * Compare the children of the node being compared, after it has finished
+     * @param children the children
+     */
+    void compareEach(Children children) {
+        stack.push(children);
+    }
+
+    /**
+     * Compare the children of the node being compared, after it has finished, in parallel if there are enough
+     * of them and the comparison is parallel
+     * @param pathToHere the location of the node
+     * @param count how many children there are
+     * @param child compares the child at each position
+     */
+    void compareEach(Location pathToHere, int count, IndexedChild child) {
+        if (!wouldFork(count)) {
+            compareEach(indexed(count, child));
+            return;
+        }
+        stack.push(walk -> {
+            comparison.getParallel().compare(comparison, pathToHere, count, child, failures);
+            return false;
+        });
+    }
+
+    /**
+     * Would a node with this many children have them compared in parallel
+     * @param count how many children
+     * @return <code>true</code> if the comparison is parallel and the node is wide enough
+     */
+    boolean wouldFork(int count) {
+        ParallelComparison parallel = comparison.getParallel();
+        return parallel != null && parallel.shouldFork(count);
+    }
+
+    /**
+     * Is this one of the children forked from another walk, rather than a descendant of one
+     * @param pathToHere the location of the node
+     * @return <code>true</code> if this walk was forked for the node's parent
+     */
+    boolean isForkedChild(Location pathToHere) {
+        return forkedFrom != null && pathToHere.size() == forkedFrom.size() + 1;
+    }
+
+    /**
+     * Compare all the children pushed so far, and their descendants, until there are none left or the
+     * failures are full. When a trial's failures are full, only the rest of that trial is skipped
+     */
+    void run() {
+        while (!stack.isEmpty()) {
+            if (failures.isFull()) {
+                if (trials.isEmpty()) {
+                    return;
+                }
+                Trial trial = trials.peek();
+                while (stack.peek() != trial) {
+                    stack.pop();
+                }
+            }
+            if (!stack.peek().compareNext(this)) {
+                stack.pop();
+            }
+        }
+    }
+
+    DifferenceCollector getFailures() {
+        return failures;
+    }
+}
@@ -7,6 +7,8 @@ import java.util.List;
 import static uk.org.webcompere.modelassert.json.condition.tree.RegexPathMatcher.ANY_FIELD_PATTERN;
 
 public class WildCardPathMatcher implements PathMatcher {
+    private static final RegexPathMatcher ANY_FIELD = new RegexPathMatcher(ANY_FIELD_PATTERN);
+
     private PathWildCard pathWildCard;
 
     public WildCardPathMatcher(PathWildCard pathWildCard) {
@@ -17,7 +19,7 @@ public class WildCardPathMatcher implements PathMatcher {
     public boolean matches(Location location, List<PathMatcher> remaining) {
         switch (pathWildCard) {
           case ANY:
-              return new RegexPathMatcher(ANY_FIELD_PATTERN).matches(location, remaining);
+              return ANY_FIELD.matches(location, remaining);
           case ANY_SUBTREE:
               Location currentLocation = location;
               if (remaining.isEmpty()) {
@@ -37,6 +39,38 @@ public class WildCardPathMatcher implements PathMatcher {
         }
     }
 
+    @Override
+    public boolean matchesEnd(Location location, List<PathMatcher> preceding) {
+        switch (pathWildCard) {
+          case ANY:
+              return !location.isEmpty() && PathMatcher.matchesTheStart(location.getParent(), preceding);
+          case ANY_SUBTREE:
+              Location currentLocation = location;
+              if (preceding.isEmpty()) {
+                  return true;
+              }
+              while (!PathMatcher.matchesTheStart(currentLocation, preceding)) {
+                  if (currentLocation.isEmpty()) {
+                      return false;
+                  }
+
+                  // otherwise, the subtree can absorb this level of the location and try again
+                  currentLocation = currentLocation.getParent();
+              }
+              return true;
+          default:
+              return false;
+        }
+    }
+
+    /**
+     * Does this match any number of levels of the tree, including none
+     * @return <code>true</code> for {@link PathWildCard#ANY_SUBTREE}
+     */
+    boolean isAnySubtree() {
+        return pathWildCard == PathWildCard.ANY_SUBTREE;
+    }
+
     @Override
     public String toString() {
         return pathWildCard.toString();
@@ -18,7 +18,8 @@ public interface TreeComparisonDsl<A> extends Satisfies<A>, IsEqualToDsl<A> {
     }
 
     default A isNotEqualTo(TreeComparisonCondition condition) {
-        return satisfies(not(condition));
+        // only whether there's a difference matters, which is found without changing the condition
+        return satisfies(not(condition.copy().failFast()));
     }
 
     default WhereDsl<A> where() {
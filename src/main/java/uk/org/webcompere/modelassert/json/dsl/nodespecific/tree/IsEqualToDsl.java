@@ -54,7 +54,7 @@ public interface IsEqualToDsl<A> {
      * @return the assertion for fluent comparison
      */
     default A isEqualTo(File json) {
-        return isEqualTo(TreeComparisonCondition.isEqualTo(json, jsonFileProvider()));
+        return isEqualTo(TreeComparisonCondition.isEqualTo(json, jsonFileProvider(), jsonFileStreamProvider()));
     }
 
     /**
@@ -63,7 +63,7 @@ public interface IsEqualToDsl<A> {
      * @return the assertion for fluent comparison
      */
     default A isEqualTo(Path json) {
-        return isEqualTo(TreeComparisonCondition.isEqualTo(json, jsonPathProvider()));
+        return isEqualTo(TreeComparisonCondition.isEqualTo(json, jsonPathProvider(), jsonPathStreamProvider()));
     }
 
     /**
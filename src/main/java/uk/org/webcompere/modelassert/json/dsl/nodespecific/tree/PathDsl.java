@@ -8,6 +8,7 @@ import uk.org.webcompere.modelassert.json.condition.tree.TreeRule;
 import uk.org.webcompere.modelassert.json.dsl.JsonNodeAssertDsl;
 
 import static uk.org.webcompere.modelassert.json.condition.tree.TreeRule.*;
+import static uk.org.webcompere.modelassert.json.dsl.nodespecific.tree.WhereDsl.toList;
 
 /**
  * Path DSL context within the {@link WhereDsl}
@@ -86,6 +87,28 @@ public class PathDsl<A> implements JsonNodeAssertDsl<WhereDsl<A>> {
         return whereDsl.pathRule(new PathRule(pathMatch, TreeRule.ARRAY_CONTAINS));
     }
 
+    /**
+     * Pair up the elements of the array at this position in the tree by the values of key fields, rather than
+     * by position, and compare only the elements which pair up. Elements which are only in one of the arrays
+     * are reported by their keys
+     * @param keyField the field which identifies an element
+     * @param moreKeyFields further fields, if the key is made of several
+     * @return <code>this</code> for fluent calling
+     */
+    public WhereDsl<A> arrayMatchedBy(String keyField, String... moreKeyFields) {
+        return whereDsl.pathRule(new PathRule(pathMatch, toList(keyField, moreKeyFields)));
+    }
+
+    /**
+     * Keep the order of the array at this position in the tree, but align its elements before comparing them,
+     * so elements inserted or removed are reported as such, rather than as differences in every element
+     * after them. This only changes how the differences are reported, not whether the arrays match
+     * @return <code>this</code> for fluent calling
+     */
+    public WhereDsl<A> arrayAligned() {
+        return whereDsl.pathRule(new PathRule(pathMatch, TreeRule.ARRAY_ALIGNED));
+    }
+
     /**
      * Ignore everything at this path
      * @return the {@link WhereDsl} for fluent calling, with this path ignored
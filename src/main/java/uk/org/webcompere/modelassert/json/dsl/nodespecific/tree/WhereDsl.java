@@ -1,11 +1,16 @@
 package uk.org.webcompere.modelassert.json.dsl.nodespecific.tree;
 
 import uk.org.webcompere.modelassert.json.PathWildCard;
+import uk.org.webcompere.modelassert.json.condition.tree.PathMatch;
 import uk.org.webcompere.modelassert.json.condition.tree.PathRule;
+import uk.org.webcompere.modelassert.json.condition.tree.RuleSet;
 import uk.org.webcompere.modelassert.json.condition.tree.TreeComparisonCondition;
 import uk.org.webcompere.modelassert.json.condition.tree.TreeRule;
 import uk.org.webcompere.modelassert.json.dsl.Satisfies;
 
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.function.UnaryOperator;
@@ -19,7 +24,15 @@ import static uk.org.webcompere.modelassert.json.condition.Not.not;
  */
 public class WhereDsl<A> implements IsEqualToDsl<A> {
     private Satisfies<A> coreAssertion;
+    private RuleSet ruleSet = RuleSet.empty();
     private List<PathRule> rules = new LinkedList<>();
+    private boolean streamed;
+    private boolean compiled;
+    private boolean parallel;
+    private Path spillDirectory;
+    private long spillMemoryBudget;
+    private int maxFailures = Integer.MAX_VALUE;
+    private boolean summariseFailures;
 
     /**
      * Construct with the assertion to return to
@@ -61,6 +74,107 @@ public class WhereDsl<A> implements IsEqualToDsl<A> {
         return pathRule(new PathRule(TreeRule.ARRAY_CONTAINS));
     }
 
+    /**
+     * Pair up the elements of arrays, everywhere, by the values of key fields rather than by position, and
+     * compare only the elements which pair up. Elements which are only in one of the arrays are reported by
+     * their keys. This is usually better applied to a specific path with {@link PathDsl#arrayMatchedBy}
+     * @param keyField the field which identifies an element
+     * @param moreKeyFields further fields, if the key is made of several
+     * @return <code>this</code> for fluent calling
+     */
+    public WhereDsl<A> arrayMatchedBy(String keyField, String... moreKeyFields) {
+        return pathRule(new PathRule(PathMatch.all(), toList(keyField, moreKeyFields)));
+    }
+
+    /**
+     * Keep the order of arrays, everywhere, but align their elements before comparing them, so elements
+     * inserted or removed are reported as such, rather than as differences in every element after them
+     * @return <code>this</code> for fluent calling
+     */
+    public WhereDsl<A> arrayAligned() {
+        return pathRule(new PathRule(TreeRule.ARRAY_ALIGNED));
+    }
+
+    /**
+     * Compare a file with a file by streaming them both, rather than loading them into memory. Only the
+     * parts of the tree where rules need to see the whole subtree, such as arrays in any order, are loaded.
+     * This applies when the actual is from <code>assertJson</code> with a {@link java.io.File} or
+     * {@link java.nio.file.Path} and the expected is also a file or path
+     * @return <code>this</code> for fluent calling
+     */
+    public WhereDsl<A> streamed() {
+        this.streamed = true;
+        return this;
+    }
+
+    /**
+     * Compare the children of wide objects and arrays in parallel, on the common fork/join pool. The failures
+     * are reported in the same order as comparing on one thread. Any conditions used must be safe to test
+     * from many threads
+     * @return <code>this</code> for fluent calling
+     */
+    public WhereDsl<A> parallel() {
+        this.parallel = true;
+        return this;
+    }
+
+    /**
+     * When {@link #streamed()}, compare arrays in any order by spilling their elements to files, rather than
+     * loading them, so arrays too large for memory can be compared. Elements with no equal on the other side
+     * are reported with their indices. This applies to arrays with no conditions or contains rules below them
+     * @param directory where to write the spill files, which are deleted afterwards
+     * @param memoryBudget roughly how many bytes of json elements to load at once
+     * @return <code>this</code> for fluent calling
+     */
+    public WhereDsl<A> spillingTo(Path directory, long memoryBudget) {
+        this.spillDirectory = directory;
+        this.spillMemoryBudget = memoryBudget;
+        return this;
+    }
+
+    /**
+     * Work out what the comparison needs to know about the expected json once, and reuse it each time the
+     * assertion is tested. This suits an assertion which is tested many times, such as one used as a Mockito
+     * argument matcher with <code>toArgumentMatcher</code>
+     * @return <code>this</code> for fluent calling
+     */
+    public WhereDsl<A> compiled() {
+        this.compiled = true;
+        return this;
+    }
+
+    /**
+     * Stop comparing at the first difference, and report only that. Useful for large documents
+     * which may be very different
+     * @return <code>this</code> for fluent calling
+     */
+    public WhereDsl<A> failFast() {
+        return maxFailures(1);
+    }
+
+    /**
+     * Stop comparing once a number of differences have been found
+     * @param maxFailures the most differences to report - at least 1
+     * @return <code>this</code> for fluent calling
+     */
+    public WhereDsl<A> maxFailures(int maxFailures) {
+        if (maxFailures < 1) {
+            throw new IllegalArgumentException("Must allow at least one failure");
+        }
+        this.maxFailures = maxFailures;
+        return this;
+    }
+
+    /**
+     * Collapse differences of the same kind, at paths which differ only by array index, into a single
+     * line of the failure report - e.g. <code>1,000 similar value differences under /items/&#42;/price</code>
+     * @return <code>this</code> for fluent calling
+     */
+    public WhereDsl<A> summariseFailures() {
+        this.summariseFailures = true;
+        return this;
+    }
+
     /**
      * Add common configuration to the where dsl
      * @param configurer the configurer to use
@@ -70,6 +184,38 @@ public class WhereDsl<A> implements IsEqualToDsl<A> {
         return configurer.apply(this);
     }
 
+    /**
+     * Add a prepared {@link RuleSet} to the where dsl. The rule set can be built once, with
+     * {@link #ruleSet(UnaryOperator)}, and shared between assertions
+     * @param ruleSet the rules to add
+     * @return the {@link WhereDsl} for further customisation
+     */
+    public WhereDsl<A> configuredBy(RuleSet ruleSet) {
+        this.ruleSet = toRuleSet().with(ruleSet);
+        this.rules = new LinkedList<>();
+        return this;
+    }
+
+    /**
+     * Build a reusable {@link RuleSet} from common configuration - the result can be provided to
+     * {@link #configuredBy(RuleSet)} in any number of assertions without re-running the configurer
+     * @param configurer the configurer which adds the rules
+     * @return a new {@link RuleSet}
+     */
+    public static RuleSet ruleSet(UnaryOperator<WhereDsl<Void>> configurer) {
+        return configurer.apply(new WhereDsl<>(condition -> {
+            throw new UnsupportedOperationException("Cannot make assertions while building a rule set");
+        })).toRuleSet();
+    }
+
+    /**
+     * Convert the rules added so far into a {@link RuleSet}
+     * @return the rules of this where dsl
+     */
+    public RuleSet toRuleSet() {
+        return ruleSet.with(rules);
+    }
+
     /**
      * Add a path rule to this, and return this
      * @param pathRule the rule
@@ -107,12 +253,44 @@ public class WhereDsl<A> implements IsEqualToDsl<A> {
 
     @Override
     public A isEqualTo(TreeComparisonCondition condition) {
-        return coreAssertion.satisfies(condition.withRules(rules));
+        return coreAssertion.satisfies(configure(condition));
     }
 
     @Override
     public A isNotEqualTo(TreeComparisonCondition condition) {
-        return coreAssertion.satisfies(not(condition.withRules(rules)));
+        // only whether there's a difference matters, so there's no need to find them all - a copy stops at
+        // the first, so the condition can still be used to find every difference
+        return coreAssertion.satisfies(not(configure(condition).copy().failFast()));
+    }
+
+    static List<String> toList(String first, String... rest) {
+        List<String> list = new ArrayList<>();
+        list.add(first);
+        list.addAll(Arrays.asList(rest));
+        return list;
+    }
+
+    private TreeComparisonCondition configure(TreeComparisonCondition condition) {
+        condition.withRules(toRuleSet());
+        if (streamed) {
+            condition.streamed();
+        }
+        if (summariseFailures) {
+            condition.summarised();
+        }
+        if (compiled) {
+            condition.compiled();
+        }
+        if (parallel) {
+            condition.parallel();
+        }
+        if (spillDirectory != null) {
+            condition.spillingTo(spillDirectory, spillMemoryBudget);
+        }
+        if (maxFailures != Integer.MAX_VALUE) {
+            condition.withMaxFailures(maxFailures);
+        }
+        return condition;
     }
 
 }
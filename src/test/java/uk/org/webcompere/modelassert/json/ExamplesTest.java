@@ -6,6 +6,7 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.opentest4j.AssertionFailedError;
 import uk.org.webcompere.modelassert.json.condition.HasSize;
+import uk.org.webcompere.modelassert.json.condition.tree.RuleSet;
 import uk.org.webcompere.modelassert.json.dsl.JsonNodeAssertDsl;
 import uk.org.webcompere.modelassert.json.dsl.nodespecific.tree.WhereDsl;
 
@@ -303,6 +304,29 @@ class ExamplesTest {
         return where.path(ANY_SUBTREE, "guid").matches(GUID_PATTERN);
     }
 
+    private static final RuleSet IGNORE_GUIDS = WhereDsl.ruleSet(ExamplesTest::ignoreGuids);
+
+    @Test
+    void matchesAnyGuidUsingSharedRuleSet() {
+        assertJson("{\"a\":{\"guid\":\"fa82142d-13d2-49c4-9878-619c90a9f986\"}," +
+            "\"b\":{\"guid\":\"96734f31-33c3-4e50-a72b-49bf2d990e33\"}}")
+            .where()
+                .configuredBy(IGNORE_GUIDS)
+            .isEqualTo("{\"a\":{\"guid\":\"?\"}," +
+                "\"b\":{\"guid\":\"?\"}}");
+    }
+
+    @Test
+    void sharedRuleSetCanBeCombinedWithFurtherRules() {
+        assertJson("{\"b\":{\"guid\":\"96734f31-33c3-4e50-a72b-49bf2d990e33\"}," +
+            "\"a\":{\"guid\":\"fa82142d-13d2-49c4-9878-619c90a9f986\"}}")
+            .where()
+                .configuredBy(IGNORE_GUIDS)
+                .keysInAnyOrder()
+            .isEqualTo("{\"a\":{\"guid\":\"?\"}," +
+                "\"b\":{\"guid\":\"?\"}}");
+    }
+
     @Test
     void matchesGuidsUsingAt() {
         assertJson("{\"a\":{\"guid\":\"fa82142d-13d2-49c4-9878-619c90a9f986\"}," +
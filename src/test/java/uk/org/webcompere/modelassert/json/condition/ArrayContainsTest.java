@@ -0,0 +1,72 @@
+package uk.org.webcompere.modelassert.json.condition;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import uk.org.webcompere.modelassert.json.Condition;
+import uk.org.webcompere.modelassert.json.Result;
+import uk.org.webcompere.modelassert.json.condition.array.LooseComparison;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.org.webcompere.modelassert.json.JsonProviders.jsonStringProvider;
+
+class ArrayContainsTest {
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+        "[1, 2, 3]|true",
+        "[3, 2, 1]|true",
+        "[1, 2]|false",
+        "[1.0, 2, 3]|false",
+        "[\"1\", 2, 3]|false",
+        "[{\"a\":1}, 2, [3], 1, 3]|true"
+    })
+    void valuesAreFoundWithTheSameLooseTypesAsEachCondition(String array, boolean passes) {
+        assertThat(ArrayContains.containsValues(1, 2, 3).test(json(array)).isPassed()).isEqualTo(passes);
+    }
+
+    @Test
+    void eachValueNeedsAnElementOfItsOwn() {
+        Result result = ArrayContains.containsValues("a", "b", "a", "a").test(json("[\"a\", \"b\", \"a\"]"));
+
+        assertThat(result.isPassed()).isFalse();
+        assertThat(result.getWas()).isEqualTo("No matches for:\nIndex 3: is equal to a");
+    }
+
+    @Test
+    void nullsBooleansAndOtherTypesAreCompared() {
+        assertThat(ArrayContains.containsValues(null, true, 2L).test(json("[true, null, 2]")).isPassed())
+            .isFalse();
+        assertThat(ArrayContains.containsValues(null, true, 2).test(json("[true, null, 2]")).isPassed())
+            .isTrue();
+        assertThat(ArrayContains.containsValues(new Object()).test(json("[{}]")).isPassed())
+            .isFalse();
+    }
+
+    @Test
+    void countingValuesGivesTheSameResultAsMatchingEachOne() {
+        Object[] values = {1, "x", null, false, 2.5, "x", 7L};
+        JsonNode array = json("[\"x\", 2.5, 1, false, 3, null, 7]");
+        List<Condition> conditions = Arrays.stream(values)
+            .map(HasValueWithLooseType::new)
+            .collect(Collectors.toList());
+
+        Result matched = LooseComparison.fromConditions(conditions, () -> "Array with values")
+            .looseComparison((ArrayNode) array);
+        Result counted = ArrayContains.containsValues(values[0], Arrays.copyOfRange(values, 1, values.length))
+            .test(array);
+
+        assertThat(counted.isPassed()).isEqualTo(matched.isPassed());
+        assertThat(counted.getWas()).isEqualTo(matched.getWas());
+    }
+
+    private static JsonNode json(String json) {
+        return jsonStringProvider().jsonFrom(json);
+    }
+}
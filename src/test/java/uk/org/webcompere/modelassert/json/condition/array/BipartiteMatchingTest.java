@@ -0,0 +1,57 @@
+package uk.org.webcompere.modelassert.json.condition.array;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BipartiteMatchingTest {
+
+    @Test
+    void conditionsWithNoCandidatesAreUnmatched() {
+        int[][] candidates = {{0}, {}, {1}};
+
+        assertThat(BipartiteMatching.maximumMatching(candidates, 2)).containsExactly(0, -1, 1);
+    }
+
+    @Test
+    void earlierChoiceIsRevisedToMatchEveryCondition() {
+        // pairing the first condition with the first element would leave the second condition unmatched
+        int[][] candidates = {{0, 1}, {0}};
+
+        assertThat(BipartiteMatching.maximumMatching(candidates, 2)).containsExactly(1, 0);
+    }
+
+    @Test
+    void overlappingCandidatesAreAllMatchedWhenPossible() {
+        int[][] candidates = {{0, 1, 2}, {0, 1}, {0}};
+
+        assertThat(BipartiteMatching.maximumMatching(candidates, 3)).containsExactly(2, 1, 0);
+    }
+
+    @Test
+    void moreConditionsThanElementsLeavesSomeUnmatched() {
+        int[][] candidates = {{0}, {0}, {0}};
+
+        int[] matching = BipartiteMatching.maximumMatching(candidates, 1);
+
+        assertThat(matching).containsOnlyOnce(0);
+        assertThat(matching).containsOnly(0, -1);
+    }
+
+    @Test
+    void longAugmentingPathsDoNotExhaustTheStack() {
+        // condition i can use element i or i + 1, and the greedy pass pairs each with element i, leaving
+        // the last condition needing every other pair to shift along
+        int size = 50_000;
+        int[][] candidates = new int[size + 1][];
+        for (int i = 0; i < size; i++) {
+            candidates[i] = new int[] {i, i + 1};
+        }
+        candidates[size] = new int[] {0};
+
+        int[] matching = BipartiteMatching.maximumMatching(candidates, size + 1);
+
+        assertThat(matching).doesNotContain(-1);
+        assertThat(matching[size]).isZero();
+    }
+}
@@ -0,0 +1,155 @@
+package uk.org.webcompere.modelassert.json.condition.array;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import uk.org.webcompere.modelassert.json.Condition;
+import uk.org.webcompere.modelassert.json.Result;
+import uk.org.webcompere.modelassert.json.condition.HasValueWithLooseType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.org.webcompere.modelassert.json.JsonProviders.jsonStringProvider;
+
+class LooseComparisonTest {
+    private static ExecutorService executor;
+
+    @BeforeAll
+    static void beforeAll() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterAll
+    static void afterAll() {
+        executor.shutdown();
+    }
+
+    @Test
+    void testingOnAnExecutorMatchesTheSameAsOnOneThread() {
+        List<Condition> conditions = new ArrayList<>();
+        List<String> elements = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            conditions.add(new HasValueWithLooseType(i % 50));
+            elements.add(Integer.toString(i % 40));
+        }
+        Collections.shuffle(elements);
+        ArrayNode array = (ArrayNode) jsonStringProvider().jsonFrom("[" + String.join(",", elements) + "]");
+
+        Result sequential = LooseComparison.fromConditions(conditions, () -> "values").looseComparison(array);
+        Result parallel = LooseComparison.fromConditions(conditions, () -> "values")
+            .withExecutor(executor)
+            .looseComparison(array);
+
+        assertThat(parallel.isPassed()).isFalse();
+        assertThat(parallel.getWas()).isEqualTo(sequential.getWas());
+    }
+
+    @Test
+    void allConditionsCanBeMetOnAnExecutor() {
+        List<Condition> conditions = new ArrayList<>();
+        List<String> elements = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            conditions.add(new HasValueWithLooseType(99 - i));
+            elements.add(Integer.toString(i));
+        }
+        ArrayNode array = (ArrayNode) jsonStringProvider().jsonFrom("[" + String.join(",", elements) + "]");
+
+        assertThat(LooseComparison.fromConditions(conditions, () -> "values")
+            .withExecutor(executor)
+            .looseComparison(array)
+            .isPassed()).isTrue();
+    }
+
+    @Test
+    void conditionsAreSplitForTheParallelismGiven() {
+        AtomicInteger tasks = new AtomicInteger();
+        Executor counting = task -> {
+            tasks.incrementAndGet();
+            task.run();
+        };
+
+        assertThat(LooseComparison.fromConditions(valuesUpTo(64), () -> "values")
+            .withExecutor(counting, 2)
+            .looseComparison(arrayUpTo(64))
+            .isPassed()).isTrue();
+        assertThat(tasks.get()).isEqualTo(8);
+    }
+
+    @Test
+    void conditionsAreSplitForTheParallelismOfAForkJoinPool() {
+        AtomicInteger tasks = new AtomicInteger();
+        ForkJoinPool pool = new ForkJoinPool(2) {
+            @Override
+            public void execute(Runnable task) {
+                tasks.incrementAndGet();
+                super.execute(task);
+            }
+        };
+
+        try {
+            assertThat(LooseComparison.fromConditions(valuesUpTo(64), () -> "values")
+                .withExecutor(pool)
+                .looseComparison(arrayUpTo(64))
+                .isPassed()).isTrue();
+            assertThat(tasks.get()).isEqualTo(8);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void parallelismMustBePositive() {
+        assertThatThrownBy(() -> LooseComparison.fromConditions(valuesUpTo(1), () -> "values")
+            .withExecutor(executor, 0))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void conditionWhichFailsOnAnotherThreadFailsTheComparison() {
+        Condition failing = new Condition() {
+            @Override
+            public Result test(JsonNode json) {
+                throw new IllegalStateException("broken");
+            }
+
+            @Override
+            public String describe() {
+                return "broken";
+            }
+        };
+        ArrayNode array = (ArrayNode) jsonStringProvider().jsonFrom("[1, 2]");
+
+        assertThatThrownBy(() -> LooseComparison.fromConditions(Collections.nCopies(2, failing), () -> "values")
+            .withExecutor(executor)
+            .looseComparison(array))
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessage("broken");
+    }
+
+    private static List<Condition> valuesUpTo(int count) {
+        List<Condition> conditions = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            conditions.add(new HasValueWithLooseType(i));
+        }
+        return conditions;
+    }
+
+    private static ArrayNode arrayUpTo(int count) {
+        List<String> elements = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            elements.add(Integer.toString(i));
+        }
+        return (ArrayNode) jsonStringProvider().jsonFrom("[" + String.join(",", elements) + "]");
+    }
+}
@@ -0,0 +1,90 @@
+package uk.org.webcompere.modelassert.json.condition.tree;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.Test;
+import uk.org.webcompere.modelassert.json.condition.Ignore;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.org.webcompere.modelassert.json.JsonProviders.jsonStringProvider;
+import static uk.org.webcompere.modelassert.json.PathWildCard.ANY_SUBTREE;
+
+class AlignedArrayComparisonTest {
+
+    @Test
+    void equalSequencesAlignIndexByIndex() {
+        assertThat(AlignedArrayComparison.align(hashes(1, 2, 3), hashes(1, 2, 3), 10))
+            .hasValueSatisfying(alignment -> assertThat(alignment).containsExactly(0, 1, 2));
+    }
+
+    @Test
+    void insertionAtTheStartShiftsTheRest() {
+        assertThat(AlignedArrayComparison.align(hashes(0, 1, 2, 3), hashes(1, 2, 3), 10))
+            .hasValueSatisfying(alignment -> assertThat(alignment).containsExactly(1, 2, 3));
+    }
+
+    @Test
+    void removalsAreNotAligned() {
+        assertThat(AlignedArrayComparison.align(hashes(1, 3, 5), hashes(1, 2, 3, 4, 5), 10))
+            .hasValueSatisfying(alignment -> assertThat(alignment).containsExactly(0, -1, 1, -1, 2));
+    }
+
+    @Test
+    void removalAndInsertionAtTheSamePointArePaired() {
+        assertThat(AlignedArrayComparison.align(hashes(1, 9, 3, 4, 8), hashes(1, 2, 3, 4, 5, 6), 10))
+            .hasValueSatisfying(alignment -> assertThat(alignment).containsExactly(0, 1, 2, 3, 4, -1));
+    }
+
+    @Test
+    void changesInTheMiddleOfLongSequencesAreFound() {
+        long[] expected = LongStream.range(0, 10_000).toArray();
+        long[] actual = LongStream.range(0, 10_001).map(i -> i < 5_000 ? i : i - 1).toArray();
+        actual[5_000] = -1;
+
+        int[] alignment = AlignedArrayComparison.align(actual, expected, 10).orElseThrow(AssertionError::new);
+        assertThat(alignment[4_999]).isEqualTo(4_999);
+        assertThat(alignment[5_000]).isEqualTo(5_001);
+        assertThat(alignment[9_999]).isEqualTo(10_000);
+    }
+
+    @Test
+    void tooManyEditsAreNotAligned() {
+        assertThat(AlignedArrayComparison.align(hashes(1, 2, 3, 4), hashes(5, 6, 7, 8), 3)).isEmpty();
+        assertThat(AlignedArrayComparison.align(hashes(1, 2, 3, 4), hashes(5, 6, 7, 8), 8)).isPresent();
+    }
+
+    @Test
+    void arraysWithConditionsBelowThemPassWhenEqualIndexByIndex() {
+        TreeComparisonCondition comparison = TreeComparisonCondition
+            .isEqualTo(json("[{\"id\":1, \"v\":\"a\"}, {\"id\":2, \"v\":\"a\"}]"))
+            .withRules(Arrays.asList(new PathRule(TreeRule.ARRAY_ALIGNED),
+                new PathRule(new PathMatch(ANY_SUBTREE, "id"), new Ignore())));
+
+        assertThat(comparison.test(json("[{\"id\":2, \"v\":\"a\"}, {\"id\":3, \"v\":\"a\"}]")).isPassed()).isTrue();
+        assertThat(comparison.test(json("[{\"id\":2, \"v\":\"a\"}]")).isPassed()).isFalse();
+    }
+
+    @Test
+    void veryDifferentArraysAreComparedIndexByIndex() {
+        DifferenceCollector failures = new DifferenceCollector(Integer.MAX_VALUE);
+        JsonNode expected = json(Arrays.toString(LongStream.range(0, 2_000).toArray()));
+        JsonNode actual = json(Arrays.toString(LongStream.range(0, 2_000).map(i -> -i - 1).toArray()));
+        TreeComparisonCondition.isEqualTo(expected)
+            .withRules(Collections.singletonList(new PathRule(TreeRule.ARRAY_ALIGNED)))
+            .compareTrees(actual, expected, new Location(), failures);
+
+        assertThat(failures.getDifferences()).hasSize(2_000)
+            .allMatch(difference -> difference.getKind() == Difference.Kind.DIFFERENT_VALUE);
+    }
+
+    private static long[] hashes(long... hashes) {
+        return hashes;
+    }
+
+    private static JsonNode json(String json) {
+        return jsonStringProvider().jsonFrom(json);
+    }
+}
@@ -0,0 +1,93 @@
+package uk.org.webcompere.modelassert.json.condition.tree;
+
+import com.fasterxml.jackson.databind.node.IntNode;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DifferenceCollectorTest {
+
+    @Test
+    void collectsUntilFull() {
+        DifferenceCollector collector = new DifferenceCollector(2);
+        collector.add(valueDifference(0));
+        assertThat(collector.isFull()).isFalse();
+
+        collector.add(valueDifference(1));
+        collector.add(valueDifference(2));
+
+        assertThat(collector.isFull()).isTrue();
+        assertThat(collector.size()).isEqualTo(2);
+        assertThat(collector.describe(false))
+            .isEqualTo("/items/0/price value is different: expected 1, actual 0\n" +
+                "/items/1/price value is different: expected 1, actual 1\n" +
+                "Stopped comparing at the limit of 2 differences");
+    }
+
+    @Test
+    void insertingBeforeOthersWhenFullDropsTheLast() {
+        DifferenceCollector collector = new DifferenceCollector(2);
+        collector.add(valueDifference(0));
+        collector.add(valueDifference(1));
+
+        collector.add(0, Difference.arraySize(new Location().child("items"), 3, 2));
+
+        assertThat(collector.getDifferences())
+            .extracting(Difference::getKind)
+            .containsExactly(Difference.Kind.ARRAY_SIZE, Difference.Kind.DIFFERENT_VALUE);
+    }
+
+    @Test
+    void exactlyReachingTheLimitDoesNotMentionIt() {
+        DifferenceCollector collector = new DifferenceCollector(2);
+        collector.add(valueDifference(0));
+        collector.add(valueDifference(1));
+
+        // still looking for one more, to know whether any are left out
+        assertThat(collector.isFull()).isFalse();
+        assertThat(collector.describe(false))
+            .isEqualTo("/items/0/price value is different: expected 1, actual 0\n" +
+                "/items/1/price value is different: expected 1, actual 1");
+    }
+
+    @Test
+    void summaryOnlyCollapsesArrayIndices() {
+        DifferenceCollector collector = new DifferenceCollector(Integer.MAX_VALUE);
+        collector.add(Difference.differentValue(new Location().child("codes").child("404"),
+            new IntNode(1), new IntNode(2)));
+        collector.add(Difference.differentValue(new Location().child("codes").child("500"),
+            new IntNode(1), new IntNode(2)));
+
+        assertThat(collector.describe(true))
+            .isEqualTo("/codes/404 value is different: expected 1, actual 2\n" +
+                "/codes/500 value is different: expected 1, actual 2");
+    }
+
+    @Test
+    void firstDifferenceOnlyDoesNotMentionTheLimit() {
+        DifferenceCollector collector = DifferenceCollector.firstDifferenceOnly();
+        collector.add(valueDifference(0));
+
+        assertThat(collector.describe(false))
+            .isEqualTo("/items/0/price value is different: expected 1, actual 0");
+    }
+
+    @Test
+    void summaryCollapsesDifferencesUnderTheSameArray() {
+        DifferenceCollector collector = new DifferenceCollector(Integer.MAX_VALUE);
+        for (int i = 0; i < 1200; i++) {
+            collector.add(valueDifference(i));
+        }
+        collector.add(Difference.arraySize(new Location().child("items"), 1200, 1201));
+
+        assertThat(collector.describe(true))
+            .isEqualTo("1,200 similar value differences under /items/*/price, " +
+                "e.g. /items/0/price value is different: expected 1, actual 0\n" +
+                "/items: arrays have different size, expected: 1200 actual: 1201");
+    }
+
+    private static Difference valueDifference(int index) {
+        return Difference.differentValue(new Location().child("items").element(index).child("price"),
+            new IntNode(1), new IntNode(index));
+    }
+}
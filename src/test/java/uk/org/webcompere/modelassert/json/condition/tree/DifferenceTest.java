@@ -0,0 +1,66 @@
+package uk.org.webcompere.modelassert.json.condition.tree;
+
+import com.fasterxml.jackson.databind.node.IntNode;
+import com.fasterxml.jackson.databind.node.JsonNodeType;
+import com.fasterxml.jackson.databind.node.TextNode;
+import org.junit.jupiter.api.Test;
+import uk.org.webcompere.modelassert.json.Result;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DifferenceTest {
+    private static final Location PATH = new Location().child("a").child("0");
+
+    @Test
+    void differentValueIsDescribedWithBothValues() {
+        Difference difference = Difference.differentValue(PATH, new TextNode("x"), new TextNode("y"));
+
+        assertThat(difference.getKind()).isEqualTo(Difference.Kind.DIFFERENT_VALUE);
+        assertThat(difference.getPath()).isEqualTo(PATH);
+        assertThat(difference).hasToString("/a/0 value is different: expected \"x\", actual \"y\"");
+    }
+
+    @Test
+    void differentTypesAreDescribedTheSameForNodesAndTypes() {
+        Difference fromNodes = Difference.differentTypes(PATH, new TextNode("1"), new IntNode(1));
+        Difference fromTypes = Difference.differentTypes(PATH, JsonNodeType.STRING, JsonNodeType.NUMBER);
+
+        assertThat(fromNodes).hasToString("/a/0 different types: expected STRING, actual NUMBER");
+        assertThat(fromTypes).hasToString(fromNodes.toString());
+    }
+
+    @Test
+    void keyDifferencesAreDescribed() {
+        assertThat(Difference.missingKeys(PATH, Collections.singletonList("b")))
+            .hasToString("/a/0: missing keys [b]");
+        assertThat(Difference.keyOrder(PATH, Arrays.asList("b", "c"), Arrays.asList("c", "b")))
+            .hasToString("/a/0: keys in the wrong order - expected [b, c], found [c, b]");
+    }
+
+    @Test
+    void alignedElementDifferencesAreDescribedByIndex() {
+        assertThat(Difference.removedElements(PATH, Collections.singletonMap(2, new IntNode(7))))
+            .hasToString("/a/0: elements removed, by expected index {2=7}");
+        assertThat(Difference.insertedElements(PATH, Collections.singletonMap(0, new TextNode("x"))))
+            .hasToString("/a/0: elements inserted, by actual index {0=\"x\"}");
+    }
+
+    @Test
+    void failedConditionIsNotDescribedUntilAsked() {
+        AtomicInteger timesDescribed = new AtomicInteger();
+        Result result = new Result(() -> "a number", () -> {
+            timesDescribed.incrementAndGet();
+            return "a string";
+        }, false);
+
+        Difference difference = Difference.failedCondition(PATH, result, new TextNode("x"));
+        assertThat(timesDescribed).hasValue(0);
+
+        assertThat(difference).hasToString("/a/0: expected a number but was a string");
+        assertThat(timesDescribed).hasValue(1);
+    }
+}
@@ -0,0 +1,34 @@
+package uk.org.webcompere.modelassert.json.condition.tree;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.org.webcompere.modelassert.json.JsonProviders.jsonStringProvider;
+
+class ElementKeyTest {
+
+    @Test
+    void elementsWithTheSameKeyValuesHaveEqualKeys() {
+        JsonNode first = jsonStringProvider().jsonFrom("{\"id\":1, \"name\":\"a\"}");
+        JsonNode second = jsonStringProvider().jsonFrom("{\"name\":\"b\", \"id\":1}");
+
+        assertThat(ElementKey.of(first, Collections.singletonList("id")))
+            .isEqualTo(ElementKey.of(second, Collections.singletonList("id")))
+            .hasSameHashCodeAs(ElementKey.of(second, Collections.singletonList("id")));
+        assertThat(ElementKey.of(first, Arrays.asList("id", "name")))
+            .isNotEqualTo(ElementKey.of(second, Arrays.asList("id", "name")));
+    }
+
+    @Test
+    void keyIsDescribedByItsFields() {
+        JsonNode element = jsonStringProvider().jsonFrom("{\"id\":1, \"name\":\"a\"}");
+
+        assertThat(ElementKey.of(element, Collections.singletonList("id"))).hasToString("id=1");
+        assertThat(ElementKey.of(element, Arrays.asList("id", "name"))).hasToString("{id=1, name=\"a\"}");
+        assertThat(ElementKey.of(element, Collections.singletonList("guid"))).hasToString("guid=(missing)");
+    }
+}
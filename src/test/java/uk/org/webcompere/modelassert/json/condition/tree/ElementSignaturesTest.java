@@ -0,0 +1,69 @@
+package uk.org.webcompere.modelassert.json.condition.tree;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import org.junit.jupiter.api.Test;
+import uk.org.webcompere.modelassert.json.condition.Ignore;
+
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.org.webcompere.modelassert.json.JsonProviders.jsonStringProvider;
+import static uk.org.webcompere.modelassert.json.PathWildCard.ANY;
+import static uk.org.webcompere.modelassert.json.PathWildCard.ANY_SUBTREE;
+
+class ElementSignaturesTest {
+    private static final Location ARRAY = new Location();
+
+    @Test
+    void elementsOfDifferentTypeCannotMatch() {
+        ElementSignatures signatures = signaturesOf("[1, \"1\", {}]", "[1]", comparison());
+
+        assertThat(signatures.mayMatch(0, 0)).isTrue();
+        assertThat(signatures.mayMatch(0, 1)).isFalse();
+        assertThat(signatures.mayMatch(0, 2)).isFalse();
+    }
+
+    @Test
+    void objectsWithDifferentKeysCannotMatch() {
+        ElementSignatures signatures = signaturesOf("[{\"a\":1, \"b\":2}, {\"a\":1, \"c\":2}, {\"a\":1}]",
+            "[{\"b\":5, \"a\":6}]", comparison());
+
+        assertThat(signatures.mayMatch(0, 0)).isTrue();
+        assertThat(signatures.mayMatch(0, 1)).isFalse();
+        assertThat(signatures.mayMatch(0, 2)).isFalse();
+    }
+
+    @Test
+    void objectContainsAllowsDifferentKeys() {
+        ElementSignatures signatures = signaturesOf("[{\"a\":1, \"b\":2}, 7]", "[{\"a\":1}]",
+            comparison().withRules(Collections.singletonList(new PathRule(TreeRule.OBJECT_CONTAINS))));
+
+        assertThat(signatures.mayMatch(0, 0)).isTrue();
+        assertThat(signatures.mayMatch(0, 1)).isFalse();
+    }
+
+    @Test
+    void conditionBelowTheElementAllowsDifferentKeys() {
+        ElementSignatures signatures = signaturesOf("[{\"a\":1, \"b\":2}]", "[{\"a\":1}]",
+            comparison().withRules(Collections.singletonList(new PathRule(new PathMatch(ANY, "b"), new Ignore()))));
+
+        assertThat(signatures.mayMatch(0, 0)).isTrue();
+    }
+
+    @Test
+    void conditionAtTheElementAllowsAnything() {
+        ElementSignatures signatures = signaturesOf("[\"x\"]", "[{\"a\":1}]",
+            comparison().withRules(Collections.singletonList(new PathRule(new PathMatch(ANY_SUBTREE), new Ignore()))));
+
+        assertThat(signatures.mayMatch(0, 0)).isTrue();
+    }
+
+    private static TreeComparisonCondition comparison() {
+        return TreeComparisonCondition.isEqualTo(jsonStringProvider().jsonFrom("[]"));
+    }
+
+    private static ElementSignatures signaturesOf(String actual, String expected, TreeComparisonCondition comparison) {
+        return ElementSignatures.of((ArrayNode) jsonStringProvider().jsonFrom(actual),
+            (ArrayNode) jsonStringProvider().jsonFrom(expected), ARRAY, comparison);
+    }
+}
@@ -0,0 +1,74 @@
+package uk.org.webcompere.modelassert.json.condition.tree;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.Test;
+import uk.org.webcompere.modelassert.json.Result;
+
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.org.webcompere.modelassert.json.JsonProviders.jsonStringProvider;
+
+class ExpectedPlanTest {
+
+    @Test
+    void keysOfObjectsAreInOrder() {
+        JsonNode expected = jsonStringProvider().jsonFrom("{\"b\":1, \"a\":{\"d\":2, \"c\":3}}");
+        ExpectedPlan plan = ExpectedPlan.compile(expected);
+
+        assertThat(plan.keysOf(expected)).containsExactly("b", "a");
+        assertThat(plan.keysOf(expected.get("a"))).containsExactly("d", "c");
+    }
+
+    @Test
+    void elementsOfArraysHaveTheirHashesAndSignatures() {
+        JsonNode expected = jsonStringProvider().jsonFrom("{\"items\":[{\"id\":1, \"tags\":[\"a\"]}, 2, [3, 4]]}");
+        JsonNode items = expected.get("items");
+        ExpectedPlan plan = ExpectedPlan.compile(expected);
+
+        for (int i = 0; i < items.size(); i++) {
+            assertThat(plan.elementHashes(items)[i]).isEqualTo(StructuralHashJoin.hash(items.get(i)));
+            assertThat(plan.elementSignatures(items, ElementSignatures.SHAPE)[i])
+                .isEqualTo(ElementSignatures.signature(items.get(i), ElementSignatures.SHAPE));
+        }
+        assertThat(plan.elementHashes(items.get(0).get("tags"))).hasSize(1);
+    }
+
+    @Test
+    void nodesFromOtherTreesAreNotKnown() {
+        ExpectedPlan plan = ExpectedPlan.compile(jsonStringProvider().jsonFrom("{\"a\":[1]}"));
+        JsonNode other = jsonStringProvider().jsonFrom("{\"a\":[1]}");
+
+        assertThat(plan.keysOf(other)).isNull();
+        assertThat(plan.elementHashes(other.get("a"))).isNull();
+    }
+
+    @Test
+    void compiledComparisonFindsTheSameDifferencesEachTime() {
+        JsonNode expected = jsonStringProvider().jsonFrom(
+            "{\"a\":1, \"b\":[{\"c\":1}, {\"c\":2}, {\"c\":3}], \"d\":{\"e\":true, \"f\":false}}");
+        TreeComparisonCondition plain = comparison(expected);
+        TreeComparisonCondition compiled = comparison(expected).compiled();
+
+        String[] actuals = {
+            "{\"a\":1, \"b\":[{\"c\":3}, {\"c\":1}, {\"c\":2}], \"d\":{\"e\":true, \"f\":false}}",
+            "{\"a\":2, \"b\":[{\"c\":3}, {\"c\":4}, {\"c\":2}], \"d\":{\"f\":false, \"e\":true}}",
+            "{\"b\":[{\"c\":3}, {\"c\":1}], \"d\":{\"e\":true, \"g\":false}, \"z\":0}"
+        };
+        for (String actual : actuals) {
+            Result expectedResult = plain.test(jsonStringProvider().jsonFrom(actual));
+            for (int repeat = 0; repeat < 2; repeat++) {
+                Result result = compiled.test(jsonStringProvider().jsonFrom(actual));
+                assertThat(result.isPassed()).isEqualTo(expectedResult.isPassed());
+                assertThat(result.getWas()).isEqualTo(expectedResult.getWas());
+                assertThat(result.getCondition()).isEqualTo(expectedResult.getCondition());
+            }
+        }
+    }
+
+    private static TreeComparisonCondition comparison(JsonNode expected) {
+        return TreeComparisonCondition.isEqualTo(expected)
+            .withRules(Collections.singletonList(
+                new PathRule(PathMatch.ofJsonPointer("/b"), TreeRule.IGNORE_ARRAY_ORDER)));
+    }
+}
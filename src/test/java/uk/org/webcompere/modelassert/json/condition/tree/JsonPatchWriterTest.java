@@ -0,0 +1,144 @@
+package uk.org.webcompere.modelassert.json.condition.tree;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+import uk.org.webcompere.modelassert.json.condition.Ignore;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.org.webcompere.modelassert.json.JsonProviders.jsonStringProvider;
+import static uk.org.webcompere.modelassert.json.condition.Not.not;
+
+class JsonPatchWriterTest {
+
+    @Test
+    void equalTreesHaveAnEmptyPatch() {
+        assertThat(TreeComparisonCondition.isEqualTo(json("{\"a\":[1, 2]}")).toPatch(json("{\"a\":[1, 2]}")))
+            .isEmpty();
+    }
+
+    @Test
+    void differentValuesAreReplacedAndKeysAddedOrRemoved() {
+        ArrayNode patch = TreeComparisonCondition.isEqualTo(json("{\"a\":1, \"b\":{\"c\":\"x\"}, \"d\":true}"))
+            .toPatch(json("{\"a\":2, \"b\":{\"c\":1}, \"e\":null}"));
+
+        assertThat(patch).isEqualTo(json("[" +
+            "{\"op\":\"remove\", \"path\":\"/e\"}," +
+            "{\"op\":\"add\", \"path\":\"/d\", \"value\":true}," +
+            "{\"op\":\"replace\", \"path\":\"/a\", \"value\":1}," +
+            "{\"op\":\"replace\", \"path\":\"/b/c\", \"value\":\"x\"}]"));
+    }
+
+    @Test
+    void pathsAreEscapedJsonPointers() {
+        ArrayNode patch = TreeComparisonCondition.isEqualTo(json("{\"a/b\":{\"~c\":1}}"))
+            .toPatch(json("{\"a/b\":{\"~c\":2}}"));
+
+        assertThat(patch.get(0).get("path").asText()).isEqualTo("/a~1b/~0c");
+    }
+
+    @Test
+    void arraysComparedInOrderHaveTheirEndsAddedOrRemoved() {
+        assertThat(TreeComparisonCondition.isEqualTo(json("[1, 2, 3, 4]")).toPatch(json("[1, 5]")))
+            .isEqualTo(json("[" +
+                "{\"op\":\"add\", \"path\":\"/2\", \"value\":3}," +
+                "{\"op\":\"add\", \"path\":\"/3\", \"value\":4}," +
+                "{\"op\":\"replace\", \"path\":\"/1\", \"value\":2}]"));
+        assertThat(TreeComparisonCondition.isEqualTo(json("[1]")).toPatch(json("[1, 2, 3]")))
+            .isEqualTo(json("[{\"op\":\"remove\", \"path\":\"/2\"}, {\"op\":\"remove\", \"path\":\"/1\"}]"));
+    }
+
+    @Test
+    void arraysInAnyOrderAreReplacedAfterTheirElements() {
+        ArrayNode patch = TreeComparisonCondition.isEqualTo(json("{\"a\":[1, 2], \"b\":1}"))
+            .withRules(Collections.singletonList(new PathRule(TreeRule.IGNORE_ARRAY_ORDER)))
+            .toPatch(json("{\"a\":[3, 1], \"b\":2}"));
+
+        assertThat(patch).isEqualTo(json("[" +
+            "{\"op\":\"replace\", \"path\":\"/a\", \"value\":[1, 2]}," +
+            "{\"op\":\"replace\", \"path\":\"/b\", \"value\":1}]"));
+    }
+
+    @Test
+    void failedConditionsAndKeyOrderHaveNoOperations() {
+        ArrayNode patch = TreeComparisonCondition.isEqualTo(json("{\"a\":1, \"b\":2}"))
+            .withRules(Collections.singletonList(new PathRule(PathMatch.ofJsonPointer("/a"),
+                not(new Ignore()))))
+            .toPatch(json("{\"b\":2, \"a\":1}"));
+
+        assertThat(patch).isEmpty();
+    }
+
+    @Test
+    void applyingThePatchGivesTheExpected() {
+        JsonNode expected = json("{\"items\":[{\"id\":1, \"tags\":[\"a\"]}, {\"id\":2}, {\"id\":3, \"x\":[1, 2]}]," +
+            "\"keyed\":[{\"id\":1, \"v\":1}, {\"id\":2, \"v\":2}], \"name\":\"n\"}");
+        JsonNode actual = json("{\"items\":[{\"id\":0}, {\"id\":1, \"tags\":[\"a\"]}, {\"id\":3, \"x\":[1]}]," +
+            "\"keyed\":[{\"id\":2, \"v\":3}, {\"id\":4, \"v\":1}], \"extra\":1}");
+        TreeComparisonCondition comparison = TreeComparisonCondition.isEqualTo(expected)
+            .withRules(Arrays.asList(
+                new PathRule(PathMatch.ofJsonPointer("/items"), TreeRule.ARRAY_ALIGNED),
+                new PathRule(PathMatch.ofJsonPointer("/keyed"), Collections.singletonList("id"))));
+
+        ArrayNode patch = comparison.toPatch(actual);
+
+        assertThat(apply(patch, actual)).isEqualTo(expected);
+    }
+
+    @Test
+    void patchCanBeStreamedToAGenerator() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        TreeComparisonCondition comparison = TreeComparisonCondition.isEqualTo(json("{\"a\":[1, 2], \"b\":3}"));
+        JsonNode actual = json("{\"a\":[1], \"b\":4}");
+
+        StringWriter written = new StringWriter();
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(written)) {
+            comparison.streamPatch(actual, generator);
+        }
+
+        assertThat(mapper.readTree(written.toString())).isEqualTo(comparison.toPatch(actual));
+    }
+
+    /**
+     * Apply the add, remove and replace operations of a patch, enough to check the patches written
+     */
+    private static JsonNode apply(ArrayNode patch, JsonNode document) {
+        JsonNode result = document.deepCopy();
+        for (JsonNode operation : patch) {
+            String pointer = operation.get("path").asText();
+            int lastSlash = pointer.lastIndexOf('/');
+            JsonNode parent = result.at(pointer.substring(0, lastSlash));
+            String last = pointer.substring(lastSlash + 1).replace("~1", "/").replace("~0", "~");
+            String op = operation.get("op").asText();
+            if (parent.isArray()) {
+                ArrayNode array = (ArrayNode) parent;
+                int index = Integer.parseInt(last);
+                if (!op.equals("add")) {
+                    array.remove(index);
+                }
+                if (!op.equals("remove")) {
+                    array.insert(index, operation.get("value"));
+                }
+            } else {
+                ObjectNode object = (ObjectNode) parent;
+                if (op.equals("remove")) {
+                    object.remove(last);
+                } else {
+                    object.set(last, operation.get("value"));
+                }
+            }
+        }
+        return result;
+    }
+
+    private static JsonNode json(String json) {
+        return jsonStringProvider().jsonFrom(json);
+    }
+}
@@ -0,0 +1,63 @@
+package uk.org.webcompere.modelassert.json.condition.tree;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LocationTest {
+
+    @Test
+    void rootRendersAsSlash() {
+        assertThat(new Location()).hasToString("/");
+        assertThat(new Location().isEmpty()).isTrue();
+        assertThat(new Location().first()).isNull();
+        assertThat(new Location().last()).isNull();
+    }
+
+    @Test
+    void childRendersAsJsonPointer() {
+        Location location = new Location().child("a").child("b").child("0");
+
+        assertThat(location).hasToString("/a/b/0");
+        assertThat(location.size()).isEqualTo(3);
+        assertThat(location.first()).isEqualTo("a");
+        assertThat(location.last()).isEqualTo("0");
+    }
+
+    @Test
+    void childrenShareTheirParent() {
+        Location parent = new Location().child("a");
+
+        assertThat(parent.child("b").getParent()).isSameAs(parent);
+        assertThat(parent.child("c").getParent()).isSameAs(parent);
+        assertThat(parent).hasToString("/a");
+    }
+
+    @Test
+    void ancestorWalksUpTheTree() {
+        Location location = new Location().child("a").child("b").child("c");
+
+        assertThat(location.ancestor(3)).isSameAs(location);
+        assertThat(location.ancestor(1)).hasToString("/a");
+        assertThat(location.ancestor(0).isEmpty()).isTrue();
+    }
+
+    @Test
+    void peelOffFirstLeavesTheRemainder() {
+        Location location = new Location().child("a").child("b").child("c");
+
+        assertThat(location.peelOffFirst()).hasToString("/b/c");
+        assertThat(location.peelOffFirst().peelOffFirst().peelOffFirst().isEmpty()).isTrue();
+    }
+
+    @Test
+    void locationsWithSamePathAreEqual() {
+        Location one = new Location().child("a").child("b");
+        Location two = new Location().child("a").child("b");
+
+        assertThat(one).isEqualTo(two);
+        assertThat(one).hasSameHashCodeAs(two);
+        assertThat(one).isNotEqualTo(new Location().child("a").child("c"));
+        assertThat(one).isNotEqualTo(new Location().child("a"));
+    }
+}
@@ -0,0 +1,139 @@
+package uk.org.webcompere.modelassert.json.condition.tree;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import uk.org.webcompere.modelassert.json.Result;
+import uk.org.webcompere.modelassert.json.condition.Ignore;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.org.webcompere.modelassert.json.JsonProviders.jsonStringProvider;
+import static uk.org.webcompere.modelassert.json.condition.Not.not;
+import static uk.org.webcompere.modelassert.json.condition.tree.PathMatch.ofJsonPointer;
+
+class ParallelComparisonTest {
+    private static ForkJoinPool pool;
+
+    private static final JsonNode EXPECTED = wideDocument(0);
+    private static final JsonNode ACTUAL = wideDocument(7);
+
+    @BeforeAll
+    static void beforeAll() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterAll
+    static void afterAll() {
+        pool.shutdown();
+    }
+
+    @Test
+    void equalDocumentsPass() {
+        assertThat(TreeComparisonCondition.isEqualTo(EXPECTED).parallel(pool, 2).test(wideDocument(0)).isPassed())
+            .isTrue();
+    }
+
+    @Test
+    void failuresAreTheSameAndInTheSameOrderAsOnOneThread() {
+        Result result = TreeComparisonCondition.isEqualTo(EXPECTED).parallel(pool, 2).test(ACTUAL);
+
+        assertThat(result.isPassed()).isFalse();
+        assertThat(result.getWas()).isEqualTo(TreeComparisonCondition.isEqualTo(EXPECTED).test(ACTUAL).getWas());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 5, 40})
+    void limitedFailuresAreTheFirstOnes(int maxFailures) {
+        for (int i = 0; i < 20; i++) {
+            Result result = TreeComparisonCondition.isEqualTo(EXPECTED).withMaxFailures(maxFailures)
+                .parallel(pool, 2).test(ACTUAL);
+
+            assertThat(result.getWas()).isEqualTo(TreeComparisonCondition.isEqualTo(EXPECTED)
+                .withMaxFailures(maxFailures).test(ACTUAL).getWas());
+        }
+    }
+
+    @Test
+    void rulesApplyWithinTheForkedChildren() {
+        List<PathRule> rules = Arrays.asList(
+            new PathRule(ofJsonPointer("/sections/3"), not(new Ignore())),
+            new PathRule(ofJsonPointer("/sections/5/values"), TreeRule.IGNORE_ARRAY_ORDER));
+
+        Result result = TreeComparisonCondition.isEqualTo(EXPECTED).withRules(rules).parallel(pool, 2).test(ACTUAL);
+
+        assertThat(result.getWas())
+            .isEqualTo(TreeComparisonCondition.isEqualTo(EXPECTED).withRules(rules).test(ACTUAL).getWas());
+    }
+
+    @Test
+    void patchIsTheSameAsOnOneThread() {
+        assertThat(TreeComparisonCondition.isEqualTo(EXPECTED).parallel(pool, 2).toPatch(ACTUAL))
+            .isEqualTo(TreeComparisonCondition.isEqualTo(EXPECTED).toPatch(ACTUAL));
+    }
+
+    @Test
+    void narrowNodesAreComparedOnOneThread() {
+        assertThat(new ParallelComparison(pool, 10).shouldFork(9)).isFalse();
+        assertThat(new ParallelComparison(pool, 10).shouldFork(10)).isTrue();
+    }
+
+    @Test
+    void thresholdMustAllowForking() {
+        assertThatThrownBy(() -> TreeComparisonCondition.isEqualTo(EXPECTED).parallel(pool, 1))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void comparisonsOfElementsOnThePoolCanForkAgain() {
+        JsonNode expected = json("[" + String.join(",", Collections.nCopies(8, "[1,2,3,4]")) + "]");
+        JsonNode actual = json("[" + String.join(",", Collections.nCopies(8, "[4,3,2,1]")) + "]");
+
+        Result result = TreeComparisonCondition.isEqualTo(expected)
+            .withRules(Collections.singletonList(new PathRule(TreeRule.IGNORE_ARRAY_ORDER)))
+            .parallel(pool, 2)
+            .test(actual);
+
+        assertThat(result.isPassed()).isTrue();
+    }
+
+    @Test
+    void wideArraysInAnyOrderAreMatchedOnThePool() {
+        List<PathRule> rules = Arrays.asList(new PathRule(TreeRule.IGNORE_ARRAY_ORDER),
+            new PathRule(ofJsonPointer("/sections/2/name"), not(new Ignore())));
+
+        Result result = TreeComparisonCondition.isEqualTo(EXPECTED).withRules(rules).parallel(pool, 2).test(ACTUAL);
+
+        assertThat(result.getWas())
+            .isEqualTo(TreeComparisonCondition.isEqualTo(EXPECTED).withRules(rules).test(ACTUAL).getWas());
+    }
+
+    /**
+     * A document with many sections, each with many values, where every <code>differentEvery</code>th value
+     * is changed
+     */
+    private static JsonNode wideDocument(int differentEvery) {
+        StringBuilder json = new StringBuilder("{\"sections\":[");
+        for (int section = 0; section < 16; section++) {
+            json.append(section == 0 ? "" : ",").append("{\"name\":\"s").append(section).append("\",\"values\":[");
+            for (int value = 0; value < 24; value++) {
+                int changed = differentEvery > 0 && (section * 24 + value) % differentEvery == 0 ? 1000 : 0;
+                json.append(value == 0 ? "" : ",").append(value + changed);
+            }
+            json.append("]}");
+        }
+        return json(json.append("]}").toString());
+    }
+
+    private static JsonNode json(String json) {
+        return jsonStringProvider().jsonFrom(json);
+    }
+}
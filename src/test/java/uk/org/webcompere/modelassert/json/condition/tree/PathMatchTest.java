@@ -2,6 +2,9 @@ package uk.org.webcompere.modelassert.json.condition.tree;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.Collections;
+import java.util.regex.Pattern;
+
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static uk.org.webcompere.modelassert.json.PathWildCard.ANY;
@@ -78,6 +81,44 @@ class PathMatchTest {
             .isTrue();
     }
 
+    @Test
+    void regexPathMatchMatchesEachPart() {
+        PathMatch match = new PathMatch(ANY_SUBTREE, Pattern.compile("item[0-9]+"), "id");
+
+        assertThat(match.matches(new Location().child("a").child("item12").child("id"))).isTrue();
+        assertThat(match.matches(new Location().child("a").child("itemX").child("id"))).isFalse();
+    }
+
+    @Test
+    void manySubtreesDoNotBacktrackOnDeepLocations() {
+        PathMatch match = new PathMatch(ANY_SUBTREE, "a", ANY_SUBTREE, "a", ANY_SUBTREE, "a", ANY_SUBTREE,
+            "a", ANY_SUBTREE, "a", ANY_SUBTREE, "a", ANY_SUBTREE, "b");
+
+        Location location = new Location();
+        for (int i = 0; i < 200; i++) {
+            location = location.child("a");
+        }
+
+        assertThat(match.matches(location)).isFalse();
+        assertThat(match.matches(location.child("b"))).isTrue();
+        assertThat(match.couldMatchBelow(location)).isTrue();
+    }
+
+    @Test
+    void pathsLongerThanTheAutomatonCanHoldStillMatch() {
+        Object[] rest = Collections.nCopies(PathAutomaton.MAX_MATCHERS + 1, ANY).toArray();
+        PathMatch match = new PathMatch(ANY_SUBTREE, rest);
+
+        Location location = new Location();
+        for (int i = 0; i < PathAutomaton.MAX_MATCHERS; i++) {
+            location = location.child("a");
+        }
+
+        assertThat(match.matches(location)).isFalse();
+        assertThat(match.matches(location.child("b").child("c"))).isTrue();
+        assertThat(match.couldMatchBelow(location)).isTrue();
+    }
+
     @Test
     void pathMustStartSlash() {
         assertThatThrownBy(() -> PathMatch.ofJsonPointer("foo"))
@@ -92,6 +133,31 @@ class PathMatchTest {
         assertThat(rootMatch.matches(new Location().child("a"))).isFalse();
     }
 
+    @Test
+    void literalPathCouldOnlyMatchBelowItsPrefix() {
+        PathMatch pathMatch = PathMatch.ofJsonPointer("/a/b");
+
+        assertThat(pathMatch.couldMatchBelow(new Location())).isTrue();
+        assertThat(pathMatch.couldMatchBelow(new Location().child("a"))).isTrue();
+        assertThat(pathMatch.couldMatchBelow(new Location().child("a").child("b"))).isFalse();
+        assertThat(pathMatch.couldMatchBelow(new Location().child("c"))).isFalse();
+    }
+
+    @Test
+    void subtreePathCouldMatchBelowAnywhere() {
+        assertThat(new PathMatch(ANY_SUBTREE).couldMatchBelow(new Location().child("a").child("b"))).isTrue();
+        assertThat(new PathMatch(ANY_SUBTREE, "d").couldMatchBelow(new Location().child("d"))).isTrue();
+        assertThat(new PathMatch("a", ANY_SUBTREE).couldMatchBelow(new Location().child("b"))).isFalse();
+    }
+
+    @Test
+    void wildcardPathCouldMatchBelowAnyFieldAtItsLevel() {
+        PathMatch pathMatch = new PathMatch("a", ANY, "c");
+
+        assertThat(pathMatch.couldMatchBelow(new Location().child("a").child("0"))).isTrue();
+        assertThat(pathMatch.couldMatchBelow(new Location().child("a").child("0").child("c"))).isFalse();
+    }
+
     @Test
     void cannotProvideWhitespaceInPath() {
         assertThatThrownBy(() -> PathMatch.ofJsonPointer("/a /"))
@@ -81,4 +81,26 @@ class PathMatcherTest {
             .matches(new Location().child("c"), singletonList(PathMatcher.of("c"))))
             .isTrue();
     }
+
+    @Test
+    void pathMatcherMatchesEndOfLocation() {
+        assertThat(PathMatcher.of("b")
+            .matchesEnd(new Location().child("a").child("b"), singletonList(PathMatcher.of("a"))))
+            .isTrue();
+
+        assertThat(PathMatcher.of("a")
+            .matchesEnd(new Location().child("a").child("b"), singletonList(PathMatcher.of("b"))))
+            .isFalse();
+    }
+
+    @Test
+    void anySubtreeMatchesEndOfLocationAfterStart() {
+        assertThat(PathMatcher.of(ANY_SUBTREE)
+            .matchesEnd(new Location().child("a").child("b").child("c"), singletonList(PathMatcher.of("a"))))
+            .isTrue();
+
+        assertThat(PathMatcher.of(ANY_SUBTREE)
+            .matchesEnd(new Location().child("b").child("c"), singletonList(PathMatcher.of("a"))))
+            .isFalse();
+    }
 }
@@ -0,0 +1,84 @@
+package uk.org.webcompere.modelassert.json.condition.tree;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.Test;
+import uk.org.webcompere.modelassert.json.condition.Ignore;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.org.webcompere.modelassert.json.JsonProviders.jsonStringProvider;
+import static uk.org.webcompere.modelassert.json.PathWildCard.ANY_SUBTREE;
+
+class QuickEqualityTest {
+
+    @Test
+    void identicalTreesAreEqual() {
+        assertThat(isEqual("{\"a\":[1, {\"b\":null}], \"c\":\"d\"}", "{\"a\":[1, {\"b\":null}], \"c\":\"d\"}",
+            RuleSet.empty())).isTrue();
+    }
+
+    @Test
+    void differentValuesAndShapesAreNotEqual() {
+        assertThat(isEqual("{\"a\":[1, 2]}", "{\"a\":[1, 3]}", RuleSet.empty())).isFalse();
+        assertThat(isEqual("{\"a\":[1, 2]}", "{\"a\":[1]}", RuleSet.empty())).isFalse();
+        assertThat(isEqual("{\"a\":1}", "{\"a\":\"1\"}", RuleSet.empty())).isFalse();
+        assertThat(isEqual("{\"a\":1}", "{\"b\":1}", RuleSet.empty())).isFalse();
+    }
+
+    @Test
+    void keyOrderMattersUnlessIgnored() {
+        String actual = "{\"b\":{\"d\":1, \"c\":2}, \"a\":3}";
+        String expected = "{\"a\":3, \"b\":{\"c\":2, \"d\":1}}";
+
+        assertThat(isEqual(actual, expected, RuleSet.empty())).isFalse();
+        assertThat(isEqual(actual, expected, rules(new PathRule(TreeRule.IGNORE_KEY_ORDER)))).isTrue();
+        assertThat(isEqual(actual, expected, rules(new PathRule(TreeRule.IGNORE_KEY_ORDER),
+            new PathRule(PathMatch.ofJsonPointer("/b"), TreeRule.REQUIRE_KEY_ORDER)))).isFalse();
+    }
+
+    @Test
+    void objectContainsAllowsExtraKeysButNotMissingOnes() {
+        RuleSet contains = rules(new PathRule(TreeRule.OBJECT_CONTAINS));
+
+        assertThat(isEqual("{\"z\":0, \"a\":1, \"b\":2}", "{\"b\":2, \"a\":1}", contains)).isTrue();
+        assertThat(isEqual("{\"a\":1}", "{\"a\":1, \"b\":2}", contains)).isFalse();
+    }
+
+    @Test
+    void conditionsReplaceTheComparison() {
+        RuleSet ignoreIds = rules(new PathRule(new PathMatch(ANY_SUBTREE, "id"), new Ignore()));
+
+        assertThat(isEqual("{\"items\":[{\"id\":1}, {\"id\":2}]}", "{\"items\":[{\"id\":7}, {\"id\":8}]}",
+            ignoreIds)).isTrue();
+    }
+
+    @Test
+    void rulesWhichPairArrayElementsAreLeftToTheFullComparison() {
+        assertThat(QuickEquality.canCheck(RuleSet.empty())).isTrue();
+        assertThat(QuickEquality.canCheck(rules(new PathRule(TreeRule.IGNORE_KEY_ORDER)))).isTrue();
+        assertThat(QuickEquality.canCheck(rules(new PathRule(TreeRule.IGNORE_ARRAY_ORDER)))).isFalse();
+        assertThat(QuickEquality.canCheck(rules(new PathRule(TreeRule.ARRAY_CONTAINS)))).isFalse();
+        assertThat(QuickEquality.canCheck(rules(
+            new PathRule(PathMatch.all(), Collections.singletonList("id"))))).isFalse();
+    }
+
+    private static boolean isEqual(String actual, String expected, RuleSet rules) {
+        JsonNode actualNode = jsonStringProvider().jsonFrom(actual);
+        JsonNode expectedNode = jsonStringProvider().jsonFrom(expected);
+        boolean quickResult = QuickEquality.isEqual(actualNode, expectedNode, rules);
+
+        // the full comparison must agree
+        DifferenceCollector failures = new DifferenceCollector(Integer.MAX_VALUE);
+        TreeComparisonCondition.isEqualTo(expectedNode).withRules(rules)
+            .compareTrees(actualNode, expectedNode, new Location(), failures);
+        assertThat(failures.isEmpty()).isEqualTo(quickResult);
+
+        return quickResult;
+    }
+
+    private static RuleSet rules(PathRule... rules) {
+        return RuleSet.of(Arrays.asList(rules));
+    }
+}
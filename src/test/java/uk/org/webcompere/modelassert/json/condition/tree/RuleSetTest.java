@@ -0,0 +1,178 @@
+package uk.org.webcompere.modelassert.json.condition.tree;
+
+import org.junit.jupiter.api.Test;
+import uk.org.webcompere.modelassert.json.condition.Ignore;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.org.webcompere.modelassert.json.PathWildCard.ANY;
+import static uk.org.webcompere.modelassert.json.PathWildCard.ANY_SUBTREE;
+
+class RuleSetTest {
+
+    @Test
+    void emptyRuleSetFindsNothing() {
+        assertThat(RuleSet.empty().findRule(new Location(), TreeRule.IGNORE_KEY_ORDER)).isEmpty();
+        assertThat(RuleSet.of(Collections.emptyList())).isSameAs(RuleSet.empty());
+    }
+
+    @Test
+    void ruleForEverywhereIsFoundAtRootAndBelow() {
+        RuleSet ruleSet = RuleSet.of(Collections.singletonList(new PathRule(TreeRule.IGNORE_KEY_ORDER)));
+
+        assertThat(ruleSet.findRule(new Location(), TreeRule.IGNORE_KEY_ORDER)).isPresent();
+        assertThat(ruleSet.findRule(new Location().child("a").child("b"), TreeRule.IGNORE_KEY_ORDER)).isPresent();
+        assertThat(ruleSet.findRule(new Location(), TreeRule.IGNORE_ARRAY_ORDER)).isEmpty();
+    }
+
+    @Test
+    void literalPathRuleIsOnlyFoundOnItsPath() {
+        PathRule rule = new PathRule(PathMatch.ofJsonPointer("/a/b"), TreeRule.IGNORE_ARRAY_ORDER);
+        RuleSet ruleSet = RuleSet.of(Collections.singletonList(rule));
+
+        assertThat(ruleSet.findRule(new Location().child("a").child("b"), TreeRule.IGNORE_ARRAY_ORDER))
+            .contains(rule);
+        assertThat(ruleSet.findRule(new Location().child("a"), TreeRule.IGNORE_ARRAY_ORDER)).isEmpty();
+        assertThat(ruleSet.findRule(new Location().child("a").child("c"), TreeRule.IGNORE_ARRAY_ORDER)).isEmpty();
+        assertThat(ruleSet.findRule(new Location().child("a").child("b").child("c"), TreeRule.IGNORE_ARRAY_ORDER))
+            .isEmpty();
+    }
+
+    @Test
+    void literalPrefixFollowedByWildcardsIsFoundBelowThePrefix() {
+        PathRule rule = new PathRule(new PathMatch("a", ANY, Pattern.compile("c.*")), new Ignore());
+        RuleSet ruleSet = RuleSet.of(Collections.singletonList(rule));
+
+        assertThat(ruleSet.findRule(new Location().child("a").child("0").child("cat"), TreeRule.CONDITION))
+            .contains(rule);
+        assertThat(ruleSet.findRule(new Location().child("b").child("0").child("cat"), TreeRule.CONDITION))
+            .isEmpty();
+    }
+
+    @Test
+    void lastRuleWinsAcrossPrefixes() {
+        PathRule general = new PathRule(new PathMatch(ANY_SUBTREE, "b"), new Ignore());
+        PathRule specific = new PathRule(PathMatch.ofJsonPointer("/a/b"), new Ignore());
+        Location location = new Location().child("a").child("b");
+
+        assertThat(RuleSet.of(Arrays.asList(general, specific)).findRule(location, TreeRule.CONDITION))
+            .contains(specific);
+        assertThat(RuleSet.of(Arrays.asList(specific, general)).findRule(location, TreeRule.CONDITION))
+            .contains(general);
+    }
+
+    @Test
+    void addingRulesGivesThemPriority() {
+        PathRule first = new PathRule(new PathMatch(ANY_SUBTREE), new Ignore());
+        PathRule second = new PathRule(new PathMatch(ANY_SUBTREE), new Ignore());
+        RuleSet original = RuleSet.of(Collections.singletonList(first));
+
+        RuleSet combined = original.with(Collections.singletonList(second));
+
+        assertThat(combined.findRule(new Location().child("a"), TreeRule.CONDITION)).contains(second);
+        assertThat(original.findRule(new Location().child("a"), TreeRule.CONDITION)).contains(first);
+        assertThat(combined.getRules()).containsExactly(first, second);
+    }
+
+    @Test
+    void ruleBelowIsFoundOnlyForItsType() {
+        PathRule rule = new PathRule(new PathMatch("a", ANY, "c"), new Ignore());
+        RuleSet ruleSet = RuleSet.of(Collections.singletonList(rule));
+
+        assertThat(ruleSet.hasRuleBelow(new Location().child("a").child("0"), TreeRule.CONDITION)).isTrue();
+        assertThat(ruleSet.hasRuleBelow(new Location().child("b").child("0"), TreeRule.CONDITION)).isFalse();
+        assertThat(ruleSet.hasRuleBelow(new Location().child("a").child("0"), TreeRule.ARRAY_CONTAINS)).isFalse();
+    }
+
+    @Test
+    void combiningWithEmptyReusesTheOriginal() {
+        RuleSet ruleSet = RuleSet.of(Collections.singletonList(new PathRule(TreeRule.IGNORE_KEY_ORDER)));
+
+        assertThat(RuleSet.empty().with(ruleSet)).isSameAs(ruleSet);
+        assertThat(ruleSet.with(Collections.emptyList())).isSameAs(ruleSet);
+    }
+
+    @Test
+    void rulesAreFoundWhileWalkingDownTheTree() {
+        PathRule exact = new PathRule(PathMatch.ofJsonPointer("/a/b"), new Ignore());
+        PathRule subtree = new PathRule(new PathMatch(ANY_SUBTREE, "c"), new Ignore());
+        RuleSet ruleSet = RuleSet.of(Arrays.asList(exact, subtree));
+
+        Location a = new Location().child("a");
+        Location ab = a.child("b");
+        Location abc = ab.child("c");
+        Location abcd = abc.child("d");
+
+        assertThat(ruleSet.findRule(a, TreeRule.CONDITION)).isEmpty();
+        assertThat(ruleSet.findRule(ab, TreeRule.CONDITION)).contains(exact);
+        assertThat(ruleSet.findRule(abc, TreeRule.CONDITION)).contains(subtree);
+        assertThat(ruleSet.findRule(abcd, TreeRule.CONDITION)).isEmpty();
+        assertThat(ruleSet.findRule(abcd.child("c"), TreeRule.CONDITION)).contains(subtree);
+    }
+
+    @Test
+    void locationsSharedBetweenRuleSetsMatchTheRulesOfEach() {
+        PathRule ruleForB = new PathRule(PathMatch.ofJsonPointer("/a/b"), new Ignore());
+        PathRule ruleForAny = new PathRule(new PathMatch("a", ANY), new Ignore());
+        RuleSet onlyB = RuleSet.of(Collections.singletonList(ruleForB));
+        RuleSet any = RuleSet.of(Collections.singletonList(ruleForAny));
+
+        Location ac = new Location().child("a").child("c");
+
+        assertThat(onlyB.findRule(ac, TreeRule.CONDITION)).isEmpty();
+        assertThat(any.findRule(ac, TreeRule.CONDITION)).contains(ruleForAny);
+        assertThat(onlyB.findRule(ac, TreeRule.CONDITION)).isEmpty();
+    }
+
+    @Test
+    void elementsOfAnArrayShareTheirRulesWhenNoRuleDependsOnTheIndex() {
+        PathRule rule = new PathRule(new PathMatch("items", ANY, "price"), new Ignore());
+        RuleSet ruleSet = RuleSet.of(Collections.singletonList(rule));
+        Location items = new Location().child("items");
+
+        Location firstPrice = items.child("0").child("price");
+        Location secondPrice = items.child("1").child("price");
+
+        assertThat(ruleSet.findRule(firstPrice, TreeRule.CONDITION)).contains(rule);
+        assertThat(ruleSet.findRule(secondPrice, TreeRule.CONDITION)).contains(rule);
+        assertThat(secondPrice.getRuleStates()).isSameAs(firstPrice.getRuleStates());
+    }
+
+    @Test
+    void elementsOfAnArrayAreToldApartWhenARuleNamesAnIndex() {
+        PathRule literal = new PathRule(PathMatch.ofJsonPointer("/items/1/price"), new Ignore());
+        PathRule regex = new PathRule(new PathMatch("items", Pattern.compile("[2-3]"), "id"), new Ignore());
+        RuleSet ruleSet = RuleSet.of(Arrays.asList(literal, regex));
+        Location items = new Location().child("items");
+
+        assertThat(ruleSet.findRule(items.child("0").child("price"), TreeRule.CONDITION)).isEmpty();
+        assertThat(ruleSet.findRule(items.child("1").child("price"), TreeRule.CONDITION)).contains(literal);
+        assertThat(ruleSet.findRule(items.child("1").child("id"), TreeRule.CONDITION)).isEmpty();
+        assertThat(ruleSet.findRule(items.child("3").child("id"), TreeRule.CONDITION)).contains(regex);
+    }
+
+    @Test
+    void subtreesWhichNoRuleCanReachAreRuleFree() {
+        PathRule rule = new PathRule(new PathMatch("items", ANY, "price"), new Ignore());
+        RuleSet ruleSet = RuleSet.of(Collections.singletonList(rule));
+        Location items = new Location().child("items");
+
+        assertThat(RuleSet.empty().isRuleFree(new Location())).isTrue();
+        assertThat(ruleSet.isRuleFree(new Location())).isFalse();
+        assertThat(ruleSet.isRuleFree(items.child("0"))).isFalse();
+        assertThat(ruleSet.isRuleFree(items.child("0").child("price"))).isFalse();
+        assertThat(ruleSet.isRuleFree(items.child("0").child("name"))).isTrue();
+        assertThat(ruleSet.isRuleFree(new Location().child("other"))).isTrue();
+    }
+
+    @Test
+    void anySubtreeRulesLeaveNothingRuleFree() {
+        RuleSet ruleSet = RuleSet.of(Collections.singletonList(
+            new PathRule(new PathMatch(ANY_SUBTREE, "id"), new Ignore())));
+
+        assertThat(ruleSet.isRuleFree(new Location().child("a").child("b"))).isFalse();
+    }
+}
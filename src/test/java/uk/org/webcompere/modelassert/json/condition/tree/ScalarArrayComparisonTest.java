@@ -0,0 +1,138 @@
+package uk.org.webcompere.modelassert.json.condition.tree;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import uk.org.webcompere.modelassert.json.Result;
+import uk.org.webcompere.modelassert.json.condition.Ignore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.org.webcompere.modelassert.json.JsonProviders.jsonStringProvider;
+import static uk.org.webcompere.modelassert.json.PathWildCard.ANY_SUBTREE;
+
+class ScalarArrayComparisonTest {
+    private static final PathRule IN_ANY_ORDER = new PathRule(TreeRule.IGNORE_ARRAY_ORDER);
+
+    // a rule which could apply below the elements, so they're compared one by one, but never does
+    private static final PathRule RULE_BELOW_ELEMENTS = new PathRule(new PathMatch(ANY_SUBTREE, "unused"),
+        new Ignore());
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+        "[1, 2, 3]|[1, 2, 3]|true",
+        "[1, 2, 3000000000]|[1, 2, 3]|true",
+        "[1.5, 2.0]|[0.5, -0.0]|true",
+        "[true, false]|[false, false]|true",
+        "[\"a\", \"b\"]|[\"b\", \"c\"]|true",
+        "[1, 2.5]|[1, 2]|false",
+        "[1, \"a\"]|[1, 2]|false",
+        "[1, 2]|[1.0, 2.0]|false",
+        "[1, null]|[1, 2]|false",
+        "[[1], 2]|[1, 2]|false",
+        "[]|[1, 2]|false"
+    })
+    void arraysOfOneKindOfScalarAreComparedByValue(String actual, String expected, boolean byValue) {
+        assertThat(ScalarArrayComparison.of(array(actual), array(expected)).isPresent()).isEqualTo(byValue);
+    }
+
+    @Test
+    void longsWhichFitInAnIntAreNotComparedByValue() {
+        ArrayNode actual = JsonNodeFactory.instance.arrayNode().add(1L);
+        ArrayNode expected = JsonNodeFactory.instance.arrayNode().add(1);
+
+        assertThat(ScalarArrayComparison.of(actual, expected)).isEmpty();
+        assertThat(TreeComparisonCondition.isEqualTo(expected).test(actual).isPassed()).isFalse();
+    }
+
+    @Test
+    void differencesInOrderAreReportedAtTheirIndices() {
+        Result result = TreeComparisonCondition.isEqualTo(json("{\"a\":[1,2,3,4]}"))
+            .test(json("{\"a\":[1,5,3,6,7]}"));
+
+        assertThat(result.getWas()).isEqualTo(
+            "/a: arrays have different size, expected: 4 actual: 5\n" +
+            "/a/1 value is different: expected 2, actual 5\n" +
+            "/a/3 value is different: expected 4, actual 6");
+    }
+
+    @Test
+    void floatingPointNumbersAreEqualAsTheirNodesAre() {
+        assertThat(TreeComparisonCondition.isEqualTo(json("[0.0, 1.5]")).test(json("[-0.0, 1.5]")).isPassed())
+            .isFalse();
+        assertThat(TreeComparisonCondition.isEqualTo(json("[1.5, 0.0]"))
+            .withRules(Collections.singletonList(IN_ANY_ORDER))
+            .test(json("[0.0, 1.5]")).isPassed())
+            .isTrue();
+    }
+
+    @Test
+    void duplicatesInAnyOrderEachNeedAnElementOfTheirOwn() {
+        Result result = TreeComparisonCondition.isEqualTo(json("[\"a\",\"b\",\"a\",\"a\"]"))
+            .withRules(Collections.singletonList(IN_ANY_ORDER))
+            .test(json("[\"a\",\"c\",\"b\",\"a\"]"));
+
+        assertThat(result.getWas())
+            .isEqualTo("Matches array at / No matches for:\n" +
+                "Index 3: Has match for /3 in expected");
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+        "true|false",
+        "true|true",
+        "false|false"
+    })
+    void failuresAreTheSameAsComparingEachElement(boolean inAnyOrder, boolean contains) {
+        List<JsonNode> arrays = Arrays.asList(json("[3,1,2,2,9000000000]"), json("[2,2,3,1,9000000000]"),
+            json("[1,2,3]"), json("[5,2,2,8,1,0,3]"), json("[1.5,2.5,-0.0]"), json("[0.0,2.5,1.5]"),
+            json("[true,true,false]"), json("[false,true]"), json("[\"x\",\"y\",\"x\"]"), json("[\"y\",\"z\"]"));
+
+        List<PathRule> rules = new ArrayList<>();
+        if (inAnyOrder) {
+            rules.add(IN_ANY_ORDER);
+        }
+        if (contains) {
+            rules.add(new PathRule(TreeRule.ARRAY_CONTAINS));
+        }
+        List<PathRule> rulesAndOneBelow = new ArrayList<>(rules);
+        rulesAndOneBelow.add(RULE_BELOW_ELEMENTS);
+
+        for (JsonNode actual : arrays) {
+            for (JsonNode expected : arrays) {
+                Result byValue = TreeComparisonCondition.isEqualTo(expected).withRules(rules).test(actual);
+                Result byElement = TreeComparisonCondition.isEqualTo(expected).withRules(rulesAndOneBelow)
+                    .test(actual);
+
+                assertThat(byValue.isPassed()).isEqualTo(byElement.isPassed());
+                assertThat(byValue.getWas()).isEqualTo(byElement.getWas());
+            }
+        }
+    }
+
+    @Test
+    void limitedFailuresInOrderAreTheFirstOnes() {
+        Result result = TreeComparisonCondition.isEqualTo(json("[1,2,3,4,5]")).withMaxFailures(2)
+            .test(json("[0,0,0,0,0]"));
+
+        assertThat(result.getWas()).isEqualTo(
+            "/0 value is different: expected 1, actual 0\n" +
+            "/1 value is different: expected 2, actual 0\n" +
+            "Stopped comparing at the limit of 2 differences");
+    }
+
+    private static ArrayNode array(String json) {
+        return (ArrayNode) json(json);
+    }
+
+    private static JsonNode json(String json) {
+        return jsonStringProvider().jsonFrom(json);
+    }
+}
@@ -0,0 +1,190 @@
+package uk.org.webcompere.modelassert.json.condition.tree;
+
+import com.fasterxml.jackson.core.JsonParser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.org.webcompere.modelassert.json.Result;
+import uk.org.webcompere.modelassert.json.condition.HasValueWithLooseType;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.joining;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.org.webcompere.modelassert.json.JsonProviders.*;
+import static uk.org.webcompere.modelassert.json.PathWildCard.ANY_SUBTREE;
+
+class SpilledArrayComparisonTest {
+    private static final List<PathRule> IN_ANY_ORDER =
+        Collections.singletonList(new PathRule(TreeRule.IGNORE_ARRAY_ORDER));
+
+    @TempDir
+    private Path tempDir;
+
+    @Test
+    void largeArraysInDifferentOrdersAreEqualAndTheSpillFilesAreDeleted() throws IOException {
+        List<String> elements = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            elements.add("{\"id\":" + i + ",\"tags\":[\"t" + (i % 7) + "\"]}");
+        }
+        String expected = "[" + String.join(",", elements) + "]";
+        Collections.shuffle(elements, new Random(1));
+        String actual = "[" + String.join(",", elements) + "]";
+
+        // the budget is far smaller than the array, so the partitions are split again
+        assertThat(spilledResult(actual, expected, IN_ANY_ORDER, 1000).isPassed()).isTrue();
+        try (Stream<Path> spillFiles = Files.list(spillDir())) {
+            assertThat(spillFiles).isEmpty();
+        }
+    }
+
+    @Test
+    void elementsWithNoEqualAreReportedWithTheirIndices() throws IOException {
+        Result result = spilledResult("[{\"a\":1},{\"a\":2},{\"a\":3}]", "[{\"a\":3},{\"a\":4},{\"a\":1}]",
+            IN_ANY_ORDER, 1000);
+
+        assertThat(result.isPassed()).isFalse();
+        assertThat(result.getWas())
+            .contains("/: expected elements with no equal in the actual, by expected index {1={\"a\":4}}")
+            .contains("/: actual elements with no equal in the expected, by actual index {1={\"a\":2}}");
+    }
+
+    @Test
+    void manyCopiesOfTheSameElementAreComparedWithoutLoadingThem() throws IOException {
+        String expected = "[" + String.join(",", Collections.nCopies(3000, "{\"a\":1,\"b\":2}")) + "]";
+        String actual = "[" + String.join(",", Collections.nCopies(3000, "{\"a\":1,\"b\":2}")) + "]";
+
+        assertThat(spilledResult(actual, expected, IN_ANY_ORDER, 100).isPassed()).isTrue();
+    }
+
+    @Test
+    void elementsWithTheSameHashWhichAreNotEqualAreUnpaired() throws IOException {
+        // the same keys in a different order have the same hash, but aren't equal with the key order checked
+        String expected = "[" + String.join(",", Collections.nCopies(3000, "{\"a\":1,\"b\":2}")) + "]";
+        String actual = "[" + String.join(",", Collections.nCopies(2999, "{\"a\":1,\"b\":2}")) +
+            ",{\"b\":2,\"a\":1}]";
+
+        Result result = spilledResult(actual, expected, IN_ANY_ORDER, 100);
+
+        assertThat(result.getWas())
+            .isEqualTo("/: expected elements with no equal in the actual, by expected index " +
+                "{2999={\"a\":1,\"b\":2}}\n" +
+                "/: actual elements with no equal in the expected, by actual index {2999={\"b\":2,\"a\":1}}");
+    }
+
+    @Test
+    void unpairedElementsOfEveryPartitionAreReportedTogetherInIndexOrder() throws IOException {
+        List<String> expected = new ArrayList<>();
+        List<String> actual = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            expected.add("{\"id\":" + i + "}");
+            actual.add("{\"id\":" + (i < 190 ? i : i + 1000) + "}");
+        }
+
+        Result result = spilledResult("[" + String.join(",", actual) + "]",
+            "[" + String.join(",", expected) + "]", IN_ANY_ORDER, 100);
+
+        assertThat(result.getWas())
+            .isEqualTo("/: expected elements with no equal in the actual, by expected index {" +
+                IntStream.range(190, 200).mapToObj(i -> i + "={\"id\":" + i + "}").collect(joining(", ")) +
+                "}\n/: actual elements with no equal in the expected, by actual index {" +
+                IntStream.range(190, 200).mapToObj(i -> i + "={\"id\":" + (i + 1000) + "}")
+                    .collect(joining(", ")) + "}");
+    }
+
+    @Test
+    void onlyAsManyUnpairedElementsAreReportedAsTheLimitAllows() throws IOException {
+        List<String> expected = new ArrayList<>();
+        List<String> actual = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            expected.add("{\"id\":" + i + "}");
+            actual.add("{\"id\":" + (i + 10000) + "}");
+        }
+
+        Result result = spilledResult("[" + String.join(",", actual) + "]",
+            "[" + String.join(",", expected) + "]", IN_ANY_ORDER, 1000, 3);
+
+        assertThat(result.getWas())
+            .endsWith("}\nStopped comparing at the limit of 3 differences");
+        assertThat(result.getWas().split("=\\{\"id\":")).hasSize(4);
+    }
+
+    @Test
+    void differentSizesAreReportedBeforeTheElements() throws IOException {
+        Result result = spilledResult("[1,2,2]", "[2,1]", IN_ANY_ORDER, 1000);
+
+        assertThat(result.getWas())
+            .startsWith("/: arrays have different size, expected: 2 actual: 3")
+            .contains("by actual index {2=2}");
+    }
+
+    @Test
+    void elementsAreComparedWithTheRulesBelowTheArray() throws IOException {
+        List<PathRule> rules = Arrays.asList(new PathRule(TreeRule.IGNORE_ARRAY_ORDER),
+            new PathRule(TreeRule.IGNORE_KEY_ORDER));
+
+        assertThat(spilledResult("{\"a\":[{\"x\":1,\"y\":[2,1]},{\"y\":[]}]}",
+            "{\"a\":[{\"y\":[]},{\"y\":[1,2],\"x\":1}]}", rules, 1).isPassed()).isTrue();
+    }
+
+    @Test
+    void arraysWithConditionsBelowThemAreLoadedInstead() throws IOException {
+        List<PathRule> rules = Arrays.asList(new PathRule(TreeRule.IGNORE_ARRAY_ORDER),
+            new PathRule(new PathMatch(ANY_SUBTREE, "id"), new HasValueWithLooseType("any")));
+
+        Result result = spilledResult("[{\"id\":\"any\",\"v\":1},{\"id\":\"any\",\"v\":2}]",
+            "[{\"id\":\"x\",\"v\":2},{\"id\":\"y\",\"v\":1}]", rules, 1);
+
+        assertThat(result.isPassed()).isTrue();
+        assertThat(spillDir()).isEmptyDirectory();
+    }
+
+    @Test
+    void memoryBudgetMustBePositive() {
+        assertThatThrownBy(() -> TreeComparisonCondition.isEqualTo(jsonStringProvider().jsonFrom("[]"))
+            .spillingTo(tempDir, 0))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private Result spilledResult(String actual, String expected, List<PathRule> rules, long memoryBudget)
+        throws IOException {
+        return spilledResult(actual, expected, rules, memoryBudget, Integer.MAX_VALUE);
+    }
+
+    private Result spilledResult(String actual, String expected, List<PathRule> rules, long memoryBudget,
+                                 int maxFailures) throws IOException {
+        Path actualFile = write("actual.json", actual);
+        Path expectedFile = write("expected.json", expected);
+
+        TreeComparisonCondition condition = TreeComparisonCondition.isEqualTo(expectedFile, jsonPathProvider(),
+            jsonPathStreamProvider())
+            .withRules(rules)
+            .withMaxFailures(maxFailures)
+            .streamed()
+            .spillingTo(spillDir(), memoryBudget);
+
+        try (JsonParser parser = jsonPathStreamProvider().jsonParserFrom(actualFile)) {
+            return condition.test(parser);
+        }
+    }
+
+    private Path spillDir() throws IOException {
+        return Files.createDirectories(tempDir.resolve("spill"));
+    }
+
+    private Path write(String name, String json) throws IOException {
+        Path path = tempDir.resolve(name);
+        Files.write(path, json.getBytes(StandardCharsets.UTF_8));
+        return path;
+    }
+}
@@ -0,0 +1,170 @@
+package uk.org.webcompere.modelassert.json.condition.tree;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.StreamReadConstraints;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import uk.org.webcompere.modelassert.json.Result;
+import uk.org.webcompere.modelassert.json.condition.Ignore;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.org.webcompere.modelassert.json.JsonProviders.*;
+import static uk.org.webcompere.modelassert.json.PathWildCard.ANY_SUBTREE;
+
+class StreamingTreeComparisonTest {
+    private static final List<PathRule> NO_RULES = Collections.emptyList();
+
+    @TempDir
+    private Path tempDir;
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+        "{\"a\":1,\"b\":[1,2,3],\"c\":{\"d\":null}}|{\"a\":1,\"b\":[1,2,3],\"c\":{\"d\":null}}",
+        "{\"a\":1,\"b\":[1,2,3]}|{\"a\":2,\"b\":[1,2,4]}",
+        "{\"a\":1,\"b\":[1,2,3]}|{\"a\":1,\"b\":[1,2]}",
+        "{\"a\":1,\"b\":[1]}|{\"a\":1,\"b\":[1,2,{\"c\":3}]}",
+        "{\"a\":1,\"b\":2,\"c\":3}|{\"a\":1,\"c\":3,\"b\":2}",
+        "{\"a\":1,\"b\":2}|{\"a\":1,\"b\":2,\"c\":3}",
+        "{\"a\":1,\"b\":2,\"c\":3}|{\"a\":1,\"b\":2}",
+        "{\"a\":[1,2]}|{\"a\":{\"b\":1}}",
+        "[1,1.5,\"x\",true,null]|[1,1.50,\"x\",true,null]",
+        "[1,2]|[1.0,2]",
+        "\"text\"|\"other\"",
+        "{}|[]"
+    })
+    void streamingGivesSameResultAsTrees(String actual, String expected) throws IOException {
+        assertSameResult(actual, expected, NO_RULES);
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+        "{\"a\":[3,1,2],\"b\":1}|{\"a\":[1,2,3],\"b\":1}",
+        "{\"a\":[3,1],\"b\":1}|{\"a\":[1,2,3],\"b\":1}",
+        "{\"b\":{\"c\":1,\"d\":2},\"e\":[{\"f\":1,\"g\":2}]}|{\"b\":{\"d\":2,\"c\":1},\"e\":[{\"g\":2,\"f\":1}]}",
+        "{\"id\":\"abc\",\"x\":{\"id\":\"def\"}}|{\"id\":\"?\",\"x\":{\"id\":\"?\"}}"
+    })
+    void streamingGivesSameResultAsTreesWithRules(String actual, String expected) throws IOException {
+        assertSameResult(actual, expected, Arrays.asList(
+            new PathRule(PathMatch.ofJsonPointer("/a"), TreeRule.IGNORE_ARRAY_ORDER),
+            new PathRule(new PathMatch(ANY_SUBTREE, "e", ANY_SUBTREE), TreeRule.IGNORE_KEY_ORDER),
+            new PathRule(PathMatch.ofJsonPointer("/b"), TreeRule.IGNORE_KEY_ORDER),
+            new PathRule(new PathMatch(ANY_SUBTREE, "id"), new Ignore())));
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+        "{\"b\":2,\"c\":{\"d\":1},\"e\":[1]}|{\"a\":1,\"b\":3,\"c\":{\"d\":2},\"e\":[1,2]}",
+        "{\"x\":1,\"a\":2,\"b\":[1]}|{\"a\":1,\"b\":[2]}",
+        "{\"b\":{\"x\":1},\"a\":2,\"c\":3}|{\"a\":1,\"b\":{\"x\":2},\"c\":4}",
+        "{\"c\":1,\"a\":2,\"b\":3}|{\"a\":1,\"b\":2,\"c\":3}",
+        "{\"d\":4,\"c\":3,\"b\":2,\"a\":1}|{\"a\":0,\"b\":0,\"c\":0,\"d\":0}",
+        "{\"a\":{\"q\":1,\"p\":2},\"b\":1}|{\"a\":{\"p\":3,\"q\":1},\"b\":2}",
+        "{\"a\":1,\"y\":[1,2],\"c\":3}|{\"a\":2,\"z\":{\"k\":1},\"c\":4}",
+        "{\"a\":1,\"id\":\"x\",\"b\":2}|{\"a\":2,\"b\":3}",
+        "{\"a\":[1,2,3]}|{\"a\":[2,3]}",
+        "[[1,2],[3],{\"a\":1}]|[[1],[4,5],{\"b\":1}]"
+    })
+    void streamingGivesSameFirstFailuresAsTreesWhenKeysOrSizesDiffer(String actual, String expected)
+        throws IOException {
+        List<PathRule> rules = Collections.singletonList(
+            new PathRule(new PathMatch(ANY_SUBTREE, "id"), new Ignore()));
+        for (int maxFailures : new int[] {1, 2, 3, Integer.MAX_VALUE}) {
+            assertSameResult(actual, expected, rules, maxFailures);
+        }
+    }
+
+    @Test
+    void deeplyNestedDocumentsAreStreamedWithoutRecursion() throws IOException {
+        int depth = 100000;
+        JsonFactory deepFactory = new ObjectMapper(JsonFactory.builder()
+            .streamReadConstraints(StreamReadConstraints.builder().maxNestingDepth(depth + 1).build())
+            .build()).getFactory();
+        Path expectedFile = write("expected.json", nested(depth, "1"));
+
+        TreeComparisonCondition condition = TreeComparisonCondition.isEqualTo(expectedFile, jsonPathProvider(),
+            path -> deepFactory.createParser(path.toFile()));
+
+        try (JsonParser parser = deepFactory.createParser(nested(depth, "1"))) {
+            assertThat(condition.streamed().test(parser).isPassed()).isTrue();
+        }
+        try (JsonParser parser = deepFactory.createParser(nested(depth, "2"))) {
+            assertThat(condition.streamed().test(parser).getWas())
+                .endsWith("/0 value is different: expected 1, actual 2");
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+        "{\"a\":1} {\"a\":1}|{\"a\":1}",
+        "[1,2]]|[1,2]",
+        "1 x|1",
+        "{\"a\":1}|{\"a\":1} []"
+    })
+    void contentAfterTheRootValueIsAnError(String actual, String expected) throws IOException {
+        Path actualFile = write("actual.json", actual);
+        Path expectedFile = write("expected.json", expected);
+
+        TreeComparisonCondition condition = TreeComparisonCondition.isEqualTo(expectedFile, jsonPathProvider(),
+            jsonPathStreamProvider());
+
+        try (JsonParser parser = jsonPathStreamProvider().jsonParserFrom(actualFile)) {
+            assertThatThrownBy(() -> condition.streamed().test(parser)).isInstanceOf(JsonParseException.class);
+        }
+    }
+
+    private static String nested(int depth, String value) {
+        StringBuilder json = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            json.append('[');
+        }
+        json.append(value);
+        for (int i = 0; i < depth; i++) {
+            json.append(']');
+        }
+        return json.toString();
+    }
+
+    private void assertSameResult(String actual, String expected, List<PathRule> rules) throws IOException {
+        assertSameResult(actual, expected, rules, Integer.MAX_VALUE);
+    }
+
+    private void assertSameResult(String actual, String expected, List<PathRule> rules, int maxFailures)
+        throws IOException {
+        Path actualFile = write("actual.json", actual);
+        Path expectedFile = write("expected.json", expected);
+
+        TreeComparisonCondition condition = TreeComparisonCondition.isEqualTo(expectedFile, jsonPathProvider(),
+            jsonPathStreamProvider())
+            .withRules(rules)
+            .withMaxFailures(maxFailures);
+
+        Result treeResult = condition.test(jsonPathProvider().jsonFrom(actualFile));
+        Result streamedResult;
+        try (JsonParser parser = jsonPathStreamProvider().jsonParserFrom(actualFile)) {
+            streamedResult = condition.streamed().test(parser);
+        }
+
+        assertThat(streamedResult.isPassed()).isEqualTo(treeResult.isPassed());
+        assertThat(streamedResult.getWas()).isEqualTo(treeResult.getWas());
+    }
+
+    private Path write(String name, String json) throws IOException {
+        Path path = tempDir.resolve(name);
+        Files.write(path, json.getBytes(StandardCharsets.UTF_8));
+        return path;
+    }
+}
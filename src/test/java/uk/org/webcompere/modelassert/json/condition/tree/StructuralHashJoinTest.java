@@ -0,0 +1,100 @@
+package uk.org.webcompere.modelassert.json.condition.tree;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import org.junit.jupiter.api.Test;
+import uk.org.webcompere.modelassert.json.condition.Ignore;
+import uk.org.webcompere.modelassert.json.condition.array.ArrayElementCondition;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.org.webcompere.modelassert.json.JsonProviders.jsonStringProvider;
+import static uk.org.webcompere.modelassert.json.PathWildCard.ANY_SUBTREE;
+import static uk.org.webcompere.modelassert.json.condition.tree.PathMatch.ofJsonPointer;
+
+class StructuralHashJoinTest {
+    private static final Location ARRAY = new Location();
+
+    @Test
+    void hashIgnoresTheOrderOfKeysAndElements() {
+        assertThat(StructuralHashJoin.hash(jsonStringProvider().jsonFrom("{\"a\":[1, 2], \"b\":{\"c\":true}}")))
+            .isEqualTo(StructuralHashJoin.hash(jsonStringProvider().jsonFrom("{\"b\":{\"c\":true}, \"a\":[2, 1]}")));
+    }
+
+    @Test
+    void hashDistinguishesStructure() {
+        assertThat(StructuralHashJoin.hash(jsonStringProvider().jsonFrom("{\"a\":1, \"b\":2}")))
+            .isNotEqualTo(StructuralHashJoin.hash(jsonStringProvider().jsonFrom("{\"a\":2, \"b\":1}")));
+        assertThat(StructuralHashJoin.hash(jsonStringProvider().jsonFrom("[1]")))
+            .isNotEqualTo(StructuralHashJoin.hash(jsonStringProvider().jsonFrom("[1, 1]")));
+        assertThat(StructuralHashJoin.hash(jsonStringProvider().jsonFrom("\"1\"")))
+            .isNotEqualTo(StructuralHashJoin.hash(jsonStringProvider().jsonFrom("1")));
+    }
+
+    @Test
+    void onlyJoinsWhenInAnyOrderWithNoConditionsBelow() {
+        TreeComparisonCondition inAnyOrder = comparison(new PathRule(TreeRule.IGNORE_ARRAY_ORDER));
+        TreeComparisonCondition withCondition = comparison(new PathRule(TreeRule.IGNORE_ARRAY_ORDER),
+            new PathRule(new PathMatch(ANY_SUBTREE, "id"), new Ignore()));
+
+        assertThat(StructuralHashJoin.canJoin(ARRAY, inAnyOrder)).isTrue();
+        assertThat(StructuralHashJoin.canJoin(ARRAY, comparison())).isFalse();
+        assertThat(StructuralHashJoin.canJoin(ARRAY, withCondition)).isFalse();
+    }
+
+    @Test
+    void doesNotJoinWhenARuleAppliesToSomeElementsByIndex() {
+        List<PathRule> rules = Arrays.asList(new PathRule(TreeRule.IGNORE_ARRAY_ORDER),
+            new PathRule(ofJsonPointer("/0"), TreeRule.IGNORE_KEY_ORDER));
+        TreeComparisonCondition comparison = TreeComparisonCondition
+            .isEqualTo(array("[{\"a\":1,\"b\":2},{\"a\":1,\"b\":2}]"))
+            .withRules(rules);
+
+        assertThat(StructuralHashJoin.canJoin(ARRAY, comparison)).isFalse();
+        // the first expected element matches either actual element, but the second only matches the first
+        assertThat(comparison.test(array("[{\"a\":1,\"b\":2},{\"b\":2,\"a\":1}]")).isPassed()).isTrue();
+    }
+
+    @Test
+    void equalElementsArePairedLeavingTheRest() {
+        TreeComparisonCondition comparison = comparison(new PathRule(TreeRule.IGNORE_ARRAY_ORDER));
+        ArrayNode actual = array("[{\"a\":1}, 2, [3, 4], \"x\"]");
+        ArrayNode expected = array("[[4, 3], \"y\", 2, {\"a\":1}]");
+
+        StructuralHashJoin join = StructuralHashJoin.join(actual, expected, conditions(expected, comparison));
+
+        assertThat(join.allExpectedMatched()).isFalse();
+        assertThat(join.getUnmatchedExpected()).containsExactly(1);
+        assertThat(join.getUnmatchedActual()).containsExactly(3);
+    }
+
+    @Test
+    void duplicatesArePairedOnce() {
+        TreeComparisonCondition comparison = comparison(new PathRule(TreeRule.IGNORE_ARRAY_ORDER));
+        ArrayNode actual = array("[1, 1, 2]");
+        ArrayNode expected = array("[1, 2, 1]");
+
+        assertThat(StructuralHashJoin.join(actual, expected, conditions(expected, comparison)).allExpectedMatched())
+            .isTrue();
+    }
+
+    private static TreeComparisonCondition comparison(PathRule... rules) {
+        return TreeComparisonCondition.isEqualTo(jsonStringProvider().jsonFrom("[]"))
+            .withRules(rules.length == 0 ? Collections.emptyList() : Arrays.asList(rules));
+    }
+
+    private static ArrayNode array(String json) {
+        return (ArrayNode) jsonStringProvider().jsonFrom(json);
+    }
+
+    private static List<ArrayElementCondition> conditions(ArrayNode expected, TreeComparisonCondition comparison) {
+        List<ArrayElementCondition> conditions = new ArrayList<>();
+        for (int i = 0; i < expected.size(); i++) {
+            conditions.add(new ArrayComparisonElementCondition(expected.get(i), i, ARRAY, comparison));
+        }
+        return conditions;
+    }
+}
@@ -0,0 +1,151 @@
+package uk.org.webcompere.modelassert.json.condition.tree;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.IntNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import uk.org.webcompere.modelassert.json.Result;
+
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TreeWalkTest {
+    private static final int DEPTH = 50_000;
+
+    // each level of arrays in any order hashes the levels below it, so these are not as deep
+    private static final int ARRAYS_IN_ANY_ORDER_DEPTH = 2_000;
+
+    @Test
+    void deeplyNestedDocumentsAreEqual() {
+        assertThat(TreeComparisonCondition.isEqualTo(nested(DEPTH, 1)).test(nested(DEPTH, 1)).isPassed())
+            .isTrue();
+    }
+
+    @Test
+    void differenceAtTheBottomOfADeeplyNestedDocumentIsFound() {
+        DifferenceCollector failures = new DifferenceCollector(Integer.MAX_VALUE);
+        TreeComparisonCondition.isEqualTo(nested(DEPTH, 1))
+            .compareTrees(nested(DEPTH, 2), nested(DEPTH, 1), new Location(), failures);
+
+        assertThat(failures.getDifferences()).hasSize(1);
+        assertThat(failures.getDifferences().get(0).getKind()).isEqualTo(Difference.Kind.DIFFERENT_VALUE);
+        assertThat(failures.getDifferences().get(0).getPath().size()).isEqualTo(2 * DEPTH);
+    }
+
+    @Test
+    void deeplyNestedElementsOfAnArrayInAnyOrderAreCompared() {
+        ArrayNode expected = JsonNodeFactory.instance.arrayNode().add(nested(DEPTH, 1)).add(nested(DEPTH, 2));
+        ArrayNode actual = JsonNodeFactory.instance.arrayNode().add(nested(DEPTH, 2)).add(nested(DEPTH, 1));
+
+        assertThat(TreeComparisonCondition.isEqualTo(expected)
+            .withRules(Collections.singletonList(
+                new PathRule(PathMatch.ofJsonPointer("/"), TreeRule.IGNORE_ARRAY_ORDER)))
+            .test(actual)
+            .isPassed())
+            .isTrue();
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        "IGNORE_ARRAY_ORDER,false",
+        "IGNORE_ARRAY_ORDER,true",
+        "ARRAY_CONTAINS,false"
+    })
+    void arraysInAnyOrderNestedDeeplyWithinEachOtherAreEqual(TreeRule rule, boolean compiled) {
+        assertThat(nestedArraysCondition(rule, compiled)
+            .test(nestedArrays(ARRAYS_IN_ANY_ORDER_DEPTH, 1, true))
+            .isPassed())
+            .isTrue();
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        "IGNORE_ARRAY_ORDER,false",
+        "IGNORE_ARRAY_ORDER,true",
+        "ARRAY_CONTAINS,false"
+    })
+    void differenceAtTheBottomOfArraysInAnyOrderNestedDeeplyIsFound(TreeRule rule, boolean compiled) {
+        Result result = nestedArraysCondition(rule, compiled)
+            .test(nestedArrays(ARRAYS_IN_ANY_ORDER_DEPTH, 2, true));
+
+        assertThat(result.isPassed()).isFalse();
+        assertThat(result.getWas()).isEqualTo("Matches array at / No matches for:\n" +
+            "Index 1: Has match for /1 in expected");
+    }
+
+    @Test
+    void childrenAreComparedDepthFirstInOrder() {
+        ObjectNode expected = JsonNodeFactory.instance.objectNode();
+        expected.putObject("a").put("b", 1).put("c", 2);
+        expected.put("d", 3);
+        ObjectNode actual = JsonNodeFactory.instance.objectNode();
+        actual.putObject("a").put("b", 0).put("c", 0);
+        actual.put("d", 0);
+
+        DifferenceCollector failures = new DifferenceCollector(Integer.MAX_VALUE);
+        TreeComparisonCondition.isEqualTo(expected).compareTrees(actual, expected, new Location(), failures);
+
+        assertThat(failures.getDifferences())
+            .extracting(difference -> difference.getPath().toString())
+            .containsExactly("/a/b", "/a/c", "/d");
+    }
+
+    @Test
+    void differencesInSubtreesWithoutRulesAreStillDescribed() {
+        ObjectNode expected = JsonNodeFactory.instance.objectNode();
+        expected.putObject("ruled").put("id", 1).put("name", "a");
+        expected.putObject("same").putArray("values").add(1).add(2);
+        expected.putObject("changed").putArray("values").add(1).add(2);
+        ObjectNode actual = expected.deepCopy();
+        ((ObjectNode) actual.get("ruled")).put("id", 2);
+        ((ArrayNode) actual.get("changed").get("values")).set(1, new IntNode(3));
+
+        DifferenceCollector failures = new DifferenceCollector(Integer.MAX_VALUE);
+        TreeComparisonCondition.isEqualTo(expected)
+            .withRules(Collections.singletonList(
+                new PathRule(PathMatch.ofJsonPointer("/ruled/id"), TreeRule.IGNORE_ARRAY_ORDER)))
+            .compareTrees(actual, expected, new Location(), failures);
+
+        assertThat(failures.getDifferences())
+            .extracting(difference -> difference.getPath().toString())
+            .containsExactly("/ruled/id", "/changed/values/1");
+    }
+
+    private static TreeComparisonCondition nestedArraysCondition(TreeRule rule, boolean compiled) {
+        TreeComparisonCondition condition = TreeComparisonCondition
+            .isEqualTo(nestedArrays(ARRAYS_IN_ANY_ORDER_DEPTH, 1, false))
+            .withRules(Collections.singletonList(new PathRule(rule)));
+        return compiled ? condition.compiled() : condition;
+    }
+
+    /**
+     * Build arrays of a scalar and the next array, bottom up, with the next array first when reversed
+     */
+    private static JsonNode nestedArrays(int depth, int leaf, boolean reversed) {
+        JsonNode node = new IntNode(leaf);
+        for (int i = 0; i < depth; i++) {
+            ArrayNode array = JsonNodeFactory.instance.arrayNode();
+            node = reversed ? array.add(node).add(1) : array.add(1).add(node);
+        }
+        return node;
+    }
+
+    /**
+     * Build a document nested alternately in objects and arrays, bottom up, as Jackson's own
+     * copying and parsing are recursive
+     */
+    private static JsonNode nested(int depth, int leaf) {
+        JsonNode node = new IntNode(leaf);
+        for (int i = 0; i < depth; i++) {
+            ObjectNode object = JsonNodeFactory.instance.objectNode();
+            object.set("next", JsonNodeFactory.instance.arrayNode().add(node));
+            node = object;
+        }
+        return node;
+    }
+}
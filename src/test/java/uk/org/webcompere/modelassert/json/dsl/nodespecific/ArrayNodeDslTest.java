@@ -3,6 +3,8 @@ package uk.org.webcompere.modelassert.json.dsl.nodespecific;
 import org.junit.jupiter.api.Test;
 import org.opentest4j.AssertionFailedError;
 
+import java.util.concurrent.ForkJoinPool;
+
 import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
 import static uk.org.webcompere.modelassert.json.JsonAssertions.assertJson;
 import static uk.org.webcompere.modelassert.json.TestAssertions.assertAllWays;
@@ -96,6 +98,17 @@ class ArrayNodeDslTest {
                 .hasValue(1)));
     }
 
+    @Test
+    void isArrayContainingNumbersExactlyAsConditions_inAnyOrderInParallel() {
+        assertAllWays("[1, 2, 3, 4]", "[4, 3, 2, 1, 0]",
+            assertion -> assertion.isArrayContainingExactlyInAnyOrder(conditions()
+                .inParallel(ForkJoinPool.commonPool())
+                .hasValue(4)
+                .hasValue(3)
+                .hasValue(2)
+                .hasValue(1)));
+    }
+
     @Test
     void whenUsingArrayNodeThenNodeMustBeArray() {
         assertThatThrownBy(() -> assertJson("{foo:{}}")
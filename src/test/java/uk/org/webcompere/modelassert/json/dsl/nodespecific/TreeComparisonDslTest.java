@@ -90,6 +90,14 @@ class TreeComparisonDslTest {
                 .isEqualTo("{\"a\":1, \"b\":2, \"c\":{\"d\":3, \"e\":4}}"));
     }
 
+    @Test
+    void keysInLooseOrderMustStillBeTheSameKeys() {
+        assertAllWays("{\"b\":2, \"a\":1}",
+            "{\"b\":2, \"c\":1}",
+            assertion -> assertion.where().keysInAnyOrder()
+                .isEqualTo("{\"a\":1, \"b\":2}"));
+    }
+
     @Test
     void keysCanBeInLooseOrderInSubTree() {
         assertAllWays("{\"a\":1, \"b\":2, \"c\":{\"d\":3, \"e\":4}}",
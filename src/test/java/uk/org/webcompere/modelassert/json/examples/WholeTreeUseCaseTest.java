@@ -1,7 +1,10 @@
 package uk.org.webcompere.modelassert.json.examples;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.opentest4j.AssertionFailedError;
+import uk.org.webcompere.modelassert.json.JsonProviders;
+import uk.org.webcompere.modelassert.json.condition.tree.TreeComparisonCondition;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -10,6 +13,7 @@ import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static uk.org.webcompere.modelassert.json.JsonAssertions.assertJson;
 import static uk.org.webcompere.modelassert.json.JsonAssertions.assertYaml;
 import static uk.org.webcompere.modelassert.json.PathWildCard.ANY;
+import static uk.org.webcompere.modelassert.json.PathWildCard.ANY_SUBTREE;
 import static uk.org.webcompere.modelassert.json.Patterns.GUID_PATTERN;
 
 class WholeTreeUseCaseTest {
@@ -341,6 +345,206 @@ class WholeTreeUseCaseTest {
             .isNotEqualTo(resourcePath("json-array-of-objects-with-additional.json"));
     }
 
+    @Test
+    void aDocumentEqualsItselfWhenStreamed() {
+        assertJson(resourcePath("json-alphabetic.json"))
+            .where().streamed()
+            .isEqualTo(resourcePath("json-alphabetic.json"));
+    }
+
+    @Test
+    void streamedDocumentsWithFieldsInDifferentOrderAreSame() {
+        assertJson(resourcePath("json-alphabetic.json"))
+            .where().streamed().keysInAnyOrder()
+            .isEqualTo(resourcePath("json-scrambled.json").toFile());
+    }
+
+    @Test
+    void streamedDocumentsToleratesArrayOutOfOrder() {
+        assertJson(resourcePath("json-array-of-objects-in-order.json"))
+            .where().streamed().path("data").arrayInAnyOrder()
+            .isEqualTo(resourcePath("json-array-of-objects-out-of-order.json"));
+    }
+
+    @Test
+    void streamedArraysInAnyOrderCanBeSpilledToFiles(@TempDir Path spillDirectory) {
+        assertJson(resourcePath("json-array-of-objects-in-order.json"))
+            .where().streamed().spillingTo(spillDirectory, 64).path("data").arrayInAnyOrder()
+            .isEqualTo(resourcePath("json-array-of-objects-out-of-order.json"));
+    }
+
+    @Test
+    void parallelComparisonReportsTheSameDifferences() {
+        assertThatThrownBy(() -> assertJson(resourcePath("json-array-of-objects-in-order.json"))
+            .where().parallel()
+            .isEqualTo(resourcePath("json-array-of-objects-out-of-order.json")))
+            .isInstanceOf(AssertionFailedError.class)
+            .hasMessageContaining("/data/1/id value is different");
+    }
+
+    @Test
+    void streamedDocumentsWithDifferencesAreReported() {
+        assertThatThrownBy(() -> assertJson(resourcePath("json-array-of-objects-in-order.json"))
+            .where().streamed()
+            .isEqualTo(resourcePath("json-array-of-objects-out-of-order.json")))
+            .isInstanceOf(AssertionFailedError.class)
+            .hasMessageContaining("equal to json in ")
+            .hasMessageContaining("/data/1/id value is different");
+    }
+
+    @Test
+    void failFastReportsOnlyTheFirstDifference() {
+        assertThatThrownBy(() -> assertJson("{\"a\":[1, 2, 3], \"b\":true}")
+            .where().failFast()
+            .isEqualTo("{\"a\":[4, 5, 6], \"b\":false}"))
+            .isInstanceOf(AssertionFailedError.class)
+            .hasMessageContaining("/a/0 value is different")
+            .hasMessageNotContaining("/a/1")
+            .hasMessageNotContaining("/b");
+    }
+
+    @Test
+    void conditionUsedForNotEqualStillReportsEveryDifference() {
+        TreeComparisonCondition condition = TreeComparisonCondition.isEqualTo(
+            JsonProviders.jsonStringProvider().jsonFrom("{\"a\":[4, 5, 6], \"b\":false}"));
+        String json = "{\"a\":[1, 2, 3], \"b\":true}";
+
+        assertJson(json).isNotEqualTo(condition);
+        assertJson(json).where().keysInAnyOrder().isNotEqualTo(condition);
+
+        assertThatThrownBy(() -> assertJson(json).isEqualTo(condition))
+            .isInstanceOf(AssertionFailedError.class)
+            .hasMessageContaining("/a/2 value is different")
+            .hasMessageContaining("/b value is different");
+    }
+
+    @Test
+    void maxFailuresLimitsTheDifferencesReported() {
+        assertThatThrownBy(() -> assertJson("{\"a\":[1, 2, 3], \"b\":true}")
+            .where().maxFailures(2)
+            .isEqualTo("{\"a\":[4, 5, 6], \"b\":false}"))
+            .isInstanceOf(AssertionFailedError.class)
+            .hasMessageContaining("/a/1 value is different")
+            .hasMessageContaining("Stopped comparing at the limit of 2 differences")
+            .hasMessageNotContaining("/a/2");
+    }
+
+    @Test
+    void streamedComparisonStopsAtTheFirstDifference() {
+        assertThatThrownBy(() -> assertJson(resourcePath("json-array-of-objects-in-order.json"))
+            .where().streamed().failFast()
+            .isEqualTo(resourcePath("json-array-of-objects-out-of-order.json")))
+            .isInstanceOf(AssertionFailedError.class)
+            .hasMessageContaining("/data/1/id value is different")
+            .hasMessageNotContaining("/data/2");
+    }
+
+    @Test
+    void summarisedFailuresCollapseSimilarDifferences() {
+        assertThatThrownBy(() -> assertJson("{\"items\":[{\"price\":1}, {\"price\":2}, {\"price\":3}]}")
+            .where().summariseFailures()
+            .isEqualTo("{\"items\":[{\"price\":10}, {\"price\":20}, {\"price\":30}]}"))
+            .isInstanceOf(AssertionFailedError.class)
+            .hasMessageContaining("3 similar value differences under /items/*/price, " +
+                "e.g. /items/0/price value is different: expected 10, actual 1");
+    }
+
+    @Test
+    void largeArrayInAnyOrderIsCompared() {
+        StringBuilder ascending = new StringBuilder("[");
+        StringBuilder descending = new StringBuilder("[");
+        int size = 20_000;
+        for (int i = 0; i < size; i++) {
+            ascending.append(i == 0 ? "" : ",").append("{\"id\":").append(i).append("}");
+            descending.append(i == 0 ? "" : ",").append("{\"id\":").append(size - 1 - i).append("}");
+        }
+        ascending.append("]");
+        descending.append("]");
+
+        assertJson(ascending.toString())
+            .where().arrayInAnyOrder()
+            .isEqualTo(descending.toString());
+    }
+
+    @Test
+    void arrayInAnyOrderReportsTheUnmatchedElements() {
+        assertThatThrownBy(() -> assertJson("[{\"id\":1}, {\"id\":2}, {\"id\":3}]")
+            .where().arrayInAnyOrder()
+            .isEqualTo("[{\"id\":3}, {\"id\":4}, {\"id\":1}]"))
+            .isInstanceOf(AssertionFailedError.class)
+            .hasMessageContaining("No matches for:\nIndex 1: Has match for /1 in expected");
+    }
+
+    @Test
+    void arrayMatchedByKeyIgnoresOrder() {
+        assertJson("{\"items\":[{\"id\":1, \"name\":\"a\"}, {\"id\":2, \"name\":\"b\"}]}")
+            .where().path("items").arrayMatchedBy("id")
+            .isEqualTo("{\"items\":[{\"id\":2, \"name\":\"b\"}, {\"id\":1, \"name\":\"a\"}]}");
+    }
+
+    @Test
+    void arrayMatchedByKeyReportsDifferencesInPairedElements() {
+        assertThatThrownBy(() -> assertJson("{\"items\":[{\"id\":1, \"name\":\"a\"}, {\"id\":2, \"name\":\"b\"}]}")
+            .where().path("items").arrayMatchedBy("id")
+            .isEqualTo("{\"items\":[{\"id\":2, \"name\":\"c\"}, {\"id\":1, \"name\":\"a\"}]}"))
+            .isInstanceOf(AssertionFailedError.class)
+            .hasMessageContaining("/items/1/name value is different: expected \"c\", actual \"b\"");
+    }
+
+    @Test
+    void arrayMatchedByKeyReportsMissingAndUnexpectedElements() {
+        assertThatThrownBy(() -> assertJson("[{\"id\":1}, {\"id\":2}, {\"id\":4}]")
+            .where().arrayMatchedBy("id")
+            .isEqualTo("[{\"id\":3}, {\"id\":2}, {\"id\":1}]"))
+            .isInstanceOf(AssertionFailedError.class)
+            .hasMessageContaining("/: unexpected elements [id=4]")
+            .hasMessageContaining("/: missing elements [id=3]");
+    }
+
+    @Test
+    void arrayMatchedByKeyWithContainsAllowsExtraElements() {
+        assertJson("[{\"id\":1, \"type\":\"a\"}, {\"id\":1, \"type\":\"b\"}, {\"id\":2, \"type\":\"a\"}]")
+            .where()
+                .arrayContains()
+                .arrayMatchedBy("id", "type")
+            .isEqualTo("[{\"id\":2, \"type\":\"a\"}, {\"id\":1, \"type\":\"b\"}]");
+    }
+
+    @Test
+    void arrayAlignedReportsAnInsertedElementRatherThanEveryElementAfterIt() {
+        assertThatThrownBy(() -> assertJson("{\"items\":[0, 1, 2, 3, 4, 5]}")
+            .where().path("items").arrayAligned()
+            .isEqualTo("{\"items\":[1, 2, 3, 4, 5]}"))
+            .isInstanceOf(AssertionFailedError.class)
+            .hasMessageContaining("/items: elements inserted, by actual index {0=0}")
+            .hasMessageNotContaining("value is different");
+    }
+
+    @Test
+    void arrayAlignedReportsAChangedElementAtItsIndex() {
+        assertThatThrownBy(() -> assertJson("[{\"id\":1}, {\"id\":2, \"name\":\"x\"}, {\"id\":3}]")
+            .where().arrayAligned()
+            .isEqualTo("[{\"id\":1}, {\"id\":3}]"))
+            .isInstanceOf(AssertionFailedError.class)
+            .hasMessageContaining("/: elements inserted, by actual index {1={\"id\":2,\"name\":\"x\"}}");
+
+        assertThatThrownBy(() -> assertJson("[{\"id\":1}, {\"id\":2, \"name\":\"x\"}, {\"id\":3}]")
+            .where().arrayAligned()
+            .isEqualTo("[{\"id\":1}, {\"id\":2, \"name\":\"y\"}, {\"id\":3}]"))
+            .isInstanceOf(AssertionFailedError.class)
+            .hasMessageContaining("/1/name value is different: expected \"y\", actual \"x\"")
+            .hasMessageNotContaining("elements");
+    }
+
+    @Test
+    void arrayAlignedMatchesTheSameArraysAsInOrder() {
+        assertJson("{\"items\":[{\"id\":1, \"name\":\"a\"}, {\"id\":2, \"name\":\"b\"}]}")
+            .where()
+                .arrayAligned()
+                .path(ANY_SUBTREE, "id").isNumber()
+            .isEqualTo("{\"items\":[{\"id\":7, \"name\":\"a\"}, {\"id\":8, \"name\":\"b\"}]}");
+    }
+
     @Test
     void yamlTreeEqualToItself() {
         assertYaml(resourcePath("yaml-tree.yml"))
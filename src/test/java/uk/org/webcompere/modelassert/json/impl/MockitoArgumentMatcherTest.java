@@ -46,4 +46,19 @@ class MockitoArgumentMatcherTest {
         assertThat(someInterface.findValueFromJson("{\"name\":\"foo\"}")).isEqualTo("foo");
         assertThat(someInterface.findValueFromJson("{\"name\":\"bar\"}")).isEqualTo("bar");
     }
-}
\ No newline at end of file
+
+    @Test
+    void compiledComparisonCanAnswerManyCalls() {
+        given(someInterface.findValueFromJson(argThat(json()
+                .where()
+                    .compiled()
+                    .arrayInAnyOrder()
+                .isEqualTo("{\"names\":[\"foo\", \"bar\"]}")
+                .toArgumentMatcher())))
+                .willReturn("found");
+
+        assertThat(someInterface.findValueFromJson("{\"names\":[\"bar\", \"foo\"]}")).isEqualTo("found");
+        assertThat(someInterface.findValueFromJson("{\"names\":[\"foo\", \"baz\"]}")).isNull();
+        assertThat(someInterface.findValueFromJson("{\"names\":[\"foo\", \"bar\"]}")).isEqualTo("found");
+    }
+}